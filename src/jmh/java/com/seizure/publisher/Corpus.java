@@ -0,0 +1,62 @@
+package com.seizure.publisher;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    The recorded pgoutput messages, exactly as they are returned by PGReplicationStream.
+    The file is a sequence of records: (Int32) length of the message, (ByteN) the message.
+ */
+public class Corpus {
+    private final List<ByteBuffer> relations = new ArrayList<>();
+    private final List<ByteBuffer> messages = new ArrayList<>();
+
+    public static Corpus load(String name) throws IOException {
+        String resource = "/corpus/" + name + ".bin";
+        try (InputStream inputStream = Corpus.class.getResourceAsStream(resource)) {
+            if (inputStream == null) {
+                throw new IllegalArgumentException(String.format("the corpus: %s is not found", resource));
+            }
+
+            Corpus corpus = new Corpus();
+            DataInputStream input = new DataInputStream(inputStream);
+            while (true) {
+                int length;
+                try {
+                    length = input.readInt();
+                } catch (EOFException ex) {
+                    break;
+                }
+                byte[] message = new byte[length];
+                input.readFully(message);
+
+                /* the relation and type messages are decoded once, before the measurement */
+                if (message[0] == 'R' || message[0] == 'Y') {
+                    corpus.relations.add(ByteBuffer.wrap(message));
+                } else {
+                    corpus.messages.add(ByteBuffer.wrap(message));
+                }
+            }
+            return corpus;
+        }
+    }
+
+    public static void write(DataOutputStream output, byte[] message) throws IOException {
+        output.writeInt(message.length);
+        output.write(message);
+    }
+
+    public List<ByteBuffer> getRelations() {
+        return relations;
+    }
+
+    public ByteBuffer[] getMessages() {
+        return messages.toArray(new ByteBuffer[0]);
+    }
+}
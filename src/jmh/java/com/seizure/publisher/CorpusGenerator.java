@@ -0,0 +1,222 @@
+package com.seizure.publisher;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/*
+    Produces the corpora in the pgoutput protocol version 1 text format, the same bytes
+    the server sends for the tables below (see CorpusRecorder to record a real stream):
+
+        narrow  - public.narrow_events (id int4, status int2, amount int8, created timestamptz)
+        wide    - public.wide_records (id int8 and 59 int4, varchar, bool, numeric, timestamptz, int8 columns)
+        text    - public.documents (id int4, title varchar, body text, tags text, author varchar)
+        numeric - public.measurements (id int8, 16 numeric, 4 float8, 2 int8 columns)
+
+    Every transaction has 3 inserts, 1 update and 1 delete; some updates of the text corpus
+    leave the body as the unchanged TOASTed value. The random generator has a fixed seed,
+    so the output is always the same:
+
+        java -cp ... com.seizure.publisher.CorpusGenerator src/jmh/resources/corpus
+ */
+public class CorpusGenerator {
+    private static final int TRANSACTIONS = 150;
+
+    private static final int INT2 = 21;
+    private static final int INT4 = 23;
+    private static final int INT8 = 20;
+    private static final int BOOL = 16;
+    private static final int TEXT = 25;
+    private static final int VARCHAR = 1043;
+    private static final int FLOAT8 = 701;
+    private static final int NUMERIC = 1700;
+    private static final int TIMESTAMPTZ = 1184;
+
+    private static final String WORDS = "replication slot publication subscriber relation tuple column value "
+            + "transaction commit insert update delete stream message decode buffer latency throughput";
+
+    private final Random random = new Random(20210601L);
+    private long lsn = 0x16B3748L;
+    private int xid = 750;
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get(args.length > 0 ? args[0] : "src/jmh/resources/corpus");
+        Files.createDirectories(directory);
+
+        CorpusGenerator generator = new CorpusGenerator();
+        generator.generate(directory.resolve("narrow.bin"), 16401, "narrow_events",
+                new String[]{"id", "status", "amount", "created"}, new int[]{INT4, INT2, INT8, TIMESTAMPTZ});
+
+        int[] wideTypes = new int[60];
+        String[] wideNames = new String[60];
+        int[] rotation = {INT4, VARCHAR, BOOL, NUMERIC, TIMESTAMPTZ, INT8};
+        wideTypes[0] = INT8;
+        wideNames[0] = "id";
+        for (int i = 1; i < 60; i++) {
+            wideTypes[i] = rotation[i % rotation.length];
+            wideNames[i] = "attribute_" + i;
+        }
+        generator.generate(directory.resolve("wide.bin"), 16402, "wide_records", wideNames, wideTypes);
+
+        generator.generate(directory.resolve("text.bin"), 16403, "documents",
+                new String[]{"id", "title", "body", "tags", "author"}, new int[]{INT4, VARCHAR, TEXT, TEXT, VARCHAR});
+
+        int[] numericTypes = new int[23];
+        String[] numericNames = new String[23];
+        numericTypes[0] = INT8;
+        numericNames[0] = "id";
+        for (int i = 1; i < 23; i++) {
+            numericTypes[i] = (i <= 16) ? NUMERIC : (i <= 20) ? FLOAT8 : INT8;
+            numericNames[i] = "metric_" + i;
+        }
+        generator.generate(directory.resolve("numeric.bin"), 16404, "measurements", numericNames, numericTypes);
+    }
+
+    private void generate(Path path, int relationId, String table, String[] names, int[] types) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            Corpus.write(output, this.relation(relationId, table, names, types));
+
+            long id = 1;
+            for (int t = 0; t < TRANSACTIONS; t++) {
+                this.xid++;
+                long commitTime = 676_000_000_000_000L + t * 1_000_000L;
+                Corpus.write(output, this.begin(commitTime));
+
+                for (int i = 0; i < 3; i++) {
+                    Corpus.write(output, this.change('I', 'N', relationId, id + i, types, false));
+                }
+                boolean unchangedToast = table.equals("documents") && (t % 2 == 0);
+                Corpus.write(output, this.change('U', 'N', relationId, id, types, unchangedToast));
+                Corpus.write(output, this.change('D', 'K', relationId, id + 1, types, false));
+                id += 3;
+
+                Corpus.write(output, this.commit(commitTime));
+            }
+        }
+    }
+
+    /* 'R', (Int32) relation id, (String) namespace, (String) name, (Int8) replica identity, (Int16) columns */
+    private byte[] relation(int relationId, String table, String[] names, int[] types) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream message = new DataOutputStream(bytes);
+        message.writeByte('R');
+        message.writeInt(relationId);
+        this.writeString(message, "public");
+        this.writeString(message, table);
+        message.writeByte('d');
+        message.writeShort(names.length);
+        for (int i = 0; i < names.length; i++) {
+            message.writeByte(i == 0 ? 1 : 0); /* the first column is the primary key */
+            this.writeString(message, names[i]);
+            message.writeInt(types[i]);
+            message.writeInt(-1);
+        }
+        return bytes.toByteArray();
+    }
+
+    /* 'B', (Int64) final LSN, (Int64) commit timestamp, (Int32) xid */
+    private byte[] begin(long commitTime) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream message = new DataOutputStream(bytes);
+        message.writeByte('B');
+        message.writeLong(this.lsn + 4096);
+        message.writeLong(commitTime);
+        message.writeInt(this.xid);
+        return bytes.toByteArray();
+    }
+
+    /* 'C', (Int8) flags, (Int64) commit LSN, (Int64) end LSN, (Int64) commit timestamp */
+    private byte[] commit(long commitTime) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream message = new DataOutputStream(bytes);
+        message.writeByte('C');
+        message.writeByte(0);
+        message.writeLong(this.lsn + 4096);
+        message.writeLong(this.lsn + 4144);
+        message.writeLong(commitTime);
+        this.lsn += 8192;
+        return bytes.toByteArray();
+    }
+
+    /* 'I' / 'U' / 'D', (Int32) relation id, (Byte1) 'N' or 'K', TupleData */
+    private byte[] change(char type, char tupleType, int relationId, long id, int[] types, boolean unchangedToast)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream message = new DataOutputStream(bytes);
+        message.writeByte(type);
+        message.writeInt(relationId);
+        message.writeByte(tupleType);
+
+        message.writeShort(types.length);
+        for (int i = 0; i < types.length; i++) {
+            if (i == 0) {
+                this.writeValue(message, Long.toString(id));
+            } else if (tupleType == 'K') {
+                message.writeByte('n'); /* only the key columns are sent */
+            } else if (unchangedToast && types[i] == TEXT && i == 2) {
+                message.writeByte('u');
+            } else if (types[i] != TEXT && this.random.nextInt(20) == 0) {
+                message.writeByte('n');
+            } else {
+                this.writeValue(message, this.value(types[i], i));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private String value(int type, int column) {
+        switch (type) {
+            case INT2:
+                return Integer.toString(this.random.nextInt(100));
+            case INT4:
+                return Integer.toString(this.random.nextInt());
+            case INT8:
+                return Long.toString(this.random.nextLong());
+            case BOOL:
+                return this.random.nextBoolean() ? "t" : "f";
+            case FLOAT8:
+                return Double.toString(this.random.nextGaussian() * 1000);
+            case NUMERIC:
+                return String.format("%d.%06d", this.random.nextInt(10_000_000), this.random.nextInt(1_000_000));
+            case TIMESTAMPTZ:
+                return String.format("2021-06-%02d %02d:%02d:%02d.%06d+00", 1 + this.random.nextInt(28),
+                        this.random.nextInt(24), this.random.nextInt(60), this.random.nextInt(60), this.random.nextInt(1_000_000));
+            case TEXT:
+                /* the body of the documents is large, the tags are short */
+                return this.words(column == 2 ? 150 + this.random.nextInt(450) : 2 + this.random.nextInt(5));
+            default:
+                return this.words(1 + this.random.nextInt(6));
+        }
+    }
+
+    private String words(int count) {
+        String[] words = WORDS.split(" ");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(words[this.random.nextInt(words.length)]);
+        }
+        return sb.toString();
+    }
+
+    /* 't', (Int32) length, (ByteN) the value in the text format */
+    private void writeValue(DataOutputStream message, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        message.writeByte('t');
+        message.writeInt(bytes.length);
+        message.write(bytes);
+    }
+
+    private void writeString(DataOutputStream message, String value) throws IOException {
+        message.write(value.getBytes(StandardCharsets.UTF_8));
+        message.writeByte(0);
+    }
+}
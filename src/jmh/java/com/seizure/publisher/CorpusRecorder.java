@@ -0,0 +1,61 @@
+package com.seizure.publisher;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGProperty;
+import org.postgresql.replication.PGReplicationStream;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Records the messages of an existing pgoutput slot into a corpus file:
+
+        java -cp ... com.seizure.publisher.CorpusRecorder jdbc:postgresql://host/database user password slot publication 10000 wide.bin
+
+    The slot is not advanced, the same changes can be recorded again.
+ */
+public class CorpusRecorder {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 7) {
+            System.err.println("usage: CorpusRecorder <url> <user> <password> <slot> <publication> <messages> <output>");
+            return;
+        }
+
+        Properties properties = new Properties();
+        PGProperty.USER.set(properties, args[1]);
+        PGProperty.PASSWORD.set(properties, args[2]);
+        PGProperty.ASSUME_MIN_SERVER_VERSION.set(properties, "10");
+        PGProperty.REPLICATION.set(properties, "database");
+        PGProperty.PREFER_QUERY_MODE.set(properties, "simple");
+
+        int count = Integer.parseInt(args[5]);
+        try (Connection connection = DriverManager.getConnection(args[0], properties);
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(args[6]))))) {
+
+            PGReplicationStream stream = connection.unwrap(PGConnection.class).getReplicationAPI()
+                    .replicationStream()
+                    .logical()
+                    .withSlotName(args[3])
+                    .withSlotOption("proto_version", "1")
+                    .withSlotOption("publication_names", args[4])
+                    .withStatusInterval(1, TimeUnit.SECONDS)
+                    .start();
+
+            for (int i = 0; i < count; i++) {
+                ByteBuffer buffer = stream.read();
+                byte[] message = new byte[buffer.remaining()];
+                buffer.get(message);
+                Corpus.write(output, message);
+            }
+            stream.close();
+        }
+    }
+}
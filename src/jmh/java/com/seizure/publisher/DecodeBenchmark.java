@@ -0,0 +1,99 @@
+package com.seizure.publisher;
+
+import com.seizure.publisher.models.Change;
+import com.seizure.publisher.models.ReplicationMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+    One operation is one pgoutput message of the corpus, so the score is messages per second
+    and gc.alloc.rate.norm of the gc profiler is the allocation per message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+
+    @Param({"narrow", "wide", "text", "numeric"})
+    public String corpus;
+
+    private Decode decode;
+    private Stream stream;
+    private ReplicationMessage replicationMessage;
+    private ByteBuffer[] messages;
+    private int index;
+
+    @Setup
+    public void setUp() throws Exception {
+        Corpus loaded = Corpus.load(this.corpus);
+
+        this.decode = new Decode();
+        for (ByteBuffer relation : loaded.getRelations()) {
+            this.decode.decodeLogicalReplicationMessageSimple(relation, false);
+        }
+
+        this.stream = new Stream(this.decode);
+        this.replicationMessage = new ReplicationMessage();
+        this.messages = loaded.getMessages();
+    }
+
+    private ByteBuffer next() {
+        ByteBuffer buffer = this.messages[this.index];
+        this.index = (this.index + 1 == this.messages.length) ? 0 : this.index + 1;
+        return buffer;
+    }
+
+    @Benchmark
+    public HashMap<String, Object> full() throws Exception {
+        return this.decode.decodeLogicalReplicationMessage(this.next(), false);
+    }
+
+    @Benchmark
+    public HashMap<String, Object> simple() throws Exception {
+        return this.decode.decodeLogicalReplicationMessageSimple(this.next(), false);
+    }
+
+    @Benchmark
+    public ReplicationMessage typed() {
+        this.decode.decodeLogicalReplicationMessageTyped(this.next(), this.replicationMessage, false);
+        return this.replicationMessage;
+    }
+
+    @Benchmark
+    public byte[] simpleJson() throws Exception {
+        HashMap<String, Object> message = this.decode.decodeLogicalReplicationMessageSimple(this.next(), false);
+        return message.isEmpty() ? null : this.stream.convertMessage(message, Stream.MIME_TYPE_OUTPUT_DEFAULT);
+    }
+
+    @Benchmark
+    public byte[] typedJson() throws Exception {
+        if (this.decode.decodeLogicalReplicationMessageTyped(this.next(), this.replicationMessage, false)) {
+            return this.stream.convertMessage(this.replicationMessage, Stream.MIME_TYPE_OUTPUT_DEFAULT);
+        }
+        return null;
+    }
+
+    @Benchmark
+    public Change typedInProcess() {
+        if (this.decode.decodeLogicalReplicationMessageTyped(this.next(), this.replicationMessage, false)) {
+            return this.stream.toChange(this.replicationMessage);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,99 @@
+package com.seizure.publisher;
+
+import com.seizure.models.ChangeRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/*
+    The events of EVENT_SIZE messages decoded and serialized by the parallel decoders (see
+    DecodePipeline), the score is messages per second, threads = 0 - by the reading thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+    private static final int EVENT_SIZE = 1000;
+
+    @Param({"narrow", "wide"})
+    public String corpus;
+
+    @Param({"0", "1", "2", "4"})
+    public int threads;
+
+    @Param({"application/json", "in-process"})
+    public String outputFormat;
+
+    private Stream stream;
+    private DecodePipeline pipeline;
+    private ByteBuffer[] messages;
+    private ChangeRecord[] batch;
+    private int index;
+
+    @Setup
+    public void setUp() throws Exception {
+        Corpus loaded = Corpus.load(this.corpus);
+
+        Decode decode = new Decode();
+        decode.setCopyOnWrite(true);
+        for (ByteBuffer relation : loaded.getRelations()) {
+            decode.decodeLogicalReplicationMessageSimple(relation, false);
+        }
+
+        this.stream = new Stream(decode);
+        this.pipeline = (this.threads > 0) ? new DecodePipeline(this.threads, EVENT_SIZE, "benchmark", decode) : null;
+        this.messages = loaded.getMessages();
+        this.batch = new ChangeRecord[EVENT_SIZE];
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (this.pipeline != null) {
+            this.pipeline.close();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENT_SIZE)
+    public int typedEvent() throws Exception {
+        boolean inProcess = Stream.OUTPUT_IN_PROCESS.equals(this.outputFormat);
+        if (this.pipeline == null) {
+            int count = 0;
+            for (int i = 0; i < EVENT_SIZE; i++) {
+                ChangeRecord record = this.stream.toRecord(this.next(), true, true, false, this.outputFormat, inProcess, i, 0, 0, 0, false);
+                if (record != null) {
+                    this.batch[count++] = record;
+                }
+            }
+            return count;
+        }
+
+        this.pipeline.begin(true, true, false, this.outputFormat, inProcess);
+        for (int i = 0; i < EVENT_SIZE; i++) {
+            this.pipeline.add(this.stream, this.next(), i, 0, 0, 0, false);
+        }
+        return this.pipeline.finish(this.batch);
+    }
+
+    private ByteBuffer next() {
+        ByteBuffer buffer = this.messages[this.index];
+        this.index = (this.index + 1 == this.messages.length) ? 0 : this.index + 1;
+        return buffer;
+    }
+}
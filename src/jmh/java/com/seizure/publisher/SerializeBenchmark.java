@@ -0,0 +1,95 @@
+package com.seizure.publisher;
+
+import com.seizure.publisher.models.ReplicationMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Decoding and serializing one pgoutput message of the corpus per operation by every
+    output format, the average payload size is printed at the end of every trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializeBenchmark {
+
+    @Param({"narrow", "wide", "text", "numeric"})
+    public String corpus;
+
+    @Param({"application/json", "application/x-jackson-smile", "application/cbor", "application/x-seizure-compact"})
+    public String outputFormat;
+
+    private Decode decode;
+    private Stream stream;
+    private ReplicationMessage replicationMessage;
+    private ByteBuffer[] messages;
+    private int index;
+
+    private long payloads;
+    private long payloadBytes;
+
+    @Setup
+    public void setUp() throws Exception {
+        Corpus loaded = Corpus.load(this.corpus);
+
+        this.decode = new Decode();
+        for (ByteBuffer relation : loaded.getRelations()) {
+            this.decode.decodeLogicalReplicationMessageSimple(relation, false);
+        }
+
+        this.stream = new Stream(this.decode);
+        this.replicationMessage = new ReplicationMessage();
+        this.messages = loaded.getMessages();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (this.payloads > 0) {
+            System.out.printf("%n%s, %s: %d bytes per payload%n", this.corpus, this.outputFormat, this.payloadBytes / this.payloads);
+        }
+    }
+
+    private ByteBuffer next() {
+        ByteBuffer buffer = this.messages[this.index];
+        this.index = (this.index + 1 == this.messages.length) ? 0 : this.index + 1;
+        return buffer;
+    }
+
+    private byte[] count(byte[] payload) {
+        this.payloads++;
+        this.payloadBytes += payload.length;
+        return payload;
+    }
+
+    @Benchmark
+    public byte[] simple() throws Exception {
+        HashMap<String, Object> message = this.decode.decodeLogicalReplicationMessageSimple(this.next(), false);
+        return message.isEmpty() ? null : this.count(this.stream.convertMessage(message, this.outputFormat));
+    }
+
+    @Benchmark
+    public byte[] typed() throws Exception {
+        if (this.decode.decodeLogicalReplicationMessageTyped(this.next(), this.replicationMessage, false)) {
+            return this.count(this.stream.convertMessage(this.replicationMessage, this.outputFormat));
+        }
+        return null;
+    }
+}
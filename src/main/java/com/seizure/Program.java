@@ -1,29 +1,50 @@
 package com.seizure;
 
 import com.seizure.configuration.Configuration;
+import com.seizure.models.ChangeRecord;
 import com.seizure.models.ConnectionInfo;
 import com.seizure.models.PubSubTableInfo;
+import com.seizure.models.PublisherInfo;
+import com.seizure.models.ReplicationOptions;
+import com.seizure.models.SpoolOptions;
 import com.seizure.publisher.ChangeDataCapture;
 import com.seizure.publisher.Publication;
+import com.seizure.services.LsnTracker;
+import com.seizure.services.QueueRecordSource;
+import com.seizure.services.RecordSource;
+import com.seizure.services.RingBuffer;
+import com.seizure.services.Spool;
+import com.seizure.services.Task;
+import com.seizure.services.TaskScheduler;
+import com.seizure.subscriber.ApplyPool;
+import com.seizure.subscriber.CopyApplier;
 import com.seizure.subscriber.DataListener;
+import com.seizure.subscriber.PreparedApplier;
+import com.seizure.subscriber.RowApplier;
 import com.seizure.subscriber.SettingUp;
+import com.seizure.subscriber.TableRoutes;
+import com.seizure.subscriber.models.ApplyMode;
+import com.seizure.subscriber.models.SubscriberMode;
+import com.seizure.subscriber.models.TruncateMode;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.config.Configurator;
 
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class Program {
     private static final Logger logger = LogManager.getLogger(Program.class);
 
     private static boolean isStarted = false;
-    private DataListener dataListener = null;
-    private ChangeDataCapture changeDataCapture = null;
+    private final List<DataListener> dataListeners = new ArrayList<>();
+    private final List<ChangeDataCapture> changeDataCaptures = new ArrayList<>();
+    private TaskScheduler taskScheduler = null;
+    private ApplyPool applyPool = null;
 
     public void start(String confContent) throws Exception {
 
@@ -43,81 +64,126 @@ public class Program {
         logger.info("reading the configuration data ...");
 
         com.seizure.configuration.Configuration configuration = new Configuration(confContent);
-        final ConnectionInfo publisherConnectionInfo = configuration.getPublisherConnectionInfo();
+        final List<PublisherInfo> publisherInfoList = configuration.getPublisherInfoList();
         final ConnectionInfo subscriberConnectionInfo = configuration.getSubscriberConnectionInfo();
         final List<PubSubTableInfo> pubSubTableInfoList = configuration.getPubSubTableInfoList();
 
-        final String publicationName = configuration.getPublicationName();
-        final String slot = configuration.getPublisherSlot();
-
         final int maxTasks = configuration.getMaxTasks();
+        final int applyThreads = configuration.getApplyThreads();
+        final int applyLanes = configuration.getApplyLanes();
         final int batchSize = configuration.getBatchSize();
+        final long batchMaxLatencyNanos = configuration.getBatchMaxLatencyNanos();
+        final boolean isTypedEvent = configuration.isTypedEvent();
+        final boolean transactional = configuration.isTransactional();
+        final boolean slotDropIfExists = configuration.isSlotDropIfExists();
+        final ReplicationOptions replicationOptions = configuration.getReplicationOptions();
+        final TruncateMode truncateMode = configuration.getTruncateMode();
+        final ApplyMode applyMode = configuration.getApplyMode();
+        final SubscriberMode subscriberMode = configuration.getSubscriberMode();
+        final boolean binaryCopy = configuration.isBinaryCopy();
+        final String outputFormat = configuration.getOutputFormat();
+        final int queueCapacity = configuration.getQueueCapacity();
+        final SpoolOptions spoolOptions = configuration.getSpoolOptions();
+        final int schedulerThreads = configuration.getSchedulerThreads();
+        final long schedulerMaxIdleNanos = configuration.getSchedulerMaxIdleNanos();
         logger.info("done.");
 
-        logger.info("setting up...");
-        try (SettingUp settingUp = new SettingUp(publisherConnectionInfo, subscriberConnectionInfo, pubSubTableInfoList)) {
-            settingUp.createSubscriberTables();
-        }
-        logger.info("done.");
+        for (PublisherInfo publisherInfo : publisherInfoList) {
+            logger.info("setting up the database: {} ...", publisherInfo.getName());
+            try (SettingUp settingUp = new SettingUp(publisherInfo.getConnectionInfo(), subscriberConnectionInfo, pubSubTableInfoList, subscriberMode)) {
+                settingUp.createSubscriberTables();
+            }
+            logger.info("done.");
 
-        logger.info("publication ...");
-        try (Publication publication = new Publication(publisherConnectionInfo, publicationName, pubSubTableInfoList)) {
-            publication.initializePublication();
+            logger.info("publication ...");
+            try (Publication publication = new Publication(publisherInfo.getConnectionInfo(), publisherInfo.getPublicationName(), pubSubTableInfoList)) {
+                publication.initializePublication();
+            }
+            logger.info("done.");
         }
-        logger.info("done.");
 
-        ConcurrentHashMap<String, ConcurrentLinkedQueue<String>> concurrentHashMap = new ConcurrentHashMap<>();
-        logger.info("starting the change data capture process ...");
-        changeDataCapture = new ChangeDataCapture(concurrentHashMap, publisherConnectionInfo, publicationName, slot, true, true, false);
-        changeDataCapture.start();
-        logger.info("done.");
+        taskScheduler = new TaskScheduler(schedulerThreads, schedulerMaxIdleNanos);
+        RowApplier rowApplier = null;
+        if (applyMode == ApplyMode.COPY) {
+            rowApplier = new CopyApplier(binaryCopy);
+        } else if (applyMode == ApplyMode.PREPARED) {
+            rowApplier = new PreparedApplier();
+        }
+        applyPool = new ApplyPool(applyThreads, subscriberConnectionInfo, rowApplier);
+        /* built after the set up, the key columns of the replica tables are known */
+        TableRoutes tableRoutes = new TableRoutes(pubSubTableInfoList);
+        ConcurrentHashMap<String, RingBuffer<ChangeRecord>> concurrentHashMap = new ConcurrentHashMap<>();
+        for (PublisherInfo publisherInfo : publisherInfoList) {
+            LsnTracker lsnTracker = new LsnTracker();
+            Spool spool = spoolOptions.isEnabled() ? new Spool(spoolOptions, publisherInfo.getName()) : null;
+            logger.info("starting the change data capture process of the database: {} ...", publisherInfo.getName());
+            /* the idle strategies keep the state of their task, every task gets its own */
+            ChangeDataCapture changeDataCapture = new ChangeDataCapture(concurrentHashMap, queueCapacity, publisherInfo, slotDropIfExists, true, isTypedEvent, transactional,
+                    replicationOptions, configuration.getIdleStrategy(), lsnTracker, outputFormat, configuration.getQueueWaitStrategy(), spool);
+            changeDataCaptures.add(changeDataCapture);
+            taskScheduler.schedule(changeDataCapture);
+            logger.info("done.");
 
-        logger.info("trying to start the data listener ...");
-        ConcurrentLinkedQueue<String> queue = concurrentHashMap.get(publisherConnectionInfo.getDatabase());
-        dataListener = new DataListener(queue, maxTasks, batchSize, subscriberConnectionInfo, pubSubTableInfoList);
-        dataListener.start();
-        logger.info("done.");
+            logger.info("trying to start the data listener ...");
+            RecordSource source = (spool != null) ? spool.getReader()
+                    : new QueueRecordSource(concurrentHashMap.get(publisherInfo.getName()), lsnTracker);
+            DataListener dataListener = new DataListener(publisherInfo.getName(), source, maxTasks, batchSize, batchMaxLatencyNanos, applyLanes, tableRoutes,
+                    truncateMode, outputFormat, transactional, rowApplier, subscriberMode, applyPool);
+            dataListeners.add(dataListener);
+            taskScheduler.schedule(dataListener);
+            logger.info("done.");
+        }
     }
 
     public void stop() {
 
-        if (dataListener != null) {
-            logger.info("trying to interrupt the work of DataListener class...");
-            dataListener.interrupt();
+        if (dataListeners.isEmpty() == false) {
+            logger.info("trying to stop the work of DataListener class...");
+            close(dataListeners);
+            dataListeners.clear();
+            logger.info("done.");
+        }
 
-            while (dataListener.isAlive() == true) {
-                try {
-                    logger.info("it is alive, lets wait a little, and try again...");
-                    Thread.sleep(10); // Sleep 10 millis
-                } catch (InterruptedException ex) {
-                }
-            }
-            dataListener = null;
+        if (applyPool != null) {
+            applyPool.close();
+            applyPool = null;
+        }
+
+        if (changeDataCaptures.isEmpty() == false) {
+            logger.info("trying to stop the work of ChangeDataCapture class...");
+            close(changeDataCaptures);
+            changeDataCaptures.clear();
             logger.info("done.");
         }
 
-        if (changeDataCapture != null) {
-            logger.info("trying to interrupt the work of ChangeDataCapture class...");
-            changeDataCapture.interrupt();
+        if (taskScheduler != null) {
+            taskScheduler.shutdown();
+            taskScheduler = null;
+        }
 
-            while (changeDataCapture.isAlive() == true) {
+        isStarted = false;
+    }
+
+    private static void close(List<? extends Task> tasks) {
+        for (Task task : tasks) {
+            task.close();
+        }
+        for (Task task : tasks) {
+            while (task.isClosed() == false) {
                 try {
-                    logger.info("it is alive, lets wait a little, and try again...");
+                    logger.info("the task: {} is alive, lets wait a little, and try again...", task.getName());
                     Thread.sleep(10); // Sleep 10 millis
                 } catch (InterruptedException ex) {
                 }
             }
-            changeDataCapture = null;
-            logger.info("done.");
         }
-
-        isStarted = false;
     }
 
     public long getRecordsCount() {
-        if (dataListener != null) {
-            return dataListener.getRecordsCount();
+        long count = 0;
+        for (DataListener dataListener : dataListeners) {
+            count += dataListener.getRecordsCount();
         }
-        return 0;
+        return count;
     }
 }
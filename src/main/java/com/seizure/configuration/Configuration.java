@@ -2,6 +2,22 @@ package com.seizure.configuration;
 
 import com.seizure.models.ConnectionInfo;
 import com.seizure.models.PubSubTableInfo;
+import com.seizure.models.PublisherInfo;
+import com.seizure.models.ReplicationOptions;
+import com.seizure.models.SpoolOptions;
+import com.seizure.publisher.Stream;
+import com.seizure.publisher.serializers.JsonMessageSerializer;
+import com.seizure.publisher.serializers.MessageSerializers;
+import com.seizure.services.BackoffIdleStrategy;
+import com.seizure.services.BasicConnectionPool;
+import com.seizure.services.BusySpinIdleStrategy;
+import com.seizure.services.IdleStrategy;
+import com.seizure.services.ParkingIdleStrategy;
+import com.seizure.services.SleepingIdleStrategy;
+import com.seizure.services.YieldingIdleStrategy;
+import com.seizure.subscriber.models.ApplyMode;
+import com.seizure.subscriber.models.SubscriberMode;
+import com.seizure.subscriber.models.TruncateMode;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -13,6 +29,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 public class Configuration {
     private static final Logger logger = LogManager.getLogger(Configuration.class);
@@ -126,6 +143,97 @@ public class Configuration {
         return publicationName;
     }
 
+    private List<PublisherInfo> publisherInfoList;
+
+    /*
+        publisher.numberOfDatabases - the number of the captured databases, every one is set by the keys
+        publisher.database<i>.connectionInfo.database (required), .name (the database name by default, unique),
+        .connectionInfo.server, .connectionInfo.user, .connectionInfo.password, .publicationName and .slot;
+        the missed ones are taken from the publisher.* keys, the slot gets the suffix _<i>.
+        Without publisher.numberOfDatabases the only database is set by the publisher.* keys.
+     */
+    public List<PublisherInfo> getPublisherInfoList() throws IllegalArgumentException {
+        if (this.publisherInfoList == null) {
+            List<PublisherInfo> result = new ArrayList<>();
+            String numberOfDatabases = properties.getProperty("publisher.numberOfDatabases");
+            if (numberOfDatabases == null) {
+                ConnectionInfo connectionInfo = this.getPublisherConnectionInfo();
+                result.add(new PublisherInfo(connectionInfo.getDatabase(), connectionInfo, this.getPublicationName(), this.getPublisherSlot()));
+            } else {
+                for (int i = 1; i <= Integer.parseInt(numberOfDatabases); i++) {
+                    result.add(this.loadPublisherInfo(i));
+                }
+                if (result.isEmpty()) {
+                    throw new IllegalArgumentException("the parameter - publisher.numberOfDatabases must be positive");
+                }
+            }
+
+            List<String> names = new ArrayList<>();
+            for (PublisherInfo publisherInfo : result) {
+                if (names.contains(publisherInfo.getName())) {
+                    throw new IllegalArgumentException(String.format("the publisher database name: %s is not unique", publisherInfo.getName()));
+                }
+                names.add(publisherInfo.getName());
+            }
+            this.publisherInfoList = result;
+        }
+        return this.publisherInfoList;
+    }
+
+    private PublisherInfo loadPublisherInfo(int index) throws IllegalArgumentException {
+        String prefix = String.format("publisher.database%s.", index);
+        String database = properties.getProperty(prefix + "connectionInfo.database");
+        if (database == null) {
+            throw new IllegalArgumentException(String.format("the parameter - %sconnectionInfo.database is missing...", prefix));
+        }
+
+        String server = properties.getProperty(prefix + "connectionInfo.server", properties.getProperty("publisher.connectionInfo.server"));
+        if (server == null) {
+            throw new IllegalArgumentException(String.format("the publisher server IP of the database: %s is missed...", database));
+        }
+
+        String user = properties.getProperty(prefix + "connectionInfo.user", properties.getProperty("publisher.connectionInfo.user"));
+        if (user == null) {
+            throw new IllegalArgumentException(String.format("the publisher user name of the database: %s is missed...", database));
+        }
+
+        String password = properties.getProperty(prefix + "connectionInfo.password", properties.getProperty("publisher.connectionInfo.password"));
+        if (password == null) {
+            throw new IllegalArgumentException(String.format("the publisher user password of the database: %s is missed...", database));
+        }
+
+        String publicationName = properties.getProperty(prefix + "publicationName", properties.getProperty("publisher.publicationName"));
+        if (publicationName == null) {
+            throw new IllegalArgumentException(String.format("the publication name of the database: %s is missed...", database));
+        }
+
+        String slot = properties.getProperty(prefix + "slot");
+        if (slot == null) {
+            slot = this.getPublisherSlot() + "_" + index;
+        }
+
+        String name = properties.getProperty(prefix + "name", database);
+        return new PublisherInfo(name, new ConnectionInfo(server, database, user, password), publicationName, slot);
+    }
+
+    /*
+        scheduler.threads - the size of the pool shared by the tasks of all databases, 0 - every task
+        runs on a thread of its own; 0 by default for one database, the number of processors for more
+     */
+    public int getSchedulerThreads() throws IllegalArgumentException {
+        String defaultThreads = (this.getPublisherInfoList().size() == 1) ? "0" : String.valueOf(Runtime.getRuntime().availableProcessors());
+        int threads = Integer.parseInt(properties.getProperty("scheduler.threads", defaultThreads));
+        if (threads < 0) {
+            throw new IllegalArgumentException("the parameter - scheduler.threads must not be negative");
+        }
+        return threads;
+    }
+
+    /* the longest delay of the idle task on the shared pool */
+    public long getSchedulerMaxIdleNanos() throws IllegalArgumentException {
+        return TimeUnit.MICROSECONDS.toNanos(Long.parseLong(properties.getProperty("scheduler.maxIdleMicros", "1000")));
+    }
+
     public int getMaxTasks() throws IllegalArgumentException {
         String maxTasks = properties.getProperty("maxTasks");
         if (maxTasks == null) {
@@ -134,6 +242,34 @@ public class Configuration {
         return Integer.parseInt(maxTasks);
     }
 
+    /*
+        the workers applying the batches of all sources, every one keeps a connection of the subscriber;
+        in the transactional mode every source may also apply a large transaction on a connection of its own
+     */
+    public int getApplyThreads() throws IllegalArgumentException {
+        int threads = Integer.parseInt(properties.getProperty("apply.threads", String.valueOf(this.getMaxTasks())));
+        int maxThreads = BasicConnectionPool.MAX_POOL_SIZE - (this.isTransactional() ? this.getPublisherInfoList().size() : 0);
+        if (threads < 1 || threads > maxThreads) {
+            throw new IllegalArgumentException("the parameter - apply.threads must be from 1 to " + maxThreads);
+        }
+        return threads;
+    }
+
+    /*
+        The number of the lanes the batches are split into by the key of the changed row (0 - not
+        split), the transaction is not split, so the lanes are not used with the transactional mode
+     */
+    public int getApplyLanes() throws IllegalArgumentException {
+        int lanes = Integer.parseInt(properties.getProperty("apply.lanes", "0"));
+        if (lanes < 0) {
+            throw new IllegalArgumentException("the parameter - apply.lanes must not be negative");
+        }
+        if (lanes > 0 && this.isTransactional()) {
+            throw new IllegalArgumentException("the parameter - apply.lanes cannot be used with the transactional mode");
+        }
+        return lanes;
+    }
+
     public int getBatchSize() throws IllegalArgumentException {
         String batchSize = properties.getProperty("batchSize");
         if (batchSize == null) {
@@ -142,6 +278,221 @@ public class Configuration {
         return Integer.parseInt(batchSize);
     }
 
+    /* how long the oldest record of the incomplete batch may wait before the batch is applied anyway */
+    public long getBatchMaxLatencyNanos() throws IllegalArgumentException {
+        long millis = Long.parseLong(properties.getProperty("batchMaxLatencyMillis", "10"));
+        if (millis < 0) {
+            throw new IllegalArgumentException("the parameter - batchMaxLatencyMillis must not be negative");
+        }
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /*
+        the changes are passed with their begin and commit, the subscriber applies every transaction
+        (or several small ones, up to batchSize records together) as one database transaction
+     */
+    public boolean isTransactional() {
+        return Boolean.parseBoolean(properties.getProperty("transactional", "false"));
+    }
+
+    /*
+        the existing replication slot is dropped and created again at the start, off by default:
+        the kept slot resumes from its confirmed flush LSN, the changes not committed by the
+        subscriber (or not synced to the spool) before the stop are sent again
+     */
+    public boolean isSlotDropIfExists() {
+        return Boolean.parseBoolean(properties.getProperty("publisher.slotDropIfExists", "false"));
+    }
+
+    /* the typed decoder writes the output straight from the replication buffer, off by default */
+    public boolean isTypedEvent() {
+        return Boolean.parseBoolean(properties.getProperty("publisher.typedEvent", "false"));
+    }
+
+    /*
+        the payload format of the changes passed to the subscriber: application/json (default),
+        application/x-jackson-smile, application/cbor, application/x-seizure-compact or
+        in-process - the decoded changes are passed as they are, without any payload
+     */
+    public String getOutputFormat() throws IllegalArgumentException {
+        String outputFormat = properties.getProperty("publisher.outputFormat", JsonMessageSerializer.OUTPUT_FORMAT).trim().toLowerCase();
+        if (Stream.OUTPUT_IN_PROCESS.equals(outputFormat) == false) {
+            MessageSerializers.create(outputFormat); // fails on the unknown format
+        }
+        return outputFormat;
+    }
+
+    /*
+        backoff (default) - the capture loop spins, yields and then parks up to publisher.idle.maxParkMicros
+        when there are no changes, sleep - it sleeps publisher.idle.sleepMillis after every empty read
+     */
+    public IdleStrategy getIdleStrategy() throws IllegalArgumentException {
+        String idleStrategy = properties.getProperty("publisher.idleStrategy", "backoff").trim().toLowerCase();
+        switch (idleStrategy) {
+            case "backoff":
+                return new BackoffIdleStrategy(
+                        Integer.parseInt(properties.getProperty("publisher.idle.spins", "200")),
+                        Integer.parseInt(properties.getProperty("publisher.idle.yields", "50")),
+                        TimeUnit.MICROSECONDS.toNanos(Long.parseLong(properties.getProperty("publisher.idle.minParkMicros", "1"))),
+                        TimeUnit.MICROSECONDS.toNanos(Long.parseLong(properties.getProperty("publisher.idle.maxParkMicros", "500"))));
+            case "sleep":
+                return new SleepingIdleStrategy(Long.parseLong(properties.getProperty("publisher.idle.sleepMillis", "10")));
+            default:
+                throw new IllegalArgumentException(String.format("the parameter - publisher.idleStrategy has wrong value: %s", idleStrategy));
+        }
+    }
+
+    /* the number of the changes between the publisher and the subscriber, rounded up to the power of two */
+    public int getQueueCapacity() throws IllegalArgumentException {
+        int capacity = Integer.parseInt(properties.getProperty("queue.capacity", "16384"));
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("the parameter - queue.capacity must be positive");
+        }
+        return capacity;
+    }
+
+    /*
+        what the capture thread does while the queue is full: park (default) - parks queue.parkMicros,
+        yield - yields the processor, spin - busy spins, backoff - as publisher.idleStrategy=backoff
+     */
+    public IdleStrategy getQueueWaitStrategy() throws IllegalArgumentException {
+        String waitStrategy = properties.getProperty("queue.waitStrategy", "park").trim().toLowerCase();
+        switch (waitStrategy) {
+            case "park":
+                return new ParkingIdleStrategy(TimeUnit.MICROSECONDS.toNanos(Long.parseLong(properties.getProperty("queue.parkMicros", "100"))));
+            case "yield":
+                return new YieldingIdleStrategy();
+            case "spin":
+                return new BusySpinIdleStrategy();
+            case "backoff":
+                return new BackoffIdleStrategy(
+                        Integer.parseInt(properties.getProperty("publisher.idle.spins", "200")),
+                        Integer.parseInt(properties.getProperty("publisher.idle.yields", "50")),
+                        TimeUnit.MICROSECONDS.toNanos(Long.parseLong(properties.getProperty("publisher.idle.minParkMicros", "1"))),
+                        TimeUnit.MICROSECONDS.toNanos(Long.parseLong(properties.getProperty("publisher.idle.maxParkMicros", "500"))));
+            default:
+                throw new IllegalArgumentException(String.format("the parameter - queue.waitStrategy has wrong value: %s", waitStrategy));
+        }
+    }
+
+    /*
+        spool.enabled - the changes are passed to the subscriber through the spool on the local disk,
+        the slot is confirmed as soon as they are there; the payload format must not be in-process
+     */
+    public SpoolOptions getSpoolOptions() throws IllegalArgumentException {
+        SpoolOptions spoolOptions = new SpoolOptions();
+        spoolOptions.setEnabled(Boolean.parseBoolean(properties.getProperty("spool.enabled", "false")));
+        spoolOptions.setDirectory(properties.getProperty("spool.directory", spoolOptions.getDirectory()));
+        spoolOptions.setSegmentBytes(Long.parseLong(properties.getProperty("spool.segmentBytes", String.valueOf(spoolOptions.getSegmentBytes()))));
+        spoolOptions.setMaxBytes(Long.parseLong(properties.getProperty("spool.maxBytes", String.valueOf(spoolOptions.getMaxBytes()))));
+        spoolOptions.setSyncMillis(Long.parseLong(properties.getProperty("spool.syncMillis", String.valueOf(spoolOptions.getSyncMillis()))));
+        spoolOptions.setSyncBytes(Long.parseLong(properties.getProperty("spool.syncBytes", String.valueOf(spoolOptions.getSyncBytes()))));
+        spoolOptions.setRetentionMillis(Long.parseLong(properties.getProperty("spool.retentionMillis", String.valueOf(spoolOptions.getRetentionMillis()))));
+        if (spoolOptions.getSegmentBytes() <= 0 || spoolOptions.getSegmentBytes() > Integer.MAX_VALUE
+                || spoolOptions.getMaxBytes() <= 0 || spoolOptions.getSyncMillis() < 0
+                || spoolOptions.getSyncBytes() <= 0 || spoolOptions.getRetentionMillis() < 0) {
+            throw new IllegalArgumentException("the parameters - spool.segmentBytes (up to 2GB), spool.maxBytes, spool.syncBytes must be positive, spool.syncMillis, spool.retentionMillis must not be negative");
+        }
+        if (spoolOptions.isEnabled() && Stream.OUTPUT_IN_PROCESS.equals(this.getOutputFormat())) {
+            throw new IllegalArgumentException("the spool needs the serialized changes, the parameter - publisher.outputFormat must not be in-process");
+        }
+        return spoolOptions;
+    }
+
+    /* audit (default) - one row with the action 'truncate', truncate - the subscriber table is truncated, ignore */
+    public TruncateMode getTruncateMode() throws IllegalArgumentException {
+        String truncateMode = properties.getProperty("subscriber.truncateMode", "audit");
+        try {
+            return TruncateMode.valueOf(truncateMode.trim().toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException(String.format("the parameter - subscriber.truncateMode has wrong value: %s", truncateMode));
+        }
+    }
+
+    /* audit (default) - the subscriber table is the log of the changes, replica - the copy of the publisher table */
+    public SubscriberMode getSubscriberMode() throws IllegalArgumentException {
+        String subscriberMode = properties.getProperty("subscriber.mode", "audit");
+        SubscriberMode mode;
+        try {
+            mode = SubscriberMode.valueOf(subscriberMode.trim().toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException(String.format("the parameter - subscriber.mode has wrong value: %s", subscriberMode));
+        }
+        if (mode == SubscriberMode.REPLICA && this.getApplyMode() == ApplyMode.COPY) {
+            throw new IllegalArgumentException("the replica cannot be written by COPY, the parameter - subscriber.applyMode must be insert or prepared");
+        }
+        return mode;
+    }
+
+    /*
+        insert (default) - an insert statement per row, copy - a COPY per table of the batch,
+        prepared - the cached insert statements executed by the JDBC batches
+     */
+    public ApplyMode getApplyMode() throws IllegalArgumentException {
+        String applyMode = properties.getProperty("subscriber.applyMode", "insert");
+        try {
+            return ApplyMode.valueOf(applyMode.trim().toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException(String.format("the parameter - subscriber.applyMode has wrong value: %s", applyMode));
+        }
+    }
+
+    /* the format of the COPY: text (default) or binary */
+    public boolean isBinaryCopy() throws IllegalArgumentException {
+        String copyFormat = properties.getProperty("subscriber.copyFormat", "text").trim();
+        if (copyFormat.equalsIgnoreCase("text") == false && copyFormat.equalsIgnoreCase("binary") == false) {
+            throw new IllegalArgumentException(String.format("the parameter - subscriber.copyFormat has wrong value: %s", copyFormat));
+        }
+        return copyFormat.equalsIgnoreCase("binary");
+    }
+
+    public ReplicationOptions getReplicationOptions() throws IllegalArgumentException {
+        ReplicationOptions replicationOptions = new ReplicationOptions();
+        replicationOptions.setProtoVersion(Integer.parseInt(properties.getProperty("publisher.protoVersion", "0")));
+        replicationOptions.setBinary(Boolean.parseBoolean(properties.getProperty("publisher.binary", "false")));
+        replicationOptions.setStreaming(Boolean.parseBoolean(properties.getProperty("publisher.streaming", "false")));
+
+        String streamingMemoryBytes = properties.getProperty("publisher.streaming.memoryBytes");
+        if (streamingMemoryBytes != null) {
+            replicationOptions.setStreamingMemoryBytes(Long.parseLong(streamingMemoryBytes));
+        }
+        String spillSegmentBytes = properties.getProperty("publisher.streaming.spillSegmentBytes");
+        if (spillSegmentBytes != null) {
+            replicationOptions.setSpillSegmentBytes(Long.parseLong(spillSegmentBytes));
+        }
+        String spillDirectory = properties.getProperty("publisher.streaming.spillDirectory");
+        if (spillDirectory != null) {
+            replicationOptions.setSpillDirectory(spillDirectory);
+        }
+
+        replicationOptions.setToastCacheMaxBytes(Long.parseLong(properties.getProperty("publisher.toastCache.maxBytes", "0")));
+        replicationOptions.setToastCacheMinValueBytes(Integer.parseInt(properties.getProperty("publisher.toastCache.minValueBytes", "64")));
+
+        replicationOptions.setMessages(Boolean.parseBoolean(properties.getProperty("publisher.messages", "false")));
+        replicationOptions.setTwoPhase(Boolean.parseBoolean(properties.getProperty("publisher.twoPhase", "false")));
+        replicationOptions.setControlMessagePrefix(properties.getProperty("publisher.messages.controlPrefix", "seizure"));
+
+        replicationOptions.setBatchMaxMessages(Integer.parseInt(properties.getProperty("publisher.batch.maxMessages", "1000")));
+        replicationOptions.setBatchMaxBytes(Long.parseLong(properties.getProperty("publisher.batch.maxBytes", "4194304")));
+        replicationOptions.setBatchLingerMillis(Long.parseLong(properties.getProperty("publisher.batch.lingerMillis", "0")));
+        if (replicationOptions.getBatchMaxMessages() <= 0 || replicationOptions.getBatchMaxBytes() <= 0
+                || replicationOptions.getBatchLingerMillis() < 0) {
+            throw new IllegalArgumentException("the parameters - publisher.batch.maxMessages, publisher.batch.maxBytes must be positive, publisher.batch.lingerMillis must not be negative");
+        }
+
+        /* the TOAST cache needs the changes of a row in their order, the parallel decoders do not keep it */
+        replicationOptions.setDecodeThreads(Integer.parseInt(properties.getProperty("publisher.decodeThreads", "0")));
+        if (replicationOptions.getDecodeThreads() < 0) {
+            throw new IllegalArgumentException("the parameter - publisher.decodeThreads must not be negative");
+        }
+        if (replicationOptions.getDecodeThreads() > 0 && replicationOptions.getToastCacheMaxBytes() > 0) {
+            throw new IllegalArgumentException("the parameters - publisher.decodeThreads and publisher.toastCache.maxBytes cannot be used together");
+        }
+
+        replicationOptions.setOldTuples(this.getSubscriberMode() == SubscriberMode.REPLICA);
+        return replicationOptions;
+    }
+
 //    private List<TableInfo> publicationTableInfoList;
 //
 //    public List<TableInfo> getPublicationTableInfoList() throws IllegalArgumentException {
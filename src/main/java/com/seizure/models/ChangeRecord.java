@@ -0,0 +1,97 @@
+package com.seizure.models;
+
+import com.seizure.publisher.models.Change;
+
+/*
+    The serialized change (see MessageSerializer) passed from the publisher to the subscriber
+    together with the LSN of the replication message it was decoded from. In the in-process
+    mode the decoded change itself is passed instead of the payload.
+
+    When the begin and commit messages are passed too, every record carries the transaction
+    it belongs to: the xid, the LSN and the time (microseconds since 2000-01-01) of the commit,
+    the record of the commit message closes the transaction.
+
+    The key hash tells which row the change is made to (see Decode.keyHash), the subscriber
+    keeps the order of the changes with the same hash only (apply.lanes).
+ */
+public class ChangeRecord {
+    /* the change has no row: begin, commit, logical decoding message */
+    public static final int NO_KEY = 0;
+    /* the change is ordered against all the changes: truncate, update of the key */
+    public static final int BARRIER = -1;
+
+    private final byte[] data;
+    private final Change change;
+    private final long lsn;
+    private final int xid;
+    private final long commitLSN;
+    private final long commitTime;
+    private final boolean commit;
+    private long spoolOffset;
+    private int keyHash = NO_KEY;
+
+    public ChangeRecord(byte[] data, long lsn) {
+        this(data, null, lsn, 0, 0, 0, false);
+    }
+
+    public ChangeRecord(Change change, long lsn) {
+        this(null, change, lsn, 0, 0, 0, false);
+    }
+
+    public ChangeRecord(byte[] data, Change change, long lsn, int xid, long commitLSN, long commitTime, boolean commit) {
+        this.data = data;
+        this.change = change;
+        this.lsn = lsn;
+        this.xid = xid;
+        this.commitLSN = commitLSN;
+        this.commitTime = commitTime;
+        this.commit = commit;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    /* null unless the change is passed in-process */
+    public Change getChange() {
+        return change;
+    }
+
+    public long getLsn() {
+        return lsn;
+    }
+
+    public int getXid() {
+        return xid;
+    }
+
+    public long getCommitLSN() {
+        return commitLSN;
+    }
+
+    public long getCommitTime() {
+        return commitTime;
+    }
+
+    public boolean isCommit() {
+        return commit;
+    }
+
+    /* the end of the record in the spool, set when the record is read from it, 0 - not spooled */
+    public long getSpoolOffset() {
+        return spoolOffset;
+    }
+
+    public void setSpoolOffset(long spoolOffset) {
+        this.spoolOffset = spoolOffset;
+    }
+
+    /* not negative, or NO_KEY, or BARRIER */
+    public int getKeyHash() {
+        return keyHash;
+    }
+
+    public void setKeyHash(int keyHash) {
+        this.keyHash = keyHash;
+    }
+}
@@ -1,5 +1,8 @@
 package com.seizure.models;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class PubSubTableInfo {
     private final String pubSchemaName;
     private final String pubTableName;
@@ -9,6 +12,13 @@ public class PubSubTableInfo {
     private final String subSchemaName;
     private final String subTableName;
 
+    /* looked up for every row, made once */
+    private final String pubFullTableName;
+    private final String subFullTableName;
+
+    /* the columns of the replica identity of the publisher table, read when the subscriber is set up (the replica mode) */
+    private List<String> keyColumns = new ArrayList<>();
+
     public String getPubSchemaName() {
         return pubSchemaName;
     }
@@ -33,12 +43,20 @@ public class PubSubTableInfo {
         return subTableName;
     }
 
+    public List<String> getKeyColumns() {
+        return keyColumns;
+    }
+
+    public void setKeyColumns(List<String> keyColumns) {
+        this.keyColumns = keyColumns;
+    }
+
     public String getPubFullTableName() {
-        return pubSchemaName + "." + pubTableName;
+        return pubFullTableName;
     }
 
     public String getSubFullTableName() {
-        return subSchemaName + "." + subTableName;
+        return subFullTableName;
     }
 
     public PubSubTableInfo(String pubSchemaName, String pubTableName, String pubUniqueIndex, String pubCallInfoFieldName, String subSchemaName, String subTableName) {
@@ -48,6 +66,8 @@ public class PubSubTableInfo {
         this.pubCallInfoFieldName = pubCallInfoFieldName;
         this.subSchemaName = subSchemaName;
         this.subTableName = subTableName;
+        this.pubFullTableName = pubSchemaName + "." + pubTableName;
+        this.subFullTableName = subSchemaName + "." + subTableName;
     }
 }
 
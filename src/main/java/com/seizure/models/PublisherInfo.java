@@ -0,0 +1,33 @@
+package com.seizure.models;
+
+/* one of the captured databases: every one has its own slot, queue (or spool) and subscriber tasks */
+public class PublisherInfo {
+    private final String name;
+    private final ConnectionInfo connectionInfo;
+    private final String publicationName;
+    private final String slot;
+
+    public PublisherInfo(String name, ConnectionInfo connectionInfo, String publicationName, String slot) {
+        this.name = name;
+        this.connectionInfo = connectionInfo;
+        this.publicationName = publicationName;
+        this.slot = slot;
+    }
+
+    /* unique in the process, the database name by default */
+    public String getName() {
+        return name;
+    }
+
+    public ConnectionInfo getConnectionInfo() {
+        return connectionInfo;
+    }
+
+    public String getPublicationName() {
+        return publicationName;
+    }
+
+    public String getSlot() {
+        return slot;
+    }
+}
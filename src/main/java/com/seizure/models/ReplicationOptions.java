@@ -0,0 +1,166 @@
+package com.seizure.models;
+
+/*
+    The pgoutput options the replication stream is started with.
+    More details in postgres/src/backend/replication/pgoutput/pgoutput.c
+ */
+public class ReplicationOptions {
+    private int protoVersion = 0;
+    private boolean binary = false;
+    private boolean streaming = false;
+    private long streamingMemoryBytes = 64L * 1024 * 1024;
+    private long spillSegmentBytes = 64L * 1024 * 1024;
+    private String spillDirectory = System.getProperty("java.io.tmpdir") + "/seizure-spill";
+    private long toastCacheMaxBytes = 0;
+    private int toastCacheMinValueBytes = 64;
+    private boolean messages = false;
+    private boolean twoPhase = false;
+    private String controlMessagePrefix = "seizure";
+    private int batchMaxMessages = 1000;
+    private long batchMaxBytes = 4L * 1024 * 1024;
+    private long batchLingerMillis = 0;
+    private int decodeThreads = 0;
+    private boolean oldTuples = false;
+
+    /* 0 - the highest version supported by the server (1 - 4) */
+    public int getProtoVersion() {
+        return protoVersion;
+    }
+
+    public void setProtoVersion(int protoVersion) {
+        this.protoVersion = protoVersion;
+    }
+
+    /* the column values are sent in the binary format of their types, needs PostgreSQL 14+ */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    /* the large in-progress transactions are streamed before their commit, needs PostgreSQL 14+ */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /* the memory shared by all open streamed transactions, the rest goes to the spill segments */
+    public long getStreamingMemoryBytes() {
+        return streamingMemoryBytes;
+    }
+
+    public void setStreamingMemoryBytes(long streamingMemoryBytes) {
+        this.streamingMemoryBytes = streamingMemoryBytes;
+    }
+
+    public long getSpillSegmentBytes() {
+        return spillSegmentBytes;
+    }
+
+    public void setSpillSegmentBytes(long spillSegmentBytes) {
+        this.spillSegmentBytes = spillSegmentBytes;
+    }
+
+    public String getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public void setSpillDirectory(String spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /* the off-heap memory of the cache of the unchanged TOASTed values, 0 turns the cache off */
+    public long getToastCacheMaxBytes() {
+        return toastCacheMaxBytes;
+    }
+
+    public void setToastCacheMaxBytes(long toastCacheMaxBytes) {
+        this.toastCacheMaxBytes = toastCacheMaxBytes;
+    }
+
+    /* the shorter values are not cached, they are never stored out of line */
+    public int getToastCacheMinValueBytes() {
+        return toastCacheMinValueBytes;
+    }
+
+    public void setToastCacheMinValueBytes(int toastCacheMinValueBytes) {
+        this.toastCacheMinValueBytes = toastCacheMinValueBytes;
+    }
+
+    /* the logical decoding messages (pg_logical_emit_message) are sent, needs PostgreSQL 14+ */
+    public boolean isMessages() {
+        return messages;
+    }
+
+    public void setMessages(boolean messages) {
+        this.messages = messages;
+    }
+
+    /* the prepared transactions are decoded at PREPARE TRANSACTION, needs PostgreSQL 15+ */
+    public boolean isTwoPhase() {
+        return twoPhase;
+    }
+
+    public void setTwoPhase(boolean twoPhase) {
+        this.twoPhase = twoPhase;
+    }
+
+    /* the logical decoding messages with this prefix are the control messages of the seizure */
+    public String getControlMessagePrefix() {
+        return controlMessagePrefix;
+    }
+
+    public void setControlMessagePrefix(String controlMessagePrefix) {
+        this.controlMessagePrefix = controlMessagePrefix;
+    }
+
+    /* the maximum number of the changes in one event */
+    public int getBatchMaxMessages() {
+        return batchMaxMessages;
+    }
+
+    public void setBatchMaxMessages(int batchMaxMessages) {
+        this.batchMaxMessages = batchMaxMessages;
+    }
+
+    /* the event is closed when its payloads reach this size, a larger single change makes an event of its own */
+    public long getBatchMaxBytes() {
+        return batchMaxBytes;
+    }
+
+    public void setBatchMaxBytes(long batchMaxBytes) {
+        this.batchMaxBytes = batchMaxBytes;
+    }
+
+    /* how long the not full event waits for more changes, 0 - it is returned as soon as nothing is pending */
+    public long getBatchLingerMillis() {
+        return batchLingerMillis;
+    }
+
+    public void setBatchLingerMillis(long batchLingerMillis) {
+        this.batchLingerMillis = batchLingerMillis;
+    }
+
+    /* the number of the threads decoding the messages in parallel, 0 - they are decoded by the reading thread */
+    public int getDecodeThreads() {
+        return decodeThreads;
+    }
+
+    public void setDecodeThreads(int decodeThreads) {
+        this.decodeThreads = decodeThreads;
+    }
+
+    /* the old key (the old row with FULL replica identity) of the update is passed on, the replica deletes the row of the changed key */
+    public boolean isOldTuples() {
+        return oldTuples;
+    }
+
+    public void setOldTuples(boolean oldTuples) {
+        this.oldTuples = oldTuples;
+    }
+}
@@ -0,0 +1,75 @@
+package com.seizure.models;
+
+/*
+    The spool on the local disk between the capture and the subscriber (see Spool).
+ */
+public class SpoolOptions {
+    private boolean enabled = false;
+    private String directory = System.getProperty("java.io.tmpdir") + "/seizure-spool";
+    private long segmentBytes = 64L * 1024 * 1024;
+    private long maxBytes = 1024L * 1024 * 1024;
+    private long syncMillis = 10;
+    private long syncBytes = 1024L * 1024;
+    private long retentionMillis = 0;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    /* the size of one memory-mapped segment file, a larger record gets a segment of its own size */
+    public long getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    public void setSegmentBytes(long segmentBytes) {
+        this.segmentBytes = segmentBytes;
+    }
+
+    /* the capture waits while the records not committed by the subscriber take more */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /* the appended records are forced to the disk at least this often ... */
+    public long getSyncMillis() {
+        return syncMillis;
+    }
+
+    public void setSyncMillis(long syncMillis) {
+        this.syncMillis = syncMillis;
+    }
+
+    /* ... or as soon as this much is appended */
+    public long getSyncBytes() {
+        return syncBytes;
+    }
+
+    public void setSyncBytes(long syncBytes) {
+        this.syncBytes = syncBytes;
+    }
+
+    /* how long the segments committed by the subscriber are kept, 0 - they are deleted at once */
+    public long getRetentionMillis() {
+        return retentionMillis;
+    }
+
+    public void setRetentionMillis(long retentionMillis) {
+        this.retentionMillis = retentionMillis;
+    }
+}
@@ -1,78 +1,212 @@
 package com.seizure.publisher;
 
-import com.seizure.models.ConnectionInfo;
+import com.seizure.models.ChangeRecord;
+import com.seizure.models.PublisherInfo;
+import com.seizure.models.ReplicationOptions;
 import com.seizure.publisher.models.Event;
+import com.seizure.services.IdleStrategy;
+import com.seizure.services.LsnTracker;
+import com.seizure.services.RingBuffer;
+import com.seizure.services.Spool;
+import com.seizure.services.Task;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.sql.SQLException;
-import java.util.LinkedList;
+import java.io.IOException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 
-public class ChangeDataCapture extends Thread {
+/*
+    Reads the replication stream of one publisher database and passes the changes to the
+    queue (or the spool). Every step reads one event, so the captures of many databases
+    can share the threads of the TaskScheduler.
+ */
+public class ChangeDataCapture extends Task {
     private static final Logger logger = LogManager.getLogger(ChangeDataCapture.class);
 
-    private ConcurrentLinkedQueue<String> queue;
+    /* how often the status is sent while the queue is full and the stream is not read */
+    private static final long BACKPRESSURE_STATUS_NANOS = TimeUnit.SECONDS.toNanos(1);
 
-    private final String database; // PostgreSQL database
+    private final RingBuffer<ChangeRecord> queue;
+    private final Spool spool;
+
+    private final String name; // the publisher database
     private boolean isSimpleEvent = true;
+    private boolean isTypedEvent = false;
     private boolean withBeginCommit = false;
 
-    private final ConnectionInfo connectionInfo;
-    private final String publicationName;
-    private final String slot;
+    private final PublisherInfo publisherInfo;
     private final boolean slotDropIfExists;
+    private final ReplicationOptions replicationOptions;
+    private final IdleStrategy idleStrategy;
+    private final LsnTracker lsnTracker;
+    private final String outputFormat;
+    private final IdleStrategy queueWaitStrategy;
+
+    private Replication replication;
+    private Long startLSN = null;
+    private boolean failed;
+
+    /* the event whose records do not fit into the queue yet, the stream is not read until they do */
+    private Event pending;
+    private int pendingIndex;
+    private long statusTime;
 
-    public ChangeDataCapture(ConcurrentHashMap<String, ConcurrentLinkedQueue<String>> concurrentHashMap,
-                             ConnectionInfo connectionInfo,
-                             String publicationName,
-                             String slot,
+    public ChangeDataCapture(ConcurrentHashMap<String, RingBuffer<ChangeRecord>> concurrentHashMap,
+                             int queueCapacity,
+                             PublisherInfo publisherInfo,
                              boolean slotDropIfExists,
                              boolean isSimpleEvent,
-                             boolean withBeginCommit) throws ClassNotFoundException, SQLException {
-        this.database = connectionInfo.getDatabase();
+                             boolean isTypedEvent,
+                             boolean withBeginCommit,
+                             ReplicationOptions replicationOptions,
+                             IdleStrategy idleStrategy,
+                             LsnTracker lsnTracker,
+                             String outputFormat,
+                             IdleStrategy queueWaitStrategy,
+                             Spool spool) {
+        this.name = publisherInfo.getName();
         this.isSimpleEvent = isSimpleEvent;
+        this.isTypedEvent = isTypedEvent;
         this.withBeginCommit = withBeginCommit;
 
-        if (concurrentHashMap.containsKey(database) == false) {
-            this.queue = new ConcurrentLinkedQueue<>();
-            concurrentHashMap.put(database, this.queue);
-        }
+        /* with the spool the changes are passed through the disk, there is no queue */
+        this.spool = spool;
+        this.queue = (spool != null) ? null : concurrentHashMap.computeIfAbsent(this.name, key -> new RingBuffer<>(queueCapacity));
 
-        this.connectionInfo = connectionInfo;
-        this.publicationName = publicationName;
-        this.slot = slot;
+        this.publisherInfo = publisherInfo;
         this.slotDropIfExists = slotDropIfExists;
+        this.replicationOptions = replicationOptions;
+        this.idleStrategy = idleStrategy;
+        this.lsnTracker = lsnTracker;
+        this.outputFormat = outputFormat;
+        this.queueWaitStrategy = queueWaitStrategy;
+
+        if (this.queue != null) {
+            logger.info("the queue of the database: {}, capacity: {}", this.name, this.queue.capacity());
+        }
+    }
 
-        logger.info("the new queue created corresponding to the database: {}", database);
+    @Override
+    public String getName() {
+        return "capture-" + this.name;
     }
 
-    public void run() {
+    @Override
+    protected boolean doWork() throws Exception {
+        if (this.replication == null) {
+            this.replication = new Replication(this.publisherInfo.getConnectionInfo(), this.publisherInfo.getPublicationName(),
+                    this.publisherInfo.getSlot(), this.replicationOptions);
+            this.replication.initializeReplication(this.slotDropIfExists);
+            this.startLSN = this.replication.getConfirmedFlushLSN();
+        }
+
+        if (this.pending != null && this.publishPending() == false) {
+            /* backpressure: the status is still sent, so the server keeps the connection */
+            if (System.nanoTime() - this.statusTime >= BACKPRESSURE_STATUS_NANOS) {
+                this.confirmFlushedLSN();
+                this.replication.forceUpdateStatus();
+                this.statusTime = System.nanoTime();
+            }
+            return false;
+        }
+
+        Event eventChanges = this.replication.readEvent(this.isSimpleEvent, this.isTypedEvent, this.withBeginCommit, this.outputFormat, this.startLSN);
+        this.failed = (eventChanges == null);
+        boolean busy = false;
+        if (eventChanges != null && eventChanges.isEmpty() == false) {
+            this.lsnTracker.enqueued(eventChanges.size());
+            this.pending = eventChanges;
+            this.pendingIndex = 0;
+            if (this.publishPending() == false) {
+                logger.debug("the queue of the database: {} is full, reading of the replication stream is paused", this.name);
+                this.statusTime = System.nanoTime();
+            }
+            busy = true;
+        }
+
+        this.confirmFlushedLSN();
+        return busy;
+    }
+
+    /* the failed read: the failure is logged already, let the server breathe */
+    @Override
+    protected void idle() throws InterruptedException {
+        if (this.failed) {
+            Thread.sleep(10); // Sleep 10 millis
+        } else if (this.pending != null) {
+            this.queueWaitStrategy.idle();
+        } else {
+            this.idleStrategy.idle();
+        }
+    }
+
+    @Override
+    protected void reset() {
+        this.idleStrategy.reset();
+        this.queueWaitStrategy.reset();
+    }
+
+    @Override
+    protected boolean onClose() {
+        logger.info("listening of the database: {} has been stopped...", this.name);
         try {
-            String outputFormat = "application/json";
-            Long startLSN = null;
-
-            try (Replication replication = new Replication(connectionInfo, publicationName, slot)) {
-                replication.initializeReplication(slotDropIfExists);
-
-                while (Thread.interrupted() == false) {
-                    Event eventChanges = replication.readEvent(this.isSimpleEvent, this.withBeginCommit, outputFormat, startLSN);
-                    if (eventChanges != null) {
-                        LinkedList<String> changes = eventChanges.getData();
-                        changes.forEach(change -> this.queue.add(change));
-                    } else {
-                        Thread.sleep(10);
-                    }
+            if (this.replication != null) {
+                /* the records on the disk and committed by the subscriber are confirmed before the stop */
+                if (this.spool != null) {
+                    long lsn = this.spool.getUnsyncedLSN();
+                    this.lsnTracker.acknowledge(lsn, this.spool.sync());
                 }
+                this.confirmFlushedLSN();
+                this.replication.close();
             }
+        } finally {
+            if (this.spool != null) {
+                this.spool.close();
+            }
+        }
+        return true;
+    }
 
-        } catch (InterruptedException iex) {
-            logger.info("run() - listening of the database: {} has been interrupted...", this.database);
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            logger.error("run() - {}", ex.toString());
+    /*
+        Backpressure: while the queue (or the spool) is full the replication stream is not read,
+        the changes stay in the WAL on the server. Returns true when the whole event is published.
+     */
+    private boolean publishPending() throws IOException {
+        while (this.pendingIndex < this.pending.size()) {
+            if (this.offer(this.pending.get(this.pendingIndex)) == false) {
+                return false;
+            }
+            this.pendingIndex++;
         }
+        if (this.statusTime != 0) {
+            logger.debug("the queue of the database: {} has room again, reading is resumed", this.name);
+            this.statusTime = 0;
+        }
+        this.pending = null;
+        return true;
     }
-}
 
+    private boolean offer(ChangeRecord record) throws IOException {
+        return (this.spool != null) ? this.spool.offer(record) : this.queue.offer(record);
+    }
+
+    /* the records on the disk cannot be lost anymore, they are acknowledged to the tracker as the subscriber does without the spool */
+    private void syncSpool() {
+        if (this.spool.isSyncDue()) {
+            long lsn = this.spool.getUnsyncedLSN();
+            this.lsnTracker.acknowledge(lsn, this.spool.sync());
+        }
+    }
+
+    /* the records of the event are counted as enqueued before they are published, so the tracker does not confirm them */
+    private void confirmFlushedLSN() {
+        if (this.spool != null) {
+            this.syncSpool();
+        }
+        Long lastReceiveLSN = this.replication.getLastReceiveLSN();
+        if (lastReceiveLSN != null) {
+            this.replication.confirmFlushedLSN(this.lsnTracker.getFlushableLSN(lastReceiveLSN));
+        }
+    }
+}
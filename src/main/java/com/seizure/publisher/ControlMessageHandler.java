@@ -0,0 +1,13 @@
+package com.seizure.publisher;
+
+/*
+    Receives the logical decoding messages emitted on the publisher with the control prefix:
+
+        select pg_logical_emit_message(false, 'seizure', 'the content');
+
+    The control messages are consumed by the stream, they never reach the subscriber.
+    The transactional ones arrive in the order of the commits, the rest immediately.
+ */
+public interface ControlMessageHandler {
+    void handle(String prefix, String content, long lsn, boolean transactional);
+}
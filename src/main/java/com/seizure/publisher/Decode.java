@@ -1,17 +1,20 @@
 package com.seizure.publisher;
 
+import com.seizure.models.ChangeRecord;
+import com.seizure.publisher.codecs.BinaryCodecs;
+import com.seizure.publisher.codecs.ColumnCodecs;
 import com.seizure.publisher.models.Column;
+import com.seizure.publisher.models.MessageType;
 import com.seizure.publisher.models.Relation;
+import com.seizure.publisher.models.ReplicationMessage;
+import com.seizure.publisher.models.TupleView;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.sql.Connection;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -22,8 +25,63 @@ import java.util.HashMap;
 public class Decode {
     private static final Logger logger = LogManager.getLogger(Decode.class);
 
-    private static final HashMap<Integer, String> dataTypes = new HashMap<Integer, String>();
-    private final HashMap<Integer, Relation> relations = new HashMap<Integer, Relation>();
+    private IntObjectMap<Relation> relations = new IntObjectMap<Relation>();
+    /* the relation message replaces the map instead of changing it, the maps given away stay as they were */
+    private boolean copyOnWrite;
+    private final TypeRegistry typeRegistry;
+
+    /* resolves the unchanged TOASTed values, null when the cache is turned off */
+    private ToastCache toastCache;
+    private ReplicationMessage toastMessage;
+
+    /* the old key or tuple of the update is kept in the message (oldTupleData), otherwise only the new tuple is */
+    private boolean oldTuples;
+
+    public Decode() {
+        this(new TypeRegistry());
+    }
+
+    public Decode(TypeRegistry typeRegistry) {
+        this.typeRegistry = typeRegistry;
+    }
+
+    void setCopyOnWrite(boolean copyOnWrite) {
+        this.copyOnWrite = copyOnWrite;
+    }
+
+    /* the relations known so far, with copyOnWrite the map is never changed afterwards */
+    IntObjectMap<Relation> getRelations() {
+        return this.relations;
+    }
+
+    /* the decoder of the pipeline worker uses the relations known when the message was read */
+    void setRelations(IntObjectMap<Relation> relations) {
+        this.relations = relations;
+    }
+
+    /*
+        The decoder of the pipeline worker: it shares the type registry of this (reading) decoder,
+        the worker only reads it, the relation and type messages are decoded by the reading thread,
+        and it decodes the messages with the same options.
+     */
+    Decode newWorkerDecode() {
+        Decode decode = new Decode(this.typeRegistry);
+        decode.setOldTuples(this.oldTuples);
+        return decode;
+    }
+
+    public void setOldTuples(boolean oldTuples) {
+        this.oldTuples = oldTuples;
+    }
+
+    boolean isOldTuples() {
+        return this.oldTuples;
+    }
+
+    public void setToastCache(ToastCache toastCache) {
+        this.toastCache = toastCache;
+        this.toastMessage = (toastCache == null) ? null : new ReplicationMessage();
+    }
 
     public HashMap<String, Object> decodeLogicalReplicationMessage(ByteBuffer buffer, boolean withBeginCommit)
             throws ParseException, SQLException, UnsupportedEncodingException {
@@ -163,6 +221,9 @@ public class Decode {
                 /* (String) Name of the data type. */
                 message.put("dataTypeName", string_Y.substring(position, string_Y.indexOf(0, position)));
 
+                this.typeRegistry.register((Integer) message.get("dataTypeId"), (String) message.get("namespaceName"),
+                        (String) message.get("dataTypeName"));
+
                 return message;
 
             case 'I': /* Identifies the message as an insert message. */
@@ -197,7 +258,7 @@ public class Decode {
                 message.put("tupleData1", tupleData1[0]);
                 position = (Integer) tupleData1[1];
 
-                if (message.get("tupleType1") == "N") {
+                if ("N".equals(message.get("tupleType1"))) {
                     return message;
                 }
 
@@ -225,6 +286,126 @@ public class Decode {
 
                 return message;
 
+            case 'T': /* Identifies the message as a truncate message. */
+
+                message.put("type", "truncate");
+
+                int numRelations_T = buffer.getInt(position); /* (Int32) Number of relations. */
+                position += 4;
+
+                /* (Int8) Option bits for TRUNCATE: 1 for CASCADE, 2 for RESTART IDENTITY. */
+                message.put("options", (int) buffer.get(position));
+                position += 1;
+
+                ArrayList<Integer> relationIds = new ArrayList<Integer>();
+                for (int i = 0; i < numRelations_T; i++) {
+                    relationIds.add(buffer.getInt(position)); /* (Int32) ID of the relation corresponding to the ID in the relation message. */
+                    position += 4;
+                }
+                message.put("relationIds", relationIds);
+
+                return message;
+
+            case 'M': /* Identifies the message as a logical decoding message. */
+
+                message.put("type", "message");
+
+                /* (Int8) Flags; Either 0 for no flags or 1 if the logical decoding message is transactional. */
+                message.put("transactional", buffer.get(position) == 1);
+                position += 1;
+
+                message.put("messageLSN", buffer.getLong(position)); /* (Int64) The LSN of the logical decoding message. */
+                position += 8;
+
+                int prefixEnd = this.findStringEnd(buffer, position);
+                message.put("prefix", this.readString(buffer, position, prefixEnd)); /* (String) The prefix of the logical decoding message. */
+                position = prefixEnd + 1;
+
+                int contentLength = buffer.getInt(position); /* (Int32) Length of the content. */
+                position += 4;
+
+                message.put("content", ColumnCodecs.readString(buffer, position, contentLength)); /* (Byten) The content of the logical decoding message. */
+
+                return message;
+
+            case 'S': /* Identifies the message as a stream start message (protocol version 2+). */
+
+                message.put("type", "stream_start");
+                message.put("xid", buffer.getInt(1)); /* (Int32) Xid of the transaction. */
+                message.put("firstSegment", buffer.get(5) == 1); /* (Int8) 1 for the first stream segment of the transaction. */
+
+                return message;
+
+            case 'E': /* Identifies the message as a stream stop message. */
+
+                message.put("type", "stream_stop");
+
+                return message;
+
+            case 'c': /* Identifies the message as a stream commit message. */
+
+                message.put("type", "stream_commit");
+                message.put("xid", buffer.getInt(1)); /* (Int32) Xid of the transaction. */
+                message.put("xLSNCommit", buffer.getLong(6)); /* (Int64) The LSN of the commit. */
+                message.put("xLSNEnd", buffer.getLong(14)); /* (Int64) The end LSN of the transaction. */
+                message.put("xCommitTime", getFormattedPostgreSQLEpochDate(buffer.getLong(22))); /* (Int64) Commit timestamp of the transaction. */
+
+                return message;
+
+            case 'A': /* Identifies the message as a stream abort message. */
+
+                message.put("type", "stream_abort");
+                message.put("xid", buffer.getInt(1)); /* (Int32) Xid of the transaction. */
+                message.put("subXid", buffer.getInt(5)); /* (Int32) Xid of the subtransaction (will be same as xid of the transaction for top-level transactions). */
+
+                return message;
+
+            case 'b': /* Identifies the message as the beginning of a prepared transaction (protocol version 3+). */
+
+                message.put("type", "begin_prepare");
+                message.put("xLSNPrepare", buffer.getLong(1)); /* (Int64) The LSN of the prepare. */
+                message.put("xLSNEnd", buffer.getLong(9)); /* (Int64) The end LSN of the prepared transaction. */
+                message.put("xPrepareTime", getFormattedPostgreSQLEpochDate(buffer.getLong(17))); /* (Int64) Prepare timestamp of the transaction. */
+                message.put("xid", buffer.getInt(25)); /* (Int32) Xid of the transaction. */
+                message.put("gid", this.readString(buffer, 29, this.findStringEnd(buffer, 29))); /* (String) The user defined GID of the prepared transaction. */
+
+                return message;
+
+            case 'P': /* Identifies the message as a prepared transaction message. */
+            case 'p': /* Identifies the message as a stream prepared transaction message. */
+
+                message.put("type", (msgType == 'P') ? "prepare" : "stream_prepare");
+                message.put("xLSNPrepare", buffer.getLong(2)); /* (Int64) The LSN of the prepare. */
+                message.put("xLSNEnd", buffer.getLong(10)); /* (Int64) The end LSN of the prepared transaction. */
+                message.put("xPrepareTime", getFormattedPostgreSQLEpochDate(buffer.getLong(18))); /* (Int64) Prepare timestamp of the transaction. */
+                message.put("xid", buffer.getInt(26)); /* (Int32) Xid of the transaction. */
+                message.put("gid", this.readString(buffer, 30, this.findStringEnd(buffer, 30))); /* (String) The user defined GID of the prepared transaction. */
+
+                return message;
+
+            case 'K': /* Identifies the message as the commit of a prepared transaction. */
+
+                message.put("type", "commit_prepared");
+                message.put("xLSNCommit", buffer.getLong(2)); /* (Int64) The LSN of the commit of the prepared transaction. */
+                message.put("xLSNEnd", buffer.getLong(10)); /* (Int64) The end LSN of the commit of the prepared transaction. */
+                message.put("xCommitTime", getFormattedPostgreSQLEpochDate(buffer.getLong(18))); /* (Int64) Commit timestamp of the transaction. */
+                message.put("xid", buffer.getInt(26)); /* (Int32) Xid of the transaction. */
+                message.put("gid", this.readString(buffer, 30, this.findStringEnd(buffer, 30))); /* (String) The user defined GID of the prepared transaction. */
+
+                return message;
+
+            case 'r': /* Identifies the message as the rollback of a prepared transaction. */
+
+                message.put("type", "rollback_prepared");
+                message.put("xLSNPrepareEnd", buffer.getLong(2)); /* (Int64) The end LSN of the prepared transaction. */
+                message.put("xLSNRollbackEnd", buffer.getLong(10)); /* (Int64) The end LSN of the rollback of the prepared transaction. */
+                message.put("xPrepareTime", getFormattedPostgreSQLEpochDate(buffer.getLong(18))); /* (Int64) Prepare timestamp of the transaction. */
+                message.put("xRollbackTime", getFormattedPostgreSQLEpochDate(buffer.getLong(26))); /* (Int64) Rollback timestamp of the transaction. */
+                message.put("xid", buffer.getInt(34)); /* (Int32) Xid of the transaction. */
+                message.put("gid", this.readString(buffer, 38, this.findStringEnd(buffer, 38))); /* (String) The user defined GID of the prepared transaction. */
+
+                return message;
+
             default:
 
                 message.put("type", "error");
@@ -272,6 +453,14 @@ public class Decode {
                 values += new String(bytes, StandardCharsets.UTF_8); /* (ByteN) The value of the
                  * column, in text format. */
 
+            } else if (statusValue == 'b') { /* binary formatted value, there is no relation here to know its type */
+
+                int lenValue = buffer.getInt(position); /* (Int32) Length of the column value. */
+                position += 4; /* int = 4 bytes */
+
+                values += BinaryCodecs.BYTEA.decode(buffer, position, lenValue);
+                position += lenValue;
+
             } else { /* statusValue = 'n' (NULL value) or 'u' (unchanged TOASTED value) */
 
                 values = (statusValue == 'n') ? values + "null" : values + "UTOAST";
@@ -308,72 +497,19 @@ public class Decode {
                 message.put("type", "origin");
                 return message;
             case 'R': /* Identifies the message as a relation message. */
-                Relation relation = new Relation();
-                relation.setId(buffer.getInt(position)); /* (Int32) ID of the relation. */
-                position += 4;
-
-                buffer.position(0);
-                byte[] bytes_R = new byte[buffer.capacity()];
-                buffer.get(bytes_R);
-                String string_R = new String(bytes_R, StandardCharsets.UTF_8);
-
-                int firstStringEnd = string_R.indexOf(0, position); /* ASCII 0 = Null */
-                int secondStringEnd = string_R.indexOf(0, firstStringEnd + 1); /* ASCII 0 = Null */
-
-                /* ( String ) Namespace ( empty string for pg_catalog ) */
-                relation.setNamespace(string_R.substring(position, firstStringEnd));
-                /* (String) Relation name. */
-                relation.setName(string_R.substring(firstStringEnd + 1, secondStringEnd));
-
-                /* next position = current position + string length + 1 */
-                position += relation.getNamespace().length() + 1 + relation.getName().length() + 1;
-
-                buffer.position(position);
-
-                /*
-                 * (Int8) Replica identity setting for the relation (same as relreplident in pg_class).
-                 */
-                relation.setReplicaIdentity((char) buffer.get(position));
-                position += 1;
-
-                relation.setNumColumns(buffer.getShort(position));  /* (Int16) Number of columns. */
-                position += 2;
-
-                for (int i = 0; i < relation.getNumColumns(); i++) {
-                    Column column = new Column();
-
-                    /*
-                     * (Int8) Flags for the column. Currently can be either 0 for no flags or 1 which marks
-                     * the column as part of the key.
-                     */
-                    column.setIsKey((char) buffer.get(position));
-                    position += 1;
-
-                    /* (String) Name of the column. */
-                    column.setName(string_R.substring(position, string_R.indexOf(0, position)));
-                    position += column.getName().length() + 1;
-
-                    /* (Int32) ID of the column's data type. */
-                    column.setDataTypeId(buffer.getInt(position));
-                    position += 4;
-
-                    column.setDataTypeName(Decode.dataTypes.get(column.getDataTypeId()));
-
-                    /* (Int32) Type modifier of the column (atttypmod). */
-                    column.setTypeModifier(buffer.getInt(position));
-                    position += 4;
-
-                    relation.putColumn(i, column);
-                }
-
-                this.relations.put(relation.getId(), relation);
+                this.putRelation(this.parseRelation(buffer));
 
                 return message;
 
             case 'Y': /* Identifies the message as a type message. */
+                this.registerType(buffer);
                 message.put("type", "type");
                 return message;
             case 'I': /* Identifies the message as an insert message. */
+                if (this.toastCache != null) {
+                    return this.decodeSimpleWithToastCache(buffer, message);
+                }
+
                 message.put("type", "insert");
 
                 /*
@@ -390,6 +526,9 @@ public class Decode {
                 return message;
 
             case 'U': /* Identifies the message as an update message. */
+                if (this.toastCache != null) {
+                    return this.decodeSimpleWithToastCache(buffer, message);
+                }
 
                 message.put("type", "update");
 
@@ -422,10 +561,16 @@ public class Decode {
 
                 message.put("relationName", this.relations.get(relationId_U).getFullName());
                 message.put("tupleData", parseTupleDataSimple(relationId_U, buffer, position)[0]); /* TupleData N */
+                if (this.oldTuples) {
+                    message.put("oldTupleData", tupleData1[0]);
+                }
 
                 return message;
 
             case 'D': /* Identifies the message as a delete message. */
+                if (this.toastCache != null) {
+                    return this.decodeSimpleWithToastCache(buffer, message);
+                }
 
                 message.put("type", "delete");
 
@@ -445,6 +590,66 @@ public class Decode {
 
                 return message;
 
+            case 'T': /* Identifies the message as a truncate message. */
+
+                message.put("type", "truncate");
+
+                int numRelations_T = buffer.getInt(position); /* (Int32) Number of relations. */
+                position += 4;
+
+                /* (Int8) Option bits for TRUNCATE: 1 for CASCADE, 2 for RESTART IDENTITY. */
+                byte options_T = buffer.get(position);
+                position += 1;
+
+                ArrayList<String> relationNames = new ArrayList<String>(numRelations_T);
+                for (int i = 0; i < numRelations_T; i++) {
+                    int relationId_T = buffer.getInt(position); /* (Int32) ID of the relation corresponding to the ID in the relation message. */
+                    position += 4;
+
+                    relationNames.add(this.relations.get(relationId_T).getFullName());
+                    if (this.toastCache != null) {
+                        this.toastCache.evictRelation(relationId_T);
+                    }
+                }
+                message.put("relationNames", relationNames);
+                message.put("cascade", (options_T & 1) != 0);
+                message.put("restartIdentity", (options_T & 2) != 0);
+
+                return message;
+
+            case 'M': /* Identifies the message as a logical decoding message. */
+
+                message.put("type", "message");
+
+                /* (Int8) Flags; Either 0 for no flags or 1 if the logical decoding message is transactional. */
+                message.put("transactional", buffer.get(position) == 1);
+                position += 1;
+
+                position += 8; /* (Int64) The LSN of the logical decoding message. */
+
+                int prefixEnd = this.findStringEnd(buffer, position);
+                message.put("prefix", this.readString(buffer, position, prefixEnd)); /* (String) The prefix of the logical decoding message. */
+                position = prefixEnd + 1;
+
+                int contentLength = buffer.getInt(position); /* (Int32) Length of the content. */
+                position += 4;
+
+                message.put("content", ColumnCodecs.readString(buffer, position, contentLength)); /* (Byten) The content of the logical decoding message. */
+
+                return message;
+
+            case 'S': /* stream start */
+            case 'E': /* stream stop */
+            case 'c': /* stream commit */
+            case 'A': /* stream abort */
+            case 'b': /* begin prepare */
+            case 'P': /* prepare */
+            case 'p': /* stream prepare */
+            case 'K': /* commit prepared */
+            case 'r': /* rollback prepared */
+                /* the transaction control messages of the protocol versions 2+ are handled by the stream */
+                return message;
+
             default:
 
                 message.put("type", "error");
@@ -459,6 +664,9 @@ public class Decode {
         HashMap<String, Object> data = new HashMap<String, Object>();
         Object[] result = {data, position};
 
+        /* the decode plan compiled when the relation message arrived, no lookups per column */
+        Column[] plan = this.relations.get(relationId).getColumns();
+
         short columns = buffer.getShort(position); /* (Int16) Number of columns. */
         position += 2; /* short = 2 bytes */
 
@@ -470,29 +678,17 @@ public class Decode {
              */
             position += 1; /* byte = 1 byte */
 
-            Column column = relations.get(relationId).getColumn(i);
+            Column column = plan[i];
 
-            if (statusValue == 't') {
+            if (statusValue == 't' || statusValue == 'b') {
 
                 int lenValue = buffer.getInt(position); /* (Int32) Length of the column value. */
                 position += 4; /* int = 4 bytes */
 
-                buffer.position(position);
-                byte[] bytes = new byte[lenValue];
-                buffer.get(bytes);
+                /* (ByteN) The value of the column, in text or binary format. */
+                data.put(column.getName(), column.getCodec(statusValue).decode(buffer, position, lenValue));
                 position += lenValue; /* String = length bytes */
 
-
-//                if (column.getDataTypeName().startsWith("int")) { /*
-//                 * (ByteN) The value of the column, in text format. Numeric types are not quoted. */
-//                    data.put(column.getName(), Long.parseLong(new String(bytes, "UTF-8")));
-//                } else {
-//                    /* (ByteN) The value of the column, in text format. */
-//                    data.put(column.getName(), new String(bytes, "UTF-8"));
-//                }
-                this.parseBytes(column, data, bytes);
-
-
             } else { /* statusValue = 'n' (NULL value) or 'u' (unchanged TOASTED value) */
                 if (statusValue == 'n') {
                     data.put(column.getName(), null);
@@ -508,30 +704,433 @@ public class Decode {
         return result;
     }
 
-    private void parseBytes(Column column, HashMap<String, Object> data, byte[] bytes) throws
-            UnsupportedEncodingException {
+    /*
+        Fills the reusable message with the content of the buffer, returns false when
+        there is nothing to hand over (relation, type and origin messages are consumed
+        by the decoder itself, begin and commit are skipped without withBeginCommit).
+     */
+    public boolean decodeLogicalReplicationMessageTyped(ByteBuffer buffer, ReplicationMessage message, boolean withBeginCommit) {
 
-//        logger.info(String.format("data type id: %d, name: %s", column.getDataTypeId(), column.getDataTypeName()));
-//        logger.info(String.format("column name: %s", column.getName()));
-
-        switch (column.getDataTypeId()) {
-//            case 16: // bool
-//                boolean b = (new String(bytes, "UTF-8")).equals("t");
-//                data.put(column.getName(), b);
-//                break;
-            case 20: // int8
-            case 21: // int2
-            case 23: // int4
-                data.put(column.getName(), Long.parseLong(new String(bytes, StandardCharsets.UTF_8)));
-                break;
-//            case 700: // float4
-//                data.put(column.getName(), Double.parseDouble(new String(bytes, "UTF-8")));
-//                break;
+        char msgType = (char) buffer.get(0); /* (Byte1) Identifies the message type. */
+        int position = 1;
+
+        switch (msgType) {
+            case 'B': /* Identifies the message as a begin message. */
+                message.setType(MessageType.BEGIN);
+                message.setRelation(null);
+                message.setFinalLSN(buffer.getLong(1)); /* (Int64) The final LSN of the transaction. */
+                message.setCommitTime(buffer.getLong(9)); /* (Int64) Commit timestamp of the transaction. */
+                message.setXid(buffer.getInt(17)); /* (Int32) Xid of the transaction. */
+                return withBeginCommit;
+
+            case 'C': /* Identifies the message as a commit message. */
+                message.setType(MessageType.COMMIT);
+                message.setRelation(null);
+                message.setCommitLSN(buffer.getLong(2)); /* (Int64) The LSN of the commit. */
+                message.setEndLSN(buffer.getLong(10)); /* (Int64) The end LSN of the transaction. */
+                message.setCommitTime(buffer.getLong(18)); /* (Int64) Commit timestamp of the transaction. */
+                return withBeginCommit;
+
+            case 'O': /* Identifies the message as an origin message. */
+                return false;
+
+            case 'Y': /* Identifies the message as a type message. */
+                this.registerType(buffer);
+                return false;
+
+            case 'R': /* Identifies the message as a relation message. */
+                this.putRelation(this.parseRelation(buffer));
+                return false;
+
+            case 'I': /* Identifies the message as an insert message. */
+                message.setType(MessageType.INSERT);
+
+                /* (Int32) ID of the relation corresponding to the ID in the relation message. */
+                message.setRelation(this.relations.get(buffer.getInt(position)));
+                position += 4;
+
+                position += 1; /* (Byte1) Identifies the following TupleData message as a new tuple ('N'). */
+
+                message.setOldTupleType((char) 0);
+                message.getOldTuple().clear();
+                this.parseTupleView(buffer, position, message.getNewTuple());
+                this.applyToastCache(message);
+                return true;
+
+            case 'U': /* Identifies the message as an update message. */
+                message.setType(MessageType.UPDATE);
+
+                /* (Int32) ID of the relation corresponding to the ID in the relation message. */
+                message.setRelation(this.relations.get(buffer.getInt(position)));
+                position += 4;
+
+                /*
+                 * (Byte1) Either identifies the following TupleData submessage as a key ('K') or as an old tuple ('O') or as a new tuple ('N').
+                 */
+                char tupleType = (char) buffer.get(position);
+                position += 1;
+
+                if (tupleType == 'N') {
+                    message.setOldTupleType((char) 0);
+                    message.getOldTuple().clear();
+                } else {
+                    message.setOldTupleType(tupleType);
+                    position = this.parseTupleView(buffer, position, message.getOldTuple());
+                    position += 1; /* (Byte1) Identifies the following TupleData message as a new tuple ('N'). */
+                }
+
+                this.parseTupleView(buffer, position, message.getNewTuple());
+                this.applyToastCache(message);
+                /* the serializers pass the old tuple on when the message has it */
+                if (this.oldTuples == false) {
+                    message.setOldTupleType((char) 0);
+                }
+                return true;
+
+            case 'D': /* Identifies the message as a delete message. */
+                message.setType(MessageType.DELETE);
+
+                /* (Int32) ID of the relation corresponding to the ID in the relation message. */
+                message.setRelation(this.relations.get(buffer.getInt(position)));
+                position += 4;
+
+                /* (Byte1) Either identifies the following TupleData submessage as a key ('K') or as an old tuple ('O'). */
+                message.setOldTupleType((char) buffer.get(position));
+                position += 1;
+
+                this.parseTupleView(buffer, position, message.getOldTuple());
+                message.getNewTuple().clear();
+                this.applyToastCache(message);
+                return true;
+
+            case 'T': /* Identifies the message as a truncate message. */
+                message.setType(MessageType.TRUNCATE);
+                message.setRelation(null);
+
+                int numRelations = buffer.getInt(position); /* (Int32) Number of relations. */
+                position += 4;
+
+                /* (Int8) Option bits for TRUNCATE: 1 for CASCADE, 2 for RESTART IDENTITY. */
+                message.setTruncateOptions(buffer.get(position));
+                position += 1;
+
+                message.resetTruncatedRelations(numRelations);
+                for (int i = 0; i < numRelations; i++) {
+                    message.setTruncatedRelation(i, this.relations.get(buffer.getInt(position))); /* (Int32) ID of the relation. */
+                    position += 4;
+                }
+                if (this.toastCache != null) {
+                    for (int i = 0; i < numRelations; i++) {
+                        this.toastCache.evictRelation(message.getTruncatedRelation(i).getId());
+                    }
+                }
+                return true;
+
+            case 'M': /* Identifies the message as a logical decoding message. */
+                message.setType(MessageType.MESSAGE);
+                message.setRelation(null);
+
+                /* (Int8) Flags; Either 0 for no flags or 1 if the logical decoding message is transactional. */
+                message.setTransactional(buffer.get(position) == 1);
+                position += 1;
+
+                message.setMessageLSN(buffer.getLong(position)); /* (Int64) The LSN of the logical decoding message. */
+                position += 8;
+
+                int prefixEnd = this.findStringEnd(buffer, position);
+                message.setPrefix(this.readString(buffer, position, prefixEnd)); /* (String) The prefix of the logical decoding message. */
+                position = prefixEnd + 1;
+
+                int contentLength = buffer.getInt(position); /* (Int32) Length of the content. */
+                position += 4;
+
+                message.setContent(buffer, position, contentLength); /* (Byten) The content of the logical decoding message. */
+                return true;
+
+            case 'b': /* Identifies the message as the beginning of a prepared transaction (protocol version 3+). */
+                message.setType(MessageType.BEGIN_PREPARE);
+                message.setRelation(null);
+                message.setXid(buffer.getInt(25)); /* (Int32) Xid of the transaction. */
+                return false;
+
+            case 'P': /* Identifies the message as a prepared transaction message. */
+            case 'p': /* Identifies the message as a stream prepared transaction message. */
+                message.setType(MessageType.PREPARE);
+                message.setRelation(null);
+                message.setXid(buffer.getInt(26)); /* (Int32) Xid of the transaction. */
+                return false;
+
+            case 'K': /* Identifies the message as the commit of a prepared transaction. */
+                message.setType(MessageType.COMMIT_PREPARED);
+                message.setRelation(null);
+                message.setCommitLSN(buffer.getLong(2)); /* (Int64) The LSN of the commit of the prepared transaction. */
+                message.setEndLSN(buffer.getLong(10)); /* (Int64) The end LSN of the commit of the prepared transaction. */
+                message.setCommitTime(buffer.getLong(18)); /* (Int64) Commit timestamp of the transaction. */
+                message.setXid(buffer.getInt(26)); /* (Int32) Xid of the transaction. */
+                return false;
+
+            case 'r': /* Identifies the message as the rollback of a prepared transaction. */
+                message.setType(MessageType.ROLLBACK_PREPARED);
+                message.setRelation(null);
+                message.setXid(buffer.getInt(34)); /* (Int32) Xid of the transaction. */
+                return false;
+
+            case 'S': /* stream start */
+            case 'E': /* stream stop */
+            case 'c': /* stream commit */
+            case 'A': /* stream abort */
+                /* the streamed transactions are assembled by the stream before they are decoded */
+                return false;
 
             default:
-                data.put(column.getName(), new String(bytes, StandardCharsets.UTF_8));
+                logger.warn("decodeLogicalReplicationMessageTyped() - unknown message type \"{}\".", msgType);
+                return false;
+        }
+    }
+
+    private void applyToastCache(ReplicationMessage message) {
+        if (this.toastCache != null) {
+            this.toastCache.apply(message);
+        }
+    }
+
+    /* the simple mode message built from the tuple resolved by the TOAST cache */
+    private HashMap<String, Object> decodeSimpleWithToastCache(ByteBuffer buffer, HashMap<String, Object> message) {
+        this.decodeLogicalReplicationMessageTyped(buffer, this.toastMessage, false);
+
+        Relation relation = this.toastMessage.getRelation();
+        message.put("type", this.toastMessage.getType().getName());
+        message.put("relationName", relation.getFullName());
+        message.put("tupleData", this.toTupleData(relation, this.toastMessage.getTuple()));
+        if (this.toastMessage.getType() == MessageType.UPDATE && this.toastMessage.hasOldTuple()) {
+            message.put("oldTupleData", this.toTupleData(relation, this.toastMessage.getOldTuple()));
+        }
+        return message;
+    }
+
+    private HashMap<String, Object> toTupleData(Relation relation, TupleView tuple) {
+        Column[] plan = relation.getColumns();
+        HashMap<String, Object> data = new HashMap<String, Object>();
+        for (int i = 0; i < tuple.getNumColumns(); i++) {
+            Column column = plan[i];
+            switch (tuple.getKind(i)) {
+                case 'n': /* NULL value */
+                    data.put(column.getName(), null);
+                    break;
+                case 'u': /* unchanged TOASTed value, not found in the cache */
+                    data.put(column.getName(), "UTOAST");
+                    break;
+                default:
+                    data.put(column.getName(), column.getCodec(tuple.getKind(i))
+                            .decode(tuple.getBuffer(i), tuple.getOffset(i), tuple.getLength(i)));
+                    break;
+            }
+        }
+        return data;
+    }
+
+    /* caches the compiled relation, the cached TOAST values of the relation are dropped when its columns change */
+    private void putRelation(Relation relation) {
+        relation.compile();
+        Relation previous = this.relations.get(relation.getId());
+        if (this.copyOnWrite) {
+            this.relations = this.relations.copy();
+        }
+        this.relations.put(relation.getId(), relation);
+
+        if (this.toastCache != null && previous != null && this.hasSameColumns(previous, relation) == false) {
+            this.toastCache.evictRelation(relation.getId());
+        }
+    }
+
+    private boolean hasSameColumns(Relation previous, Relation relation) {
+        if (previous.getNumColumns() != relation.getNumColumns()) {
+            return false;
+        }
+        for (int i = 0; i < relation.getNumColumns(); i++) {
+            Column previousColumn = previous.getColumn(i);
+            Column column = relation.getColumn(i);
+            if (previousColumn.getName().equals(column.getName()) == false
+                    || previousColumn.getDataTypeId() != column.getDataTypeId()
+                    || previousColumn.isKey() != column.isKey()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* remembers where every column value starts, returns the position right after the TupleData */
+    public int parseTupleView(ByteBuffer buffer, int position, TupleView tupleView) {
+
+        short columns = buffer.getShort(position); /* (Int16) Number of columns. */
+        position += 2;
+
+        tupleView.reset(buffer, columns);
+
+        for (int i = 0; i < columns; i++) {
+            /*
+             * (Byte1) Either identifies the data as NULL value ('n') or unchanged TOASTed value ('u') or text
+             * formatted value ('t') or binary formatted value ('b').
+             */
+            byte statusValue = buffer.get(position);
+            position += 1;
+
+            if (statusValue == 't' || statusValue == 'b') {
+                int lenValue = buffer.getInt(position); /* (Int32) Length of the column value. */
+                position += 4;
+
+                tupleView.setColumn(i, statusValue, position, lenValue);
+                position += lenValue;
+            } else {
+                tupleView.setColumn(i, statusValue, position, 0);
+            }
+        }
+
+        return position;
+    }
+
+    /*
+        The hash of the row the insert, update or delete message is made to: of the relation
+        and the values of its key columns, of the relation only when it has no key or its
+        replica identity is full (every update carries the whole old row then). The update of
+        the key (the old key is sent) and the truncate are ChangeRecord.BARRIER, the messages
+        without rows are ChangeRecord.NO_KEY. The relation is known when the message is read.
+     */
+    int keyHash(ByteBuffer buffer) {
+        char msgType = (char) buffer.get(0); /* (Byte1) Identifies the message type. */
+        switch (msgType) {
+            case 'I': /* (Int32) ID of the relation, (Byte1) 'N', the new tuple. */
+            case 'D': /* (Int32) ID of the relation, (Byte1) 'K' or 'O', the old tuple. */
                 break;
+            case 'U': /* (Int32) ID of the relation, (Byte1) 'K' - the old key, 'O' - the old tuple, 'N' - the new tuple. */
+                if (buffer.get(5) == 'K') {
+                    return ChangeRecord.BARRIER;
+                }
+                break;
+            case 'T':
+                return ChangeRecord.BARRIER;
+            default:
+                return ChangeRecord.NO_KEY;
+        }
+
+        Relation relation = this.relations.get(buffer.getInt(1));
+        if (relation == null) {
+            return ChangeRecord.BARRIER;
+        }
+        int hash = relation.getFullName().hashCode();
+        if (relation.getReplicaIdentity() == 'f') {
+            return hash & Integer.MAX_VALUE;
+        }
+
+        Column[] columns = relation.getColumns();
+        int position = 6;
+        short numColumns = buffer.getShort(position); /* (Int16) Number of columns. */
+        position += 2;
+        for (int i = 0; i < numColumns; i++) {
+            byte kind = buffer.get(position);
+            position += 1;
+            boolean isKey = i < columns.length && columns[i].isKey() == 1;
+            if (kind == 't' || kind == 'b') {
+                int length = buffer.getInt(position); /* (Int32) Length of the column value. */
+                position += 4;
+                if (isKey) {
+                    for (int j = position; j < position + length; j++) {
+                        hash = 31 * hash + buffer.get(j);
+                    }
+                }
+                position += length;
+            } else if (isKey) {
+                /* the unchanged TOASTed key is not sent, the hash of the row is not known */
+                if (kind == 'u') {
+                    return ChangeRecord.BARRIER;
+                }
+                hash = 31 * hash;
+            }
+        }
+        return hash & Integer.MAX_VALUE;
+    }
+
+    /* parses the relation message straight from the buffer without copying it into a String */
+    private Relation parseRelation(ByteBuffer buffer) {
+        int position = 1;
+
+        Relation relation = new Relation();
+        relation.setId(buffer.getInt(position)); /* (Int32) ID of the relation. */
+        position += 4;
+
+        /* (String) Namespace (empty string for pg_catalog). */
+        int end = this.findStringEnd(buffer, position);
+        relation.setNamespace(this.readString(buffer, position, end));
+        position = end + 1;
+
+        /* (String) Relation name. */
+        end = this.findStringEnd(buffer, position);
+        relation.setName(this.readString(buffer, position, end));
+        position = end + 1;
+
+        /* (Int8) Replica identity setting for the relation (same as relreplident in pg_class). */
+        relation.setReplicaIdentity((char) buffer.get(position));
+        position += 1;
+
+        relation.setNumColumns(buffer.getShort(position)); /* (Int16) Number of columns. */
+        position += 2;
+
+        for (int i = 0; i < relation.getNumColumns(); i++) {
+            Column column = new Column();
+            column.setPosition(i);
+
+            /*
+             * (Int8) Flags for the column. Currently can be either 0 for no flags or 1 which marks
+             * the column as part of the key.
+             */
+            column.setIsKey((char) buffer.get(position));
+            position += 1;
+
+            /* (String) Name of the column. */
+            end = this.findStringEnd(buffer, position);
+            column.setName(this.readString(buffer, position, end));
+            position = end + 1;
+
+            /* (Int32) ID of the column's data type. */
+            column.setDataTypeId(buffer.getInt(position));
+            position += 4;
+
+            /* (Int32) Type modifier of the column (atttypmod). */
+            column.setTypeModifier(buffer.getInt(position));
+            position += 4;
+
+            relation.putColumn(i, column);
         }
+
+        /* the names of the data types unknown yet are loaded at once for all columns */
+        this.typeRegistry.resolve(relation);
+
+        return relation;
+    }
+
+    /* the type message: (Int32) ID of the data type, (String) namespace (empty for pg_catalog), (String) name of the data type */
+    private void registerType(ByteBuffer buffer) {
+        int position = 1;
+        int typeId = buffer.getInt(position);
+        position += 4;
+
+        int end = this.findStringEnd(buffer, position);
+        String namespace = this.readString(buffer, position, end);
+        position = end + 1;
+
+        end = this.findStringEnd(buffer, position);
+        this.typeRegistry.register(typeId, namespace, this.readString(buffer, position, end));
+    }
+
+    private int findStringEnd(ByteBuffer buffer, int position) {
+        while (buffer.get(position) != 0) { /* ASCII 0 = Null */
+            position++;
+        }
+        return position;
+    }
+
+    private String readString(ByteBuffer buffer, int start, int end) {
+        return ColumnCodecs.readString(buffer, start, end - start);
     }
 
     public String getFormattedPostgreSQLEpochDate(long microseconds) throws ParseException {
@@ -544,20 +1143,6 @@ public class Decode {
         return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z Z").format(cal.getTime());
     }
 
-    public void loadDataTypes(Connection sqlConnection) throws SQLException {
-        try (Statement statement = sqlConnection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
-            try (ResultSet resultSet = statement.executeQuery("SELECT oid, typname FROM pg_catalog.pg_type")) {
-                Integer typeId;
-                String typeName;
-                while (resultSet.next()) {
-                    typeId = resultSet.getInt(1);
-                    typeName = resultSet.getString(2);
-                    Decode.dataTypes.put(typeId, typeName);
-                }
-            }
-        }
-    }
-
     public void printBuffer(ByteBuffer buffer) throws UnsupportedEncodingException {
 
         byte[] bytesX = new byte[buffer.capacity()];
@@ -0,0 +1,185 @@
+package com.seizure.publisher;
+
+import com.seizure.models.ChangeRecord;
+import com.seizure.publisher.models.Relation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    The parallel decoding of the stream (publisher.decodeThreads): the reading thread copies
+    the messages of the event and hands them over to the decoding threads by chunks, every
+    thread has its own decoder and serializer, made by the decoder of the reading thread (see
+    Decode.newWorkerDecode), so it has the same options and types. The results are put back in the order the
+    messages were read, so the event is the same as the single thread decoder makes.
+
+    The relation and type messages change the state of the decoder, they are decoded by the
+    reading thread. Its decoder keeps the relations in the copy-on-write map (see
+    Decode.setCopyOnWrite), every message takes the map known when it was read, so it is
+    decoded with the same relation as by the single thread decoder.
+ */
+class DecodePipeline implements AutoCloseable {
+    private static final int CHUNK_SIZE = 64;
+
+    private final ExecutorService executor;
+    private final ThreadLocal<Stream> decoders;
+    private final List<Future<?>> chunks = new ArrayList<>();
+
+    private final Frame[] frames;
+    private int size;
+    private int submitted;
+    private long bytes;
+
+    /* the options of the event, the same for all its messages */
+    private boolean isSimpleEvent;
+    private boolean isTypedEvent;
+    private boolean withBeginCommit;
+    private String format;
+    private boolean inProcess;
+
+    DecodePipeline(int threads, int capacity, String name, Decode reader) {
+        this.decoders = ThreadLocal.withInitial(() -> new Stream(reader.newWorkerDecode()));
+        AtomicInteger number = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "decode-" + name + "-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.frames = new Frame[capacity];
+        for (int i = 0; i < capacity; i++) {
+            this.frames[i] = new Frame();
+        }
+    }
+
+    void begin(boolean isSimpleEvent, boolean isTypedEvent, boolean withBeginCommit, String format, boolean inProcess) {
+        this.isSimpleEvent = isSimpleEvent;
+        this.isTypedEvent = isTypedEvent;
+        this.withBeginCommit = withBeginCommit;
+        this.format = format;
+        this.inProcess = inProcess;
+    }
+
+    /* adds the message read by the reader, the buffer is copied unless the reader decodes it at once */
+    void add(Stream reader, ByteBuffer buffer, long lsn, int xid, long commitLSN, long commitTime, boolean isCommit)
+            throws ParseException, SQLException, IOException {
+        Frame frame = this.frames[this.size++];
+        frame.lsn = lsn;
+        frame.xid = xid;
+        frame.commitLSN = commitLSN;
+        frame.commitTime = commitTime;
+        frame.commit = isCommit;
+        frame.length = buffer.limit();
+
+        char type = (char) buffer.get(0);
+        if (type == 'R' || type == 'Y') {
+            frame.record = reader.toRecord(buffer, this.isSimpleEvent, this.isTypedEvent, this.withBeginCommit, this.format, this.inProcess,
+                    lsn, xid, commitLSN, commitTime, isCommit);
+        } else {
+            byte[] copy = new byte[buffer.limit()];
+            ByteBuffer source = buffer.duplicate();
+            source.position(0);
+            source.get(copy);
+            frame.buffer = ByteBuffer.wrap(copy);
+            frame.relations = reader.getDecode().getRelations();
+        }
+
+        if (this.size - this.submitted == CHUNK_SIZE) {
+            this.submit();
+        }
+    }
+
+    /* waits for the decoders, puts the records into the batch in the read order, returns their number */
+    int finish(ChangeRecord[] batch) throws IOException, InterruptedException {
+        this.submit();
+
+        Throwable failure = null;
+        for (Future<?> chunk : this.chunks) {
+            try {
+                chunk.get();
+            } catch (ExecutionException ex) {
+                failure = (failure == null) ? ex.getCause() : failure;
+            }
+        }
+        this.chunks.clear();
+
+        int count = 0;
+        this.bytes = 0;
+        for (int i = 0; i < this.size; i++) {
+            Frame frame = this.frames[i];
+            if (failure == null && frame.record != null) {
+                batch[count++] = frame.record;
+                /* the in-process change is counted by the size of the message it was decoded from */
+                this.bytes += (frame.record.getData() != null) ? frame.record.getData().length : frame.length;
+            }
+            frame.clear();
+        }
+        this.size = 0;
+        this.submitted = 0;
+
+        if (failure != null) {
+            throw new IOException("cannot decode the message", failure);
+        }
+        return count;
+    }
+
+    /* the size of the payloads of the last finished event */
+    long getBytes() {
+        return this.bytes;
+    }
+
+    private void submit() {
+        if (this.submitted == this.size) {
+            return;
+        }
+        int from = this.submitted;
+        int to = this.size;
+        this.chunks.add(this.executor.submit(() -> {
+            this.decode(from, to);
+            return null;
+        }));
+        this.submitted = to;
+    }
+
+    private void decode(int from, int to) throws Exception {
+        Stream decoder = this.decoders.get();
+        for (int i = from; i < to; i++) {
+            Frame frame = this.frames[i];
+            if (frame.buffer != null) {
+                decoder.getDecode().setRelations(frame.relations);
+                frame.record = decoder.toRecord(frame.buffer, this.isSimpleEvent, this.isTypedEvent, this.withBeginCommit, this.format, this.inProcess,
+                        frame.lsn, frame.xid, frame.commitLSN, frame.commitTime, frame.commit);
+            }
+        }
+    }
+
+    public void close() {
+        this.executor.shutdownNow();
+    }
+
+    private static class Frame {
+        private ByteBuffer buffer;
+        private IntObjectMap<Relation> relations;
+        private int length;
+        private long lsn;
+        private int xid;
+        private long commitLSN;
+        private long commitTime;
+        private boolean commit;
+        private ChangeRecord record;
+
+        void clear() {
+            this.buffer = null;
+            this.relations = null;
+            this.record = null;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.seizure.publisher;
+
+import java.util.Arrays;
+
+/*
+    An open addressing map with primitive int keys, there is no boxing on
+    the lookups done for every replicated row. The null values are not allowed.
+ */
+public class IntObjectMap<V> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+
+    public IntObjectMap() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public IntObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(INITIAL_CAPACITY, expectedSize * 2) - 1) << 1;
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+
+    private IntObjectMap(IntObjectMap<V> other) {
+        this.keys = other.keys.clone();
+        this.values = other.values.clone();
+        this.size = other.size;
+        this.mask = other.mask;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int index = this.indexOf(key);
+        return (index < 0) ? null : (V) this.values[index];
+    }
+
+    public boolean containsKey(int key) {
+        return this.indexOf(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("the null values are not allowed");
+        }
+        int index = hash(key) & this.mask;
+        while (this.values[index] != null) {
+            if (this.keys[index] == key) {
+                V previous = (V) this.values[index];
+                this.values[index] = value;
+                return previous;
+            }
+            index = (index + 1) & this.mask;
+        }
+        this.keys[index] = key;
+        this.values[index] = value;
+        if (++this.size * 2 > this.values.length) {
+            this.resize();
+        }
+        return null;
+    }
+
+    /* backward shift deletion, keeps the probe sequences of the other keys unbroken */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int index = this.indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        V previous = (V) this.values[index];
+
+        int gap = index;
+        int next = (gap + 1) & this.mask;
+        while (this.values[next] != null) {
+            int home = hash(this.keys[next]) & this.mask;
+            /* the entry can fill the gap when its home slot is not between the gap and its current slot */
+            if (((next - home) & this.mask) >= ((next - gap) & this.mask)) {
+                this.keys[gap] = this.keys[next];
+                this.values[gap] = this.values[next];
+                gap = next;
+            }
+            next = (next + 1) & this.mask;
+        }
+        this.values[gap] = null;
+        this.size--;
+        return previous;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public void clear() {
+        Arrays.fill(this.values, null);
+        this.size = 0;
+    }
+
+    public IntObjectMap<V> copy() {
+        return new IntObjectMap<>(this);
+    }
+
+    private int indexOf(int key) {
+        int index = hash(key) & this.mask;
+        while (this.values[index] != null) {
+            if (this.keys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    private void resize() {
+        int[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+
+        this.keys = new int[oldKeys.length * 2];
+        this.values = new Object[oldValues.length * 2];
+        this.mask = this.keys.length - 1;
+
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int index = hash(oldKeys[i]) & this.mask;
+                while (this.values[index] != null) {
+                    index = (index + 1) & this.mask;
+                }
+                this.keys[index] = oldKeys[i];
+                this.values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
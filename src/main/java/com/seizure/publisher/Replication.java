@@ -1,15 +1,18 @@
 package com.seizure.publisher;
 
 import com.seizure.models.ConnectionInfo;
+import com.seizure.models.ReplicationOptions;
 import com.seizure.publisher.models.Event;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.postgresql.PGConnection;
+import org.postgresql.replication.LogSequenceNumber;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Connection;
+import java.sql.Statement;
 
 /*
 
@@ -26,12 +29,23 @@ public class Replication implements AutoCloseable {
     private Stream stream;
     private final ConnectionManager connectionManager;
     private final Decode decode;
-
-    public Replication(ConnectionInfo connectionInfo, String publication, String slot)
+    private final ReplicationOptions options;
+    private ToastCache toastCache;
+    /* the pgoutput protocol version agreed with the server, the options are shared by all captures and stay as configured */
+    private int protoVersion;
+    /* the position the slot was confirmed up to before the start, null - the slot is new */
+    private Long confirmedFlushLSN;
+
+    /* the control messages are logged unless somebody else is interested in them */
+    private ControlMessageHandler controlMessageHandler = (prefix, content, lsn, transactional) ->
+            logger.info("the control message: {}, lsn: {}, transactional: {}", content, LogSequenceNumber.valueOf(lsn), transactional);
+
+    public Replication(ConnectionInfo connectionInfo, String publication, String slot, ReplicationOptions options)
             throws ClassNotFoundException, SQLException {
 
         this.publication = publication;
         this.slot = slot;
+        this.options = options;
 
         this.connectionManager = new ConnectionManager(connectionInfo.getServer(),
                 connectionInfo.getDatabase(),
@@ -41,25 +55,50 @@ public class Replication implements AutoCloseable {
         this.connectionManager.createSQLConnection();
         this.connectionManager.createReplicationConnection();
 
-        this.decode = new Decode();
-        this.decode.loadDataTypes(this.connectionManager.getSQLConnection());
+        this.decode = new Decode(new TypeRegistry(this.connectionManager.getSQLConnection()));
+        this.decode.setOldTuples(options.isOldTuples());
+
+        if (options.getToastCacheMaxBytes() > 0) {
+            this.toastCache = new ToastCache(options.getToastCacheMaxBytes(), options.getToastCacheMinValueBytes());
+            this.decode.setToastCache(this.toastCache);
+        }
     }
 
+    /*
+        The slot outlives the process: the server keeps the WAL of the changes not confirmed
+        yet, the stream is resumed from the confirmed flush LSN of the slot.
+     */
     public void initializeReplication(boolean dropSlotIfExists) throws SQLException {
         PreparedStatement statement = this.connectionManager.getSQLConnection().prepareStatement(
-                "select 1 from pg_catalog.pg_replication_slots WHERE slot_name = ?");
+                "select confirmed_flush_lsn::text from pg_catalog.pg_replication_slots WHERE slot_name = ?");
 
         statement.setString(1, this.slot);
         ResultSet resultSet = statement.executeQuery();
 
         if (resultSet.next()) {
             if (dropSlotIfExists) {
+                logger.warn("the replication slot: {} is dropped, the changes not confirmed before are lost", this.slot);
                 this.dropReplicationSlot();
                 this.createReplicationSlot();
+            } else {
+                String lsn = resultSet.getString(1);
+                if (lsn != null) {
+                    this.confirmedFlushLSN = LogSequenceNumber.valueOf(lsn).asLong();
+                }
+                logger.info("the replication slot: {} is kept, the stream is resumed from: {}", this.slot, lsn);
             }
         } else {
             this.createReplicationSlot();
         }
+        resultSet.close();
+        statement.close();
+
+        this.protoVersion = this.negotiateProtoVersion();
+    }
+
+    /* null - the slot is new, the stream starts at its consistent point */
+    public Long getConfirmedFlushLSN() {
+        return this.confirmedFlushLSN;
     }
 
     public void createReplicationSlot() throws SQLException {
@@ -78,14 +117,15 @@ public class Replication implements AutoCloseable {
         logger.info("done.");
     }
 
-    public Event readEvent(boolean isSimpleEvent, boolean withBeginCommit, String outputFormat, Long startLSN) {
+    public Event readEvent(boolean isSimpleEvent, boolean isTypedEvent, boolean withBeginCommit, String outputFormat, Long startLSN) {
         Event event = null;
         try {
             if (this.stream == null) {
                 Connection replicationConnection = this.connectionManager.getReplicationConnection();
-                this.stream = new Stream(this.decode, replicationConnection, this.publication, this.slot, startLSN);
+                this.stream = new Stream(this.decode, replicationConnection, this.publication, this.slot, startLSN, this.options, this.protoVersion);
+                this.stream.setControlMessageHandler(this.controlMessageHandler);
             }
-            event = this.stream.readStream(isSimpleEvent, withBeginCommit, outputFormat);
+            event = this.stream.readStream(isSimpleEvent, isTypedEvent, withBeginCommit, outputFormat);
         } catch (Exception ex) {
             ex.printStackTrace();
             logger.error("readEvent() - {}", ex.toString());
@@ -94,19 +134,104 @@ public class Replication implements AutoCloseable {
         return event;
     }
 
+    /* confirms the LSN committed by the subscriber, nothing is confirmed before the stream is started */
+    public void confirmFlushedLSN(long lsn) {
+        if (this.stream != null) {
+            this.stream.confirmFlushedLSN(lsn);
+        }
+    }
+
+    public void forceUpdateStatus() throws SQLException {
+        if (this.stream != null) {
+            this.stream.forceUpdateStatus();
+        }
+    }
+
+    public Long getLastReceiveLSN() {
+        return (this.stream == null) ? null : this.stream.getLastReceiveLSN();
+    }
+
+    public void setControlMessageHandler(ControlMessageHandler controlMessageHandler) {
+        this.controlMessageHandler = controlMessageHandler;
+        if (this.stream != null) {
+            this.stream.setControlMessageHandler(controlMessageHandler);
+        }
+    }
+
+    /*
+        The highest pgoutput protocol version supported by the server: 1 - PostgreSQL 10+,
+        2 (streaming) - 14+, 3 (two-phase) - 15+, 4 (parallel streaming) - 16+.
+        The configured version is lowered to it, 0 asks for it. The binary and streaming
+        options need the version 2, two_phase - the version 3: the lower configured version
+        is raised, the server not supporting it fails the start with the option named,
+        instead of START_REPLICATION rejecting the slot options.
+     */
+    private int negotiateProtoVersion() throws SQLException {
+        int serverVersion;
+        try (Statement statement = this.connectionManager.getSQLConnection().createStatement();
+             ResultSet resultSet = statement.executeQuery("SHOW server_version_num")) {
+            resultSet.next();
+            serverVersion = Integer.parseInt(resultSet.getString(1));
+        }
+
+        int supported = 1;
+        if (serverVersion >= 160000) {
+            supported = 4;
+        } else if (serverVersion >= 150000) {
+            supported = 3;
+        } else if (serverVersion >= 140000) {
+            supported = 2;
+        }
+
+        int required = 1;
+        String option = null;
+        if (this.options.isBinary() || this.options.isStreaming()) {
+            required = 2;
+            option = this.options.isBinary() ? "binary" : "streaming";
+        }
+        if (this.options.isTwoPhase()) {
+            required = 3;
+            option = "two_phase";
+        }
+        if (required > supported) {
+            throw new SQLException(String.format("the option: %s needs the protocol version: %d, the server: %d supports the version: %d",
+                    option, required, serverVersion, supported));
+        }
+
+        int requested = this.options.getProtoVersion();
+        if (requested <= 0) {
+            return supported;
+        }
+        if (requested > supported) {
+            logger.warn("the protocol version: {} is not supported by the server: {}, the version: {} is used instead",
+                    requested, serverVersion, supported);
+            return supported;
+        }
+        if (requested < required) {
+            logger.info("the option: {} needs the protocol version: {}, it is used instead of: {}", option, required, requested);
+            return required;
+        }
+        return requested;
+    }
+
+    /* the slot is kept, the last confirmed LSN is sent before the stream is closed */
     public void close() {
 
         try {
+            if (this.stream != null) {
+                this.stream.forceUpdateStatus();
+                this.stream.close();
+            }
+            if (this.toastCache != null) {
+                this.toastCache.clear();
+            }
+
             logger.info("trying to close connections...");
             this.connectionManager.closeSQLConnection();
             this.connectionManager.closeReplicationConnection();
             logger.info("done");
 
-            this.connectionManager.createReplicationConnection();
-            this.dropReplicationSlot();
-            this.connectionManager.closeReplicationConnection();
-
-            logger.info("please, do not forget to be sure that the replication slot: {} was dropped", this.slot);
+            logger.info("the replication slot: {} is kept, drop it when the capture is not needed anymore", this.slot);
         } catch (Exception ex) {
             logger.error("close() - {}", ex.toString());
         }
@@ -1,83 +1,247 @@
 package com.seizure.publisher;
 
 
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.text.ParseException;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import java.sql.Connection;
 
+import com.seizure.models.ChangeRecord;
+import com.seizure.models.ReplicationOptions;
+import com.seizure.publisher.models.Change;
+import com.seizure.publisher.models.Column;
 import com.seizure.publisher.models.Event;
+import com.seizure.publisher.models.MessageType;
+import com.seizure.publisher.models.Relation;
+import com.seizure.publisher.models.ReplicationMessage;
+import com.seizure.publisher.models.TupleView;
+import com.seizure.publisher.serializers.JsonMessageSerializer;
+import com.seizure.publisher.serializers.MessageSerializer;
+import com.seizure.publisher.serializers.MessageSerializers;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.postgresql.PGConnection;
 import org.postgresql.replication.LogSequenceNumber;
 import org.postgresql.replication.PGReplicationStream;
-
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.postgresql.replication.fluent.logical.ChainedLogicalStreamBuilder;
 
 public class Stream {
     private static final Logger logger = LogManager.getLogger(Stream.class);
 
     private final PGReplicationStream pgReplicationStream;
     private Long lastReceiveLSN;
+    private long flushedLSN;
     private final Decode decode;
 
-    public static final String MIME_TYPE_OUTPUT_DEFAULT = "application/json";
+    public static final String MIME_TYPE_OUTPUT_DEFAULT = JsonMessageSerializer.OUTPUT_FORMAT;
+
+    /* the decoded changes are passed to the subscriber as they are, nothing is serialized */
+    public static final String OUTPUT_IN_PROCESS = "in-process";
+
+    /* reused for every message of the typed mode */
+    private final ReplicationMessage replicationMessage = new ReplicationMessage();
+    private MessageSerializer serializer;
+
+    /* the transactions streamed by pgoutput before their commit, null without the streaming option */
+    private StreamedTransactions streamedTransactions;
+    private StreamedTransactions.Reader committedStream;
+    private boolean inStreamBlock;
+    private int streamXid;
+    private boolean inPrepareBlock;
+    private int prepareXid;
+
+    /* the changes of the current event, the array is reused by every read */
+    private static final long LINGER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private final ChangeRecord[] batch;
+    private int batchSize;
+    private final long batchMaxBytes;
+    private final long batchLingerNanos;
+
+    /* the parallel decoders, null - the messages are decoded by the reading thread */
+    private final DecodePipeline pipeline;
+
+    /* the transaction of the changes being read, set by its begin message */
+    private int transactionXid;
+    private long transactionCommitLSN;
+    private long transactionCommitTime;
 
-    public Stream(Decode decode, Connection replicationConnection, String publication, String slot, Long lsn) throws SQLException {
+    /* the logical decoding messages with the control prefix go to the handler instead of the subscriber */
+    private final String controlMessagePrefix;
+    private ControlMessageHandler controlMessageHandler;
+    private final ReplicationMessage controlMessage = new ReplicationMessage();
+
+    /* the stream without the replication connection, only the conversion methods can be used (benchmarks) */
+    Stream(Decode decode) {
+        this.decode = decode;
+        this.pgReplicationStream = null;
+        this.controlMessagePrefix = null;
+        this.batch = new ChangeRecord[1000];
+        this.batchMaxBytes = Long.MAX_VALUE;
+        this.batchLingerNanos = 0;
+        this.pipeline = null;
+    }
+
+    /* the protocol version is agreed with the server for the options already (see Replication.negotiateProtoVersion) */
+    public Stream(Decode decode, Connection replicationConnection, String publication, String slot, Long lsn,
+                  ReplicationOptions options, int protoVersion) throws SQLException {
         this.decode = decode;
         PGConnection pgConnection = replicationConnection.unwrap(PGConnection.class);
-        if (lsn == null) {
-            // More details about pgoutput options in PostgreSQL project:
-            // https://github.com/postgres, source file:
-            // postgres/src/backend/replication/pgoutput/pgoutput.c
-            this.pgReplicationStream = pgConnection.getReplicationAPI()
-                    .replicationStream()
-                    .logical()
-                    .withSlotName(slot)
-                    .withSlotOption("proto_version", "1")
-                    .withSlotOption("publication_names", publication)
-                    .withStatusInterval(1, TimeUnit.SECONDS)
-                    .start();
 
+        this.controlMessagePrefix = options.getControlMessagePrefix();
+        this.batch = new ChangeRecord[options.getBatchMaxMessages()];
+        this.batchMaxBytes = options.getBatchMaxBytes();
+        this.batchLingerNanos = TimeUnit.MILLISECONDS.toNanos(options.getBatchLingerMillis());
+        if (options.getDecodeThreads() > 0) {
+            this.decode.setCopyOnWrite(true);
+            this.pipeline = new DecodePipeline(options.getDecodeThreads(), this.batch.length, slot, this.decode);
         } else {
-            // Reading from LSN start position
-            LogSequenceNumber startLSN = LogSequenceNumber.valueOf(lsn);
+            this.pipeline = null;
+        }
+
+        // More details about pgoutput options in PostgreSQL project:
+        // https://github.com/postgres, source file:
+        // postgres/src/backend/replication/pgoutput/pgoutput.c
+        ChainedLogicalStreamBuilder builder = pgConnection.getReplicationAPI()
+                .replicationStream()
+                .logical()
+                .withSlotName(slot)
+                .withSlotOption("proto_version", String.valueOf(protoVersion))
+                .withSlotOption("publication_names", publication)
+                .withStatusInterval(1, TimeUnit.SECONDS);
 
-            // More details about pgoutput options in PostgreSQL project:
-            // https://github.com/postgres, source file:
-            // postgres/src/backend/replication/pgoutput/pgoutput.c
-            this.pgReplicationStream = pgConnection.getReplicationAPI()
-                    .replicationStream()
-                    .logical()
-                    .withSlotName(slot)
-                    .withSlotOption("proto_version", "1")
-                    .withSlotOption("publication_names", publication)
-                    .withStatusInterval(1, TimeUnit.SECONDS)
-                    .withStartPosition(startLSN)
-                    .start();
+        if (options.isBinary()) {
+            builder.withSlotOption("binary", "true");
+        }
+
+        if (options.isMessages()) {
+            builder.withSlotOption("messages", "true");
+        }
+
+        if (options.isTwoPhase()) {
+            builder.withSlotOption("two_phase", "on");
+        }
+
+        if (options.isStreaming()) {
+            builder.withSlotOption("streaming", "on");
+        }
+
+        if (options.isStreaming() || options.isTwoPhase()) {
+            try {
+                this.streamedTransactions = new StreamedTransactions(options.getStreamingMemoryBytes(),
+                        options.getSpillSegmentBytes(), Paths.get(options.getSpillDirectory(), slot));
+            } catch (IOException ex) {
+                throw new SQLException("cannot prepare the spill directory of the streamed transactions", ex);
+            }
+        }
+
+        if (lsn != null) {
+            // Reading from LSN start position
+            builder.withStartPosition(LogSequenceNumber.valueOf(lsn));
         }
-    }
 
-    private final int maxMessages = 1000;
+        this.pgReplicationStream = builder.start();
+        logger.info("the replication stream is started, proto_version: {}, binary: {}, streaming: {}, messages: {}, two_phase: {}",
+                protoVersion, options.isBinary(), options.isStreaming(), options.isMessages(), options.isTwoPhase());
+    }
 
     // com.fasterxml.jackson.core
-    public Event readStream(boolean isSimpleEvent, boolean withBeginCommit, String outputFormat) throws SQLException,
-            InterruptedException, ParseException, UnsupportedEncodingException, JsonProcessingException {
-        LinkedList<String> messages = new LinkedList<String>();
+    /*
+        Reads the pending changes into the event. The event is closed when it has batchMaxMessages
+        changes or batchMaxBytes of payloads, or when nothing is pending and batchLingerMillis have
+        passed since its first change (at once without the linger time).
+     */
+    public Event readStream(boolean isSimpleEvent, boolean isTypedEvent, boolean withBeginCommit, String outputFormat)
+            throws SQLException, InterruptedException, ParseException, IOException {
+        String format = outputFormat.trim().toLowerCase();
+        boolean inProcess = OUTPUT_IN_PROCESS.equals(format);
+        // the records of the previous event are in the queue already, the array does not keep them alive
+        Arrays.fill(this.batch, 0, this.batchSize, null);
+        this.batchSize = 0;
+        if (this.pipeline != null) {
+            this.pipeline.begin(isSimpleEvent, isTypedEvent, withBeginCommit, format, inProcess);
+        }
         int messagesSize = 0;
-        while (messagesSize < this.maxMessages) {
+        long messagesBytes = 0;
+        long lingerDeadline = 0;
+        while (messagesSize < this.batch.length && messagesBytes < this.batchMaxBytes) {
 
-            ByteBuffer buffer = this.pgReplicationStream.readPending();
+            ByteBuffer buffer = this.readMessage();
             if (buffer == null) {
-                break;
+                if (messagesSize == 0 || this.batchLingerNanos == 0 || System.nanoTime() - lingerDeadline >= 0) {
+                    break;
+                }
+                LockSupport.parkNanos(LINGER_PARK_NANOS);
+                continue;
+            }
+
+            boolean isCommit = false;
+            if (withBeginCommit) {
+                isCommit = this.trackTransaction(buffer);
+            }
+
+            if (this.handleControlMessage(buffer)) {
+                continue; // consumed by the control message handler
             }
 
+            long lsn = this.pgReplicationStream.getLastReceiveLSN().asLong();
+            if (this.pipeline != null) {
+                if (messagesSize == 0) {
+                    lingerDeadline = System.nanoTime() + this.batchLingerNanos;
+                }
+                this.pipeline.add(this, buffer, lsn, this.transactionXid, this.transactionCommitLSN, this.transactionCommitTime, isCommit);
+                /* the messages are counted before they are decoded, every one makes one record at most */
+                messagesSize++;
+                messagesBytes += buffer.limit();
+                continue;
+            }
+
+            ChangeRecord record = this.toRecord(buffer, isSimpleEvent, isTypedEvent, withBeginCommit, format, inProcess,
+                    lsn, this.transactionXid, this.transactionCommitLSN, this.transactionCommitTime, isCommit);
+            if (record != null) {
+                if (messagesSize == 0) {
+                    lingerDeadline = System.nanoTime() + this.batchLingerNanos;
+                }
+                this.batch[messagesSize++] = record;
+                /* the in-process change is counted by the size of the message it was decoded from */
+                messagesBytes += (record.getData() != null) ? record.getData().length : buffer.limit();
+            }
+        }
+
+        if (this.pipeline != null) {
+            messagesSize = this.pipeline.finish(this.batch);
+            messagesBytes = this.pipeline.getBytes();
+        }
+
+        this.batchSize = messagesSize;
+        this.lastReceiveLSN = this.pgReplicationStream.getLastReceiveLSN().asLong();
+        return new Event(this.batch, messagesSize, messagesBytes, this.lastReceiveLSN, isSimpleEvent, withBeginCommit, false);
+    }
+
+    /*
+        Decodes the message into the record passed to the subscriber: the payload of the output
+        format or the in-process change. Returns null when there is nothing to pass (relation,
+        type and origin messages, begin and commit without withBeginCommit).
+     */
+    ChangeRecord toRecord(ByteBuffer buffer, boolean isSimpleEvent, boolean isTypedEvent, boolean withBeginCommit, String format, boolean inProcess,
+                          long lsn, int xid, long commitLSN, long commitTime, boolean isCommit)
+            throws ParseException, SQLException, IOException {
+        byte[] payload = null;
+        Change change = null;
+        if (inProcess) {
+            if (this.decode.decodeLogicalReplicationMessageTyped(buffer, this.replicationMessage, withBeginCommit)) {
+                change = this.toChange(this.replicationMessage);
+            }
+        } else if (isTypedEvent) {
+            if (this.decode.decodeLogicalReplicationMessageTyped(buffer, this.replicationMessage, withBeginCommit)) {
+                payload = this.convertMessage(this.replicationMessage, format);
+            }
+        } else {
             HashMap<String, Object> message = null;
 
             if (isSimpleEvent) {
@@ -87,33 +251,250 @@ public class Stream {
             }
 
             if (!message.isEmpty()) { // Skip empty messages
-                messages.addLast(this.convertMessage(message, outputFormat.trim().toLowerCase()));
-                messagesSize++;
+                payload = this.convertMessage(message, format);
             }
+        }
 
-            // Replication feedback
-            this.pgReplicationStream.setAppliedLSN(this.pgReplicationStream.getLastReceiveLSN());
-            this.pgReplicationStream.setFlushedLSN(this.pgReplicationStream.getLastReceiveLSN());
+        if (payload == null && change == null) {
+            return null;
         }
+        ChangeRecord record = withBeginCommit
+                ? new ChangeRecord(payload, change, lsn, xid, commitLSN, commitTime, isCommit)
+                : new ChangeRecord(payload, change, lsn, 0, 0, 0, false);
+        record.setKeyHash(this.decode.keyHash(buffer));
+        return record;
+    }
 
-        this.lastReceiveLSN = this.pgReplicationStream.getLastReceiveLSN().asLong();
-        return new Event(messages, this.lastReceiveLSN, isSimpleEvent, withBeginCommit, false);
+    Decode getDecode() {
+        return this.decode;
     }
 
-    public String convertMessage(HashMap<String, Object> message, String outputFormat) throws JsonProcessingException {
-        switch (outputFormat) {
-            case MIME_TYPE_OUTPUT_DEFAULT:
+    /*
+        Returns the next message to decode: the changes of the committed streamed
+        transaction go first, then the messages of the replication connection.
+        The stream blocks ('S' ... 'E') are buffered until their stream commit ('c')
+        or thrown away on stream abort ('A'), the prepared transactions ('b' ... 'P')
+        are buffered until their commit prepared ('K') or rollback prepared ('r').
+     */
+    private ByteBuffer readMessage() throws SQLException, IOException {
+        while (true) {
+            if (this.committedStream != null) {
+                ByteBuffer buffer = this.committedStream.next();
+                if (buffer != null) {
+                    return buffer;
+                }
+                this.committedStream.close();
+                this.committedStream = null;
+            }
 
-                ObjectMapper mapper = new ObjectMapper();
-                return mapper.writeValueAsString(message);
+            ByteBuffer buffer = this.pgReplicationStream.readPending();
+            if (buffer == null || this.streamedTransactions == null) {
+                return buffer;
+            }
+
+            switch ((char) buffer.get(0)) {
+                case 'S': /* Stream Start: (Int32) xid of the transaction, (Int8) 1 for the first segment. */
+                    this.inStreamBlock = true;
+                    this.streamXid = buffer.getInt(1);
+                    break;
+
+                case 'E': /* Stream Stop */
+                    this.inStreamBlock = false;
+                    break;
+
+                case 'c': /* Stream Commit: (Int32) xid, (Int8) flags, (Int64) commit LSN, (Int64) end LSN, (Int64) commit timestamp. */
+                    this.committedStream = this.streamedTransactions.commit(buffer.getInt(1),
+                            buffer.getLong(6), buffer.getLong(14), buffer.getLong(22));
+                    break;
+
+                case 'A': /* Stream Abort: (Int32) xid of the transaction, (Int32) xid of the subtransaction. */
+                    this.streamedTransactions.abort(buffer.getInt(1), buffer.getInt(5));
+                    break;
+
+                case 'b': /* Begin Prepare: (Int64) prepare LSN, (Int64) end LSN, (Int64) prepare timestamp, (Int32) xid, (String) gid. */
+                    this.inPrepareBlock = true;
+                    this.prepareXid = buffer.getInt(25);
+                    break;
+
+                case 'P': /* Prepare: the changes wait for COMMIT PREPARED or ROLLBACK PREPARED. */
+                    this.inPrepareBlock = false;
+                    break;
+
+                case 'p': /* Stream Prepare: the changes were streamed already, they wait for the same. */
+                    break;
+
+                case 'K': /* Commit Prepared: (Int8) flags, (Int64) commit LSN, (Int64) end LSN, (Int64) commit timestamp, (Int32) xid, (String) gid. */
+                    this.committedStream = this.streamedTransactions.commit(buffer.getInt(26),
+                            buffer.getLong(2), buffer.getLong(10), buffer.getLong(18));
+                    if (this.committedStream == null) {
+                        logger.warn("the prepared transaction: {} is committed at the LSN: {}, but its changes were not received, "
+                                        + "the prepare was confirmed before the restart (the slot was created again?), the changes are skipped",
+                                buffer.getInt(26), LogSequenceNumber.valueOf(buffer.getLong(2)));
+                    }
+                    break;
+
+                case 'r': /* Rollback Prepared: (Int8) flags, (Int64) prepare end LSN, (Int64) rollback end LSN, (Int64) prepare timestamp, (Int64) rollback timestamp, (Int32) xid, (String) gid. */
+                    this.streamedTransactions.abort(buffer.getInt(34), buffer.getInt(34));
+                    break;
+
+                default:
+                    if (this.inStreamBlock) {
+                        this.streamedTransactions.append(this.streamXid, buffer, this.pgReplicationStream.getLastReceiveLSN().asLong());
+                        break;
+                    }
+                    if (this.inPrepareBlock) {
+                        this.streamedTransactions.appendPrepared(this.prepareXid, buffer, this.pgReplicationStream.getLastReceiveLSN().asLong());
+                        break;
+                    }
+                    return buffer;
+            }
+        }
+    }
 
+    /*
+        Remembers the transaction of the begin message, its changes are stamped with it.
+        Returns true for the commit message, it closes the transaction.
+     */
+    private boolean trackTransaction(ByteBuffer buffer) {
+        switch ((char) buffer.get(0)) {
+            case 'B': /* Begin: (Int64) the final LSN, (Int64) commit timestamp, (Int32) xid. */
+                this.transactionCommitLSN = buffer.getLong(1);
+                this.transactionCommitTime = buffer.getLong(9);
+                this.transactionXid = buffer.getInt(17);
+                return false;
+            case 'C': /* Commit: (Int8) flags, (Int64) commit LSN, (Int64) end LSN, (Int64) commit timestamp. */
+                return true;
             default:
+                return false;
+        }
+    }
+
+    /* passes the logical decoding message with the control prefix to the handler, returns true when it was consumed */
+    private boolean handleControlMessage(ByteBuffer buffer) {
+        if (this.controlMessageHandler == null || buffer.get(0) != 'M') {
+            return false;
+        }
 
-                throw new IllegalArgumentException("Invalid output format!");
+        this.decode.decodeLogicalReplicationMessageTyped(buffer, this.controlMessage, false);
+        if (this.controlMessagePrefix.equals(this.controlMessage.getPrefix()) == false) {
+            return false;
         }
+
+        try {
+            this.controlMessageHandler.handle(this.controlMessage.getPrefix(), this.controlMessage.getContentString(),
+                    this.controlMessage.getMessageLSN(), this.controlMessage.isTransactional());
+        } catch (Exception ex) {
+            logger.error("handleControlMessage() - {}", ex.toString());
+        }
+        return true;
+    }
+
+    public void setControlMessageHandler(ControlMessageHandler controlMessageHandler) {
+        this.controlMessageHandler = controlMessageHandler;
+    }
+
+    public byte[] convertMessage(HashMap<String, Object> message, String outputFormat) throws IOException {
+        return this.getSerializer(outputFormat).serialize(message);
+    }
+
+    /*
+        Produces the same document as the simple mode, but the values are written straight
+        from the replication buffer.
+     */
+    public byte[] convertMessage(ReplicationMessage message, String outputFormat) throws IOException {
+        return this.getSerializer(outputFormat).serialize(message);
+    }
+
+    /* the decoded values of the typed message, they do not refer to the replication buffer */
+    public Change toChange(ReplicationMessage message) {
+        if (message.getType() == MessageType.TRUNCATE) {
+            Relation[] truncatedRelations = new Relation[message.getNumTruncatedRelations()];
+            for (int i = 0; i < truncatedRelations.length; i++) {
+                truncatedRelations[i] = message.getTruncatedRelation(i);
+            }
+            return new Change(message.getType(), null, null, truncatedRelations);
+        }
+
+        Relation relation = message.getRelation();
+        if (relation == null || message.getType() == MessageType.MESSAGE) {
+            return new Change(message.getType(), null, null, null);
+        }
+
+        Change change = new Change(message.getType(), relation, toValues(relation, message.getTuple()), null);
+        if (message.getType() == MessageType.UPDATE && message.hasOldTuple()) {
+            change.setOldValues(toValues(relation, message.getOldTuple()));
+        }
+        return change;
+    }
+
+    private static Object[] toValues(Relation relation, TupleView tuple) {
+        Column[] plan = relation.getColumns();
+        Object[] values = new Object[tuple.getNumColumns()];
+        for (int i = 0; i < values.length; i++) {
+            switch (tuple.getKind(i)) {
+                case 'n': /* NULL value */
+                    break;
+                case 'u': /* unchanged TOASTed value */
+                    values[i] = Change.UNCHANGED_TOAST;
+                    break;
+                default:
+                    values[i] = plan[i].getCodec(tuple.getKind(i)).decode(tuple.getBuffer(i), tuple.getOffset(i), tuple.getLength(i));
+                    break;
+            }
+        }
+        return values;
+    }
+
+    /* the serializer of the output format, it is created once and keeps its buffers */
+    private MessageSerializer getSerializer(String outputFormat) {
+        if (this.serializer == null || this.serializer.getOutputFormat().equals(outputFormat) == false) {
+            this.serializer = MessageSerializers.create(outputFormat);
+        }
+        return this.serializer;
+    }
+
+    /*
+        Replication feedback: the LSN committed by the subscriber (see LsnTracker) is confirmed
+        as applied and flushed, the driver sends it to the server at the status interval.
+        It does not pass the first change of the oldest buffered streamed or prepared
+        transaction: the server does not send again the transactions confirmed as flushed.
+     */
+    public void confirmFlushedLSN(long lsn) {
+        if (this.streamedTransactions != null) {
+            lsn = Math.min(lsn, this.streamedTransactions.getFirstLSN());
+        }
+        if (lsn <= this.flushedLSN) {
+            return;
+        }
+        LogSequenceNumber flushed = LogSequenceNumber.valueOf(lsn);
+        this.pgReplicationStream.setAppliedLSN(flushed);
+        this.pgReplicationStream.setFlushedLSN(flushed);
+        this.flushedLSN = lsn;
+    }
+
+    /* sends the status update now, the server keeps the connection while the stream is not read */
+    public void forceUpdateStatus() throws SQLException {
+        this.pgReplicationStream.forceUpdateStatus();
     }
 
     public Long getLastReceiveLSN() {
         return this.lastReceiveLSN;
     }
+
+    public void close() {
+        if (this.pipeline != null) {
+            this.pipeline.close();
+        }
+        try {
+            if (this.committedStream != null) {
+                this.committedStream.close();
+                this.committedStream = null;
+            }
+            if (this.streamedTransactions != null) {
+                this.streamedTransactions.close();
+            }
+        } catch (IOException ex) {
+            logger.error("close() - {}", ex.toString());
+        }
+    }
 }
@@ -0,0 +1,344 @@
+package com.seizure.publisher;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+    Keeps the changes of the large in-progress transactions streamed by pgoutput
+    (streaming = on, protocol version 2+) until their stream commit or abort arrives,
+    and the changes of the prepared transactions (two_phase = on, protocol version 3+)
+    until they are committed or rolled back.
+
+    All open transactions share one memory budget, when it is exceeded the in-memory
+    changes of the growing transaction are appended to its segment files on disk.
+    On commit the changes are read back in their original order, wrapped into the
+    begin and commit messages, so the rest of the pipeline sees a usual transaction.
+
+    The buffered transactions are not in the spool, so the flushed LSN confirmed to the
+    server stays before the first change of the oldest one (see getFirstLSN): after a
+    restart the server sends them again from the start. That needs the slot kept between
+    the runs (publisher.slotDropIfExists = false), the recreated slot starts after them.
+ */
+public class StreamedTransactions implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(StreamedTransactions.class);
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final long memoryLimit;
+    private final long segmentSize;
+    private final Path directory;
+
+    private final IntObjectMap<StreamedTransaction> transactions = new IntObjectMap<>();
+    private final List<StreamedTransaction> openTransactions = new ArrayList<>();
+    private long memoryUsed;
+
+    public StreamedTransactions(long memoryLimit, long segmentSize, Path directory) throws IOException {
+        this.memoryLimit = memoryLimit;
+        this.segmentSize = segmentSize;
+        this.directory = directory;
+
+        Files.createDirectories(directory);
+        /* the leftovers of the previous run, the server streams these transactions again */
+        this.deleteSegments();
+    }
+
+    /*
+        Stores the message of the stream block, the xid the message starts with
+        (the xid of the subtransaction) is cut out, the rest is kept as it is.
+     */
+    public void append(int xid, ByteBuffer buffer, long lsn) throws IOException {
+        this.add(xid, buffer.getInt(1), buffer, 4, lsn);
+    }
+
+    /* stores the message of the prepared transaction (between begin prepare and prepare), it has no xid */
+    public void appendPrepared(int xid, ByteBuffer buffer, long lsn) throws IOException {
+        this.add(xid, xid, buffer, 0, lsn);
+    }
+
+    public boolean isEmpty() {
+        return this.openTransactions.isEmpty();
+    }
+
+    /* the LSN of the first buffered change of the oldest open transaction, Long.MAX_VALUE - none is open */
+    public long getFirstLSN() {
+        long firstLSN = Long.MAX_VALUE;
+        for (StreamedTransaction transaction : this.openTransactions) {
+            firstLSN = Math.min(firstLSN, transaction.firstLSN);
+        }
+        return firstLSN;
+    }
+
+    private void add(int xid, int subXid, ByteBuffer buffer, int skip, long lsn) throws IOException {
+        StreamedTransaction transaction = this.transactions.get(xid);
+        if (transaction == null) {
+            transaction = new StreamedTransaction(xid, lsn);
+            this.transactions.put(xid, transaction);
+            this.openTransactions.add(transaction);
+        }
+
+        byte[] frame = new byte[buffer.limit() - skip];
+        frame[0] = buffer.get(0);
+        for (int i = 1; i < frame.length; i++) {
+            frame[i] = buffer.get(i + skip);
+        }
+
+        if (this.memoryUsed + frame.length > this.memoryLimit) {
+            StreamedTransaction largest = transaction;
+            for (StreamedTransaction openTransaction : this.openTransactions) {
+                if (openTransaction.memoryUsed > largest.memoryUsed) {
+                    largest = openTransaction;
+                }
+            }
+            this.memoryUsed -= largest.spill();
+        }
+        transaction.add(subXid, frame);
+        this.memoryUsed += frame.length;
+    }
+
+    /* the subtransaction (subXid != xid) or the whole transaction is rolled back */
+    public void abort(int xid, int subXid) throws IOException {
+        StreamedTransaction transaction = this.transactions.get(xid);
+        if (transaction == null) {
+            return;
+        }
+        if (xid == subXid) {
+            this.release(transaction);
+        } else {
+            transaction.abortSubTransaction(subXid);
+        }
+    }
+
+    /*
+        Returns the reader of the committed transaction or null when nothing was streamed for it.
+        The transaction stays accounted until the reader is closed. For the commit prepared null
+        may also mean the prepare was received before a restart with the recreated slot, its
+        changes are not sent again (see the class comment).
+     */
+    public Reader commit(int xid, long commitLSN, long endLSN, long commitTime) throws IOException {
+        StreamedTransaction transaction = this.transactions.get(xid);
+        if (transaction == null) {
+            return null;
+        }
+        transaction.closeWriter();
+        logger.info("the streamed transaction: {} is committed, changes: {}, spilled segments: {}",
+                xid, transaction.count, transaction.segments.size());
+        return new Reader(transaction, commitLSN, endLSN, commitTime);
+    }
+
+    private void release(StreamedTransaction transaction) throws IOException {
+        this.memoryUsed -= transaction.memoryUsed;
+        transaction.delete();
+        this.transactions.remove(transaction.xid);
+        this.openTransactions.remove(transaction);
+    }
+
+    private void deleteSegments() throws IOException {
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(this.directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path path : paths) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        for (StreamedTransaction transaction : this.openTransactions) {
+            transaction.closeWriter();
+        }
+        this.openTransactions.clear();
+        this.transactions.clear();
+        this.memoryUsed = 0;
+        this.deleteSegments();
+    }
+
+    private class StreamedTransaction {
+        private final int xid;
+        private final long firstLSN;
+        private final List<byte[]> frames = new ArrayList<>();
+        private final List<Integer> subXids = new ArrayList<>();
+        private final List<Path> segments = new ArrayList<>();
+        private final Set<Integer> abortedSubXids = new HashSet<>();
+        private DataOutputStream writer;
+        private long writerSize;
+        private long memoryUsed;
+        private long count;
+
+        StreamedTransaction(int xid, long firstLSN) {
+            this.xid = xid;
+            this.firstLSN = firstLSN;
+        }
+
+        void add(int subXid, byte[] frame) {
+            this.frames.add(frame);
+            this.subXids.add(subXid);
+            this.memoryUsed += frame.length;
+            this.count++;
+        }
+
+        void abortSubTransaction(int subXid) {
+            this.abortedSubXids.add(subXid);
+        }
+
+        /* appends the in-memory changes to the segment files, returns the released memory */
+        long spill() throws IOException {
+            for (int i = 0; i < this.frames.size(); i++) {
+                byte[] frame = this.frames.get(i);
+                if (this.writer == null || this.writerSize >= segmentSize) {
+                    this.openWriter();
+                }
+                /* (Int32) length, (Int32) xid of the subtransaction, the message */
+                this.writer.writeInt(frame.length);
+                this.writer.writeInt(this.subXids.get(i));
+                this.writer.write(frame);
+                this.writerSize += 8 + frame.length;
+            }
+            if (this.writer != null) {
+                this.writer.flush();
+            }
+
+            long released = this.memoryUsed;
+            this.frames.clear();
+            this.subXids.clear();
+            this.memoryUsed = 0;
+            return released;
+        }
+
+        private void openWriter() throws IOException {
+            this.closeWriter();
+            Path segment = directory.resolve(String.format("%d-%06d%s", this.xid, this.segments.size(), SEGMENT_SUFFIX));
+            this.writer = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(segment), 65536));
+            this.writerSize = 0;
+            this.segments.add(segment);
+        }
+
+        void closeWriter() throws IOException {
+            if (this.writer != null) {
+                this.writer.close();
+                this.writer = null;
+            }
+        }
+
+        void delete() throws IOException {
+            this.closeWriter();
+            for (Path segment : this.segments) {
+                Files.deleteIfExists(segment);
+            }
+            this.segments.clear();
+            this.frames.clear();
+            this.subXids.clear();
+        }
+    }
+
+    /*
+        Reads the committed transaction back: the begin message, the spilled changes,
+        the in-memory changes and the commit message. The returned buffer is valid
+        until the next call.
+     */
+    public class Reader implements AutoCloseable {
+        private final StreamedTransaction transaction;
+        private final long commitLSN;
+        private final long endLSN;
+        private final long commitTime;
+
+        private int state; /* 0 - begin, 1 - segments, 2 - memory, 3 - commit, 4 - done */
+        private int segmentIndex;
+        private DataInputStream segment;
+        private int frameIndex;
+        private byte[] readBuffer = new byte[8192];
+
+        Reader(StreamedTransaction transaction, long commitLSN, long endLSN, long commitTime) {
+            this.transaction = transaction;
+            this.commitLSN = commitLSN;
+            this.endLSN = endLSN;
+            this.commitTime = commitTime;
+        }
+
+        public ByteBuffer next() throws IOException {
+            while (true) {
+                switch (this.state) {
+                    case 0:
+                        this.state = 1;
+                        /* (Byte1) 'B', (Int64) the final LSN, (Int64) commit timestamp, (Int32) xid */
+                        return ByteBuffer.allocate(21).put((byte) 'B').putLong(this.endLSN)
+                                .putLong(this.commitTime).putInt(this.transaction.xid).flip();
+                    case 1:
+                        ByteBuffer spilled = this.readSegment();
+                        if (spilled != null) {
+                            return spilled;
+                        }
+                        this.state = 2;
+                        break;
+                    case 2:
+                        while (this.frameIndex < this.transaction.frames.size()) {
+                            int index = this.frameIndex++;
+                            if (this.transaction.abortedSubXids.contains(this.transaction.subXids.get(index)) == false) {
+                                return ByteBuffer.wrap(this.transaction.frames.get(index));
+                            }
+                        }
+                        this.state = 3;
+                        break;
+                    case 3:
+                        this.state = 4;
+                        /* (Byte1) 'C', (Int8) flags, (Int64) commit LSN, (Int64) end LSN, (Int64) commit timestamp */
+                        return ByteBuffer.allocate(26).put((byte) 'C').put((byte) 0).putLong(this.commitLSN)
+                                .putLong(this.endLSN).putLong(this.commitTime).flip();
+                    default:
+                        return null;
+                }
+            }
+        }
+
+        private ByteBuffer readSegment() throws IOException {
+            while (true) {
+                if (this.segment == null) {
+                    if (this.segmentIndex >= this.transaction.segments.size()) {
+                        return null;
+                    }
+                    Path path = this.transaction.segments.get(this.segmentIndex++);
+                    this.segment = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 65536));
+                }
+
+                int length;
+                try {
+                    length = this.segment.readInt();
+                } catch (EOFException ex) {
+                    this.segment.close();
+                    this.segment = null;
+                    continue;
+                }
+                int subXid = this.segment.readInt();
+
+                if (this.readBuffer.length < length) {
+                    this.readBuffer = new byte[Math.max(length, this.readBuffer.length * 2)];
+                }
+                this.segment.readFully(this.readBuffer, 0, length);
+
+                if (this.transaction.abortedSubXids.contains(subXid) == false) {
+                    return ByteBuffer.wrap(this.readBuffer, 0, length).slice();
+                }
+            }
+        }
+
+        public void close() throws IOException {
+            if (this.segment != null) {
+                this.segment.close();
+                this.segment = null;
+            }
+            release(this.transaction);
+        }
+    }
+}
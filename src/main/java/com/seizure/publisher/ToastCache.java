@@ -0,0 +1,476 @@
+package com.seizure.publisher;
+
+import com.seizure.publisher.models.Column;
+import com.seizure.publisher.models.Relation;
+import com.seizure.publisher.models.ReplicationMessage;
+import com.seizure.publisher.models.TupleView;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+    Remembers the last seen values of the large columns of every row, so the unchanged
+    TOASTed values ('u') of the update messages can be filled in without REPLICA IDENTITY FULL.
+
+    The rows are identified by the relation and the values of its replica identity key
+    columns. The column values of a row are kept off-heap in one block of the Arena, the
+    pages of the arena are allocated once and reused, so the direct memory is bounded by
+    the budget and not left to the GC. The rows are evicted in the least recently used
+    order when the byte budget is exceeded or the arena has no block for the new row.
+    The row larger than the page of the arena is not cached. A miss leaves the column
+    unchanged ('u'), as without the cache.
+ */
+public class ToastCache {
+    private static final Logger logger = LogManager.getLogger(ToastCache.class);
+
+    /* the approximate heap footprint of one cached row besides its key and arrays */
+    private static final int ROW_OVERHEAD = 96;
+
+    private final long maxBytes;
+    private final int minValueBytes;
+    private final Arena arena;
+
+    private final LinkedHashMap<RowKey, CachedRow> rows = new LinkedHashMap<>(1024, 0.75f, true);
+    private final RowKey probe = new RowKey();
+    private long usedBytes;
+    private long hits;
+    private long misses;
+
+    public ToastCache(long maxBytes, int minValueBytes) {
+        if (maxBytes < Arena.MIN_BLOCK) {
+            throw new IllegalArgumentException(String.format("The size of the TOAST cache must be at least %d bytes!", Arena.MIN_BLOCK));
+        }
+        this.maxBytes = maxBytes;
+        this.minValueBytes = minValueBytes;
+        this.arena = new Arena(maxBytes);
+    }
+
+    /*
+        Applies the decoded insert, update or delete message: the unchanged TOASTed values
+        of the update are resolved, the new values are remembered and the deleted rows are evicted.
+     */
+    public void apply(ReplicationMessage message) {
+        Relation relation = message.getRelation();
+        if (relation == null) {
+            return;
+        }
+
+        switch (message.getType()) {
+            case INSERT:
+                this.store(relation, message.getNewTuple(), null);
+                break;
+
+            case UPDATE:
+                /* the old key ('K') or the old tuple ('O') is sent only when the key has changed or for FULL */
+                TupleView keyTuple = message.hasOldTuple() ? message.getOldTuple() : message.getNewTuple();
+                CachedRow cachedRow = this.setProbe(relation, keyTuple) ? this.rows.get(this.probe) : null;
+
+                this.resolve(message, cachedRow);
+                this.store(relation, message.getNewTuple(), message.hasOldTuple() ? keyTuple : null);
+                break;
+
+            case DELETE:
+                this.evict(relation, message.getOldTuple());
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    /* forgets the rows of the relation, its columns might have been changed */
+    public void evictRelation(int relationId) {
+        Iterator<Map.Entry<RowKey, CachedRow>> iterator = this.rows.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<RowKey, CachedRow> entry = iterator.next();
+            if (entry.getKey().relationId() == relationId) {
+                this.release(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        this.rows.values().forEach(this::release);
+        this.rows.clear();
+        logger.info("the TOAST cache is cleared, hits: {}, misses: {}", this.hits, this.misses);
+    }
+
+    public int size() {
+        return this.rows.size();
+    }
+
+    public long getUsedBytes() {
+        return this.usedBytes;
+    }
+
+    private void resolve(ReplicationMessage message, CachedRow cachedRow) {
+        TupleView newTuple = message.getNewTuple();
+        TupleView oldTuple = message.getOldTuple();
+        boolean fullOldTuple = message.getOldTupleType() == 'O';
+
+        for (int i = 0; i < newTuple.getNumColumns(); i++) {
+            if (newTuple.isUnchangedToast(i) == false) {
+                continue;
+            }
+
+            /* REPLICA IDENTITY FULL: the value is in the old tuple of the same message */
+            if (fullOldTuple && i < oldTuple.getNumColumns()) {
+                char kind = oldTuple.getKind(i);
+                if (kind == 't' || kind == 'b') {
+                    newTuple.resolveColumn(i, (byte) kind, oldTuple.getBuffer(i), oldTuple.getOffset(i), oldTuple.getLength(i));
+                    continue;
+                }
+            }
+
+            if (cachedRow != null && i < cachedRow.kinds.length && cachedRow.kinds[i] != 0) {
+                newTuple.resolveColumn(i, cachedRow.kinds[i], cachedRow.data, cachedRow.offsets[i], cachedRow.lengths[i]);
+                this.hits++;
+            } else {
+                this.misses++;
+                logger.debug("the unchanged TOASTed value of {}.{} is not cached", message.getRelation().getFullName(),
+                        message.getRelation().getColumn(i).getName());
+            }
+        }
+    }
+
+    /* remembers the large values of the tuple, the row kept under the old key (if any) is replaced */
+    private void store(Relation relation, TupleView tuple, TupleView oldKeyTuple) {
+        if (oldKeyTuple != null) {
+            this.evict(relation, oldKeyTuple);
+        }
+
+        if (this.setProbe(relation, tuple) == false) {
+            return;
+        }
+
+        int numColumns = tuple.getNumColumns();
+        int size = 0;
+        for (int i = 0; i < numColumns; i++) {
+            if (this.isCacheable(tuple, i)) {
+                size += tuple.getLength(i);
+            }
+        }
+
+        CachedRow cachedRow = this.rows.get(this.probe);
+        if (size == 0 || size > this.arena.getPageSize()) {
+            if (cachedRow != null) {
+                this.remove(this.probe);
+            }
+            return;
+        }
+
+        /* the block of the row is reused unless it is too small or still referenced by the tuple */
+        if (cachedRow != null && cachedRow.data.capacity() >= size && cachedRow.kinds.length >= numColumns
+                && this.references(tuple, cachedRow.data) == false) {
+            this.fill(cachedRow, tuple);
+            return;
+        }
+
+        /* the previous row is not evicted for the space, the tuple may still read its values, its block is freed after the copy */
+        RowKey key = this.probe.copy();
+        CachedRow previous = this.rows.remove(key);
+        if (previous != null) {
+            this.usedBytes -= previous.bytes;
+        }
+        long block;
+        while ((block = this.arena.allocate(size)) < 0 && this.rows.isEmpty() == false) {
+            this.removeEldest();
+        }
+        if (block >= 0) {
+            CachedRow newRow = new CachedRow(block, this.arena.getBuffer(block), numColumns);
+            this.fill(newRow, tuple);
+            newRow.bytes = newRow.data.capacity() + key.bytes.length + 9L * numColumns + ROW_OVERHEAD;
+            this.rows.put(key, newRow);
+            this.usedBytes += newRow.bytes;
+        }
+        if (previous != null) {
+            this.arena.free(previous.block);
+        }
+        this.evictEldest();
+    }
+
+    private void fill(CachedRow cachedRow, TupleView tuple) {
+        Arrays.fill(cachedRow.kinds, (byte) 0);
+
+        int position = 0;
+        for (int i = 0; i < tuple.getNumColumns(); i++) {
+            if (this.isCacheable(tuple, i) == false) {
+                continue;
+            }
+            int length = tuple.getLength(i);
+            ByteBuffer source = tuple.getBuffer(i).duplicate();
+            source.limit(tuple.getOffset(i) + length).position(tuple.getOffset(i));
+            ByteBuffer target = cachedRow.data.duplicate();
+            target.position(position);
+            target.put(source);
+            cachedRow.kinds[i] = (byte) tuple.getKind(i);
+            cachedRow.offsets[i] = position;
+            cachedRow.lengths[i] = length;
+            position += length;
+        }
+    }
+
+    private boolean isCacheable(TupleView tuple, int index) {
+        char kind = tuple.getKind(index);
+        return (kind == 't' || kind == 'b') && tuple.getLength(index) >= this.minValueBytes;
+    }
+
+    private boolean references(TupleView tuple, ByteBuffer data) {
+        for (int i = 0; i < tuple.getNumColumns(); i++) {
+            if (tuple.getBuffer(i) == data) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void evict(Relation relation, TupleView keyTuple) {
+        if (this.setProbe(relation, keyTuple)) {
+            this.remove(this.probe);
+        }
+    }
+
+    private void remove(RowKey key) {
+        CachedRow cachedRow = this.rows.remove(key);
+        if (cachedRow != null) {
+            this.release(cachedRow);
+        }
+    }
+
+    private void evictEldest() {
+        while (this.usedBytes > this.maxBytes && this.rows.isEmpty() == false) {
+            this.removeEldest();
+        }
+    }
+
+    private void removeEldest() {
+        Iterator<CachedRow> iterator = this.rows.values().iterator();
+        this.release(iterator.next());
+        iterator.remove();
+    }
+
+    private void release(CachedRow cachedRow) {
+        this.usedBytes -= cachedRow.bytes;
+        this.arena.free(cachedRow.block);
+    }
+
+    /*
+        Builds the key of the row into the reusable probe: the relation id followed by
+        the length and the bytes of every key column. Returns false when the relation
+        has no key columns or a key value is not in the tuple.
+     */
+    private boolean setProbe(Relation relation, TupleView tuple) {
+        this.probe.reset(relation.getId());
+
+        boolean hasKey = false;
+        for (int i = 0; i < tuple.getNumColumns(); i++) {
+            Column column = relation.getColumn(i);
+            if (column == null || column.isKey() != 1) {
+                continue;
+            }
+            char kind = tuple.getKind(i);
+            if (kind != 't' && kind != 'b') {
+                return false;
+            }
+            this.probe.append(tuple.getBuffer(i), tuple.getOffset(i), tuple.getLength(i));
+            hasKey = true;
+        }
+        return hasKey;
+    }
+
+    private static class CachedRow {
+        private final long block;
+        private final ByteBuffer data; /* the block of the arena */
+        private final byte[] kinds; /* 't' or 'b' - the value is cached, 0 - it is not */
+        private final int[] offsets;
+        private final int[] lengths;
+        private long bytes;
+
+        CachedRow(long block, ByteBuffer data, int numColumns) {
+            this.block = block;
+            this.data = data;
+            this.kinds = new byte[numColumns];
+            this.offsets = new int[numColumns];
+            this.lengths = new int[numColumns];
+        }
+    }
+
+    /*
+        The off-heap memory of the cached rows: the direct pages of up to 1 MiB, allocated when
+        they are needed first and kept for the life of the cache, at most maxBytes together.
+        Every page is split by the buddy system into the blocks of the power of two sizes, from
+        MIN_BLOCK to the page; the freed block is merged with its free buddy, so the memory of
+        the evicted rows serves the rows of any size.
+
+        The block is (page << 32 | order << 24 | offset), the order is log2(size / MIN_BLOCK).
+        The tree of the page is the implicit binary tree of its blocks (the root is 1, the
+        children of n are 2n and 2n + 1), the node keeps the order + 1 of the largest free
+        block under it, 0 - none.
+     */
+    private static class Arena {
+        private static final int MIN_BLOCK_SHIFT = 6;
+        private static final int MIN_BLOCK = 1 << MIN_BLOCK_SHIFT;
+        private static final int MAX_PAGE_SHIFT = 20;
+
+        private final int pageShift;
+        private final int maxOrder;
+        private final ByteBuffer[] pages;
+        private final byte[][] trees;
+        private int pageCount;
+        private int lastPage;
+
+        Arena(long maxBytes) {
+            this.pageShift = Math.min(MAX_PAGE_SHIFT, 63 - Long.numberOfLeadingZeros(maxBytes));
+            this.maxOrder = this.pageShift - MIN_BLOCK_SHIFT;
+            int maxPages = (int) Math.min(maxBytes >>> this.pageShift, Integer.MAX_VALUE);
+            this.pages = new ByteBuffer[maxPages];
+            this.trees = new byte[maxPages][];
+        }
+
+        int getPageSize() {
+            return 1 << this.pageShift;
+        }
+
+        /* returns the block of at least size bytes, -1 when no page has a free block of the size */
+        long allocate(int size) {
+            int order = Math.max(0, 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_BLOCK_SHIFT);
+            for (int i = 0; i < this.pageCount; i++) {
+                int page = (this.lastPage + i) % this.pageCount;
+                if (this.trees[page][1] > order) {
+                    return this.allocate(page, order);
+                }
+            }
+            if (this.pageCount < this.pages.length) {
+                int page = this.pageCount++;
+                this.pages[page] = ByteBuffer.allocateDirect(this.getPageSize());
+                this.trees[page] = new byte[2 << this.maxOrder];
+                for (int node = 1, nodeOrder = this.maxOrder; nodeOrder >= 0; nodeOrder--) {
+                    Arrays.fill(this.trees[page], node, node << 1, (byte) (nodeOrder + 1));
+                    node <<= 1;
+                }
+                return this.allocate(page, order);
+            }
+            return -1;
+        }
+
+        private long allocate(int page, int order) {
+            byte[] tree = this.trees[page];
+            int node = 1;
+            for (int nodeOrder = this.maxOrder; nodeOrder > order; nodeOrder--) {
+                node <<= 1;
+                if (tree[node] <= order) {
+                    node++;
+                }
+            }
+            tree[node] = 0;
+            this.update(tree, node, order);
+            this.lastPage = page;
+
+            int offset = (node - (1 << (this.maxOrder - order))) << (order + MIN_BLOCK_SHIFT);
+            return ((long) page << 32) | ((long) order << 24) | offset;
+        }
+
+        void free(long block) {
+            int page = (int) (block >>> 32);
+            int order = (int) (block >>> 24) & 0xFF;
+            int offset = (int) block & 0xFFFFFF;
+            byte[] tree = this.trees[page];
+            int node = (1 << (this.maxOrder - order)) + (offset >>> (order + MIN_BLOCK_SHIFT));
+            tree[node] = (byte) (order + 1);
+            this.update(tree, node, order);
+        }
+
+        ByteBuffer getBuffer(long block) {
+            int order = (int) (block >>> 24) & 0xFF;
+            int offset = (int) block & 0xFFFFFF;
+            ByteBuffer buffer = this.pages[(int) (block >>> 32)].duplicate();
+            buffer.limit(offset + (MIN_BLOCK << order)).position(offset);
+            return buffer.slice();
+        }
+
+        /* the parents of the changed node: the two free buddies make the free block of the parent */
+        private void update(byte[] tree, int node, int order) {
+            while (node > 1) {
+                int left = tree[node & ~1];
+                int right = tree[node | 1];
+                node >>>= 1;
+                tree[node] = (byte) ((left == order + 1 && right == order + 1) ? order + 2 : Math.max(left, right));
+                order++;
+            }
+        }
+    }
+
+    private static class RowKey {
+        private byte[] bytes = new byte[64];
+        private int length;
+        private int hash;
+
+        void reset(int relationId) {
+            this.length = 0;
+            this.hash = 1;
+            this.appendInt(relationId);
+        }
+
+        void append(ByteBuffer buffer, int offset, int length) {
+            this.appendInt(length);
+            this.ensureCapacity(length);
+            for (int i = 0; i < length; i++) {
+                byte value = buffer.get(offset + i);
+                this.bytes[this.length++] = value;
+                this.hash = 31 * this.hash + value;
+            }
+        }
+
+        private void appendInt(int value) {
+            this.ensureCapacity(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                byte part = (byte) (value >>> shift);
+                this.bytes[this.length++] = part;
+                this.hash = 31 * this.hash + part;
+            }
+        }
+
+        private void ensureCapacity(int extra) {
+            if (this.length + extra > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, Math.max(this.length + extra, this.bytes.length * 2));
+            }
+        }
+
+        int relationId() {
+            return ((this.bytes[0] & 0xFF) << 24) | ((this.bytes[1] & 0xFF) << 16)
+                    | ((this.bytes[2] & 0xFF) << 8) | (this.bytes[3] & 0xFF);
+        }
+
+        RowKey copy() {
+            RowKey key = new RowKey();
+            key.bytes = Arrays.copyOf(this.bytes, this.length);
+            key.length = this.length;
+            key.hash = this.hash;
+            return key;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if ((obj instanceof RowKey) == false) {
+                return false;
+            }
+            RowKey other = (RowKey) obj;
+            return this.hash == other.hash
+                    && Arrays.equals(this.bytes, 0, this.length, other.bytes, 0, other.length);
+        }
+    }
+}
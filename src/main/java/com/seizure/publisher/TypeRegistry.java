@@ -0,0 +1,152 @@
+package com.seizure.publisher;
+
+import com.seizure.publisher.models.Column;
+import com.seizure.publisher.models.Relation;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    The names of the data types used by the replicated relations.
+
+    The built-in types are known from the start, the rest is learned from the type
+    messages ('Y') sent by pgoutput for the non built-in types, or queried from
+    pg_type in one batch for all unknown columns of a relation message.
+ */
+public class TypeRegistry {
+    private static final Logger logger = LogManager.getLogger(TypeRegistry.class);
+
+    private static final String SELECT_TYPES = "SELECT oid, typname FROM pg_catalog.pg_type WHERE oid = ANY (?::oid[])";
+
+    private final IntObjectMap<String> types = new IntObjectMap<String>(128);
+    private final Connection sqlConnection;
+
+    /* the registry without the connection knows the built-in types and the types sent by pgoutput only */
+    public TypeRegistry() {
+        this(null);
+    }
+
+    public TypeRegistry(Connection sqlConnection) {
+        this.sqlConnection = sqlConnection;
+        this.registerBuiltinTypes();
+    }
+
+    public String getName(int typeId) {
+        return this.types.get(typeId);
+    }
+
+    public boolean contains(int typeId) {
+        return this.types.containsKey(typeId);
+    }
+
+    /* the type message ('Y'): (Int32) ID of the data type, (String) namespace, (String) name of the data type */
+    public void register(int typeId, String namespace, String name) {
+        this.types.put(typeId, name);
+        logger.debug("the data type: {}.{} ({}) is registered", namespace, name, typeId);
+    }
+
+    /* sets the names of the column types, the unknown ones are loaded by one query */
+    public void resolve(Relation relation) {
+        List<Integer> unknown = null;
+        for (Column column : relation.getColumns()) {
+            if (column != null && this.types.containsKey(column.getDataTypeId()) == false) {
+                if (unknown == null) {
+                    unknown = new ArrayList<Integer>();
+                }
+                if (unknown.contains(column.getDataTypeId()) == false) {
+                    unknown.add(column.getDataTypeId());
+                }
+            }
+        }
+
+        if (unknown != null) {
+            this.load(unknown);
+        }
+
+        for (Column column : relation.getColumns()) {
+            if (column != null) {
+                column.setDataTypeName(this.types.get(column.getDataTypeId()));
+            }
+        }
+    }
+
+    private void load(List<Integer> typeIds) {
+        if (this.sqlConnection == null) {
+            return;
+        }
+
+        try (PreparedStatement statement = this.sqlConnection.prepareStatement(SELECT_TYPES)) {
+            /* the OIDs above 2^31 are negative as int4 and are cast back to oid by the server */
+            Array array = this.sqlConnection.createArrayOf("int4", typeIds.toArray());
+            statement.setArray(1, array);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    this.types.put((int) resultSet.getLong(1), resultSet.getString(2));
+                }
+            }
+            array.free();
+        } catch (SQLException ex) {
+            logger.warn("load() - cannot load the data types: {}, {}", typeIds, ex.toString());
+        }
+    }
+
+    private void registerBuiltinTypes() {
+        this.types.put(16, "bool");
+        this.types.put(17, "bytea");
+        this.types.put(18, "char");
+        this.types.put(19, "name");
+        this.types.put(20, "int8");
+        this.types.put(21, "int2");
+        this.types.put(23, "int4");
+        this.types.put(25, "text");
+        this.types.put(26, "oid");
+        this.types.put(114, "json");
+        this.types.put(142, "xml");
+        this.types.put(650, "cidr");
+        this.types.put(700, "float4");
+        this.types.put(701, "float8");
+        this.types.put(790, "money");
+        this.types.put(829, "macaddr");
+        this.types.put(869, "inet");
+        this.types.put(1042, "bpchar");
+        this.types.put(1043, "varchar");
+        this.types.put(1082, "date");
+        this.types.put(1083, "time");
+        this.types.put(1114, "timestamp");
+        this.types.put(1184, "timestamptz");
+        this.types.put(1186, "interval");
+        this.types.put(1266, "timetz");
+        this.types.put(1560, "bit");
+        this.types.put(1562, "varbit");
+        this.types.put(1700, "numeric");
+        this.types.put(2950, "uuid");
+        this.types.put(3614, "tsvector");
+        this.types.put(3802, "jsonb");
+
+        /* the arrays of the types above */
+        this.types.put(199, "_json");
+        this.types.put(1000, "_bool");
+        this.types.put(1001, "_bytea");
+        this.types.put(1005, "_int2");
+        this.types.put(1007, "_int4");
+        this.types.put(1009, "_text");
+        this.types.put(1014, "_bpchar");
+        this.types.put(1015, "_varchar");
+        this.types.put(1016, "_int8");
+        this.types.put(1021, "_float4");
+        this.types.put(1022, "_float8");
+        this.types.put(1115, "_timestamp");
+        this.types.put(1182, "_date");
+        this.types.put(1185, "_timestamptz");
+        this.types.put(1231, "_numeric");
+        this.types.put(2951, "_uuid");
+        this.types.put(3807, "_jsonb");
+    }
+}
@@ -0,0 +1,503 @@
+package com.seizure.publisher.codecs;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/*
+    The codecs of the binary formatted ('b') values, keyed by the type OID.
+
+    The values keep the representation of the text mode where it matters for the
+    subscriber: numeric, date/time and array values are rendered into the same
+    strings the server would send, integers are Long, floats are Double.
+    The types without a codec here are sent by their binary send functions, for
+    enums, citext and domains over text that is the text itself.
+ */
+public final class BinaryCodecs {
+
+    public static final ColumnCodec BOOL = new BoolCodec();
+    public static final ColumnCodec INT2 = new Int2Codec();
+    public static final ColumnCodec INT4 = new Int4Codec();
+    public static final ColumnCodec INT8 = new Int8Codec();
+    public static final ColumnCodec OID = new OidCodec();
+    public static final ColumnCodec FLOAT4 = new Float4Codec();
+    public static final ColumnCodec FLOAT8 = new Float8Codec();
+    public static final ColumnCodec NUMERIC = new NumericCodec();
+    public static final ColumnCodec TIMESTAMP = new TimestampCodec(false);
+    public static final ColumnCodec TIMESTAMPTZ = new TimestampCodec(true);
+    public static final ColumnCodec DATE = new DateCodec();
+    public static final ColumnCodec UUID_CODEC = new UuidCodec();
+    public static final ColumnCodec BYTEA = new ByteaCodec();
+    public static final ColumnCodec JSONB = new JsonbCodec();
+    public static final ColumnCodec ARRAY = new ArrayCodec();
+
+    /* microseconds between 1970-01-01 and the PostgreSQL epoch 2000-01-01 */
+    private static final long POSTGRES_EPOCH_DAYS = 10957;
+    private static final long MICROS_PER_DAY = 86400000000L;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private BinaryCodecs() {
+    }
+
+    public static ColumnCodec forBinary(int dataTypeId) {
+        switch (dataTypeId) {
+            case 16: // bool
+                return BOOL;
+            case 17: // bytea
+                return BYTEA;
+            case 20: // int8
+                return INT8;
+            case 21: // int2
+                return INT2;
+            case 23: // int4
+                return INT4;
+            case 26: // oid
+                return OID;
+            case 700: // float4
+                return FLOAT4;
+            case 701: // float8
+                return FLOAT8;
+            case 1700: // numeric
+                return NUMERIC;
+            case 1082: // date
+                return DATE;
+            case 1114: // timestamp
+                return TIMESTAMP;
+            case 1184: // timestamptz
+                return TIMESTAMPTZ;
+            case 2950: // uuid
+                return UUID_CODEC;
+            case 3802: // jsonb
+                return JSONB;
+            case 199: // _json
+            case 1000: // _bool
+            case 1001: // _bytea
+            case 1005: // _int2
+            case 1007: // _int4
+            case 1009: // _text
+            case 1014: // _bpchar
+            case 1015: // _varchar
+            case 1016: // _int8
+            case 1028: // _oid
+            case 1021: // _float4
+            case 1022: // _float8
+            case 1115: // _timestamp
+            case 1182: // _date
+            case 1185: // _timestamptz
+            case 1231: // _numeric
+            case 2951: // _uuid
+            case 3807: // _jsonb
+                return ARRAY;
+            default: // text, varchar, bpchar, name, json, enums ... are sent as the text itself
+                return ColumnCodecs.TEXT_STRING;
+        }
+    }
+
+    private static class BoolCodec implements ColumnCodec {
+        @Override
+        public Object decode(ByteBuffer buffer, int offset, int length) {
+            return buffer.get(offset) != 0;
+        }
+
+        @Override
+        public void write(JsonGenerator generator, ByteBuffer buffer, int offset, int length) throws IOException {
+            generator.writeBoolean(buffer.get(offset) != 0);
+        }
+    }
+
+    private static class Int2Codec implements ColumnCodec {
+        @Override
+        public Object decode(ByteBuffer buffer, int offset, int length) {
+            return (long) buffer.getShort(offset);
+        }
+
+        @Override
+        public void write(JsonGenerator generator, ByteBuffer buffer, int offset, int length) throws IOException {
+            generator.writeNumber(buffer.getShort(offset));
+        }
+    }
+
+    private static class Int4Codec implements ColumnCodec {
+        @Override
+        public Object decode(ByteBuffer buffer, int offset, int length) {
+            return (long) buffer.getInt(offset);
+        }
+
+        @Override
+        public void write(JsonGenerator generator, ByteBuffer buffer, int offset, int length) throws IOException {
+            generator.writeNumber(buffer.getInt(offset));
+        }
+    }
+
+    /* (UInt32) the oid is unsigned, the values above 2^31 - 1 are not negative */
+    private static class OidCodec implements ColumnCodec {
+        @Override
+        public Object decode(ByteBuffer buffer, int offset, int length) {
+            return Integer.toUnsignedLong(buffer.getInt(offset));
+        }
+
+        @Override
+        public void write(JsonGenerator generator, ByteBuffer buffer, int offset, int length) throws IOException {
+            generator.writeNumber(Integer.toUnsignedLong(buffer.getInt(offset)));
+        }
+    }
+
+    private static class Int8Codec implements ColumnCodec {
+        @Override
+        public Object decode(ByteBuffer buffer, int offset, int length) {
+            return buffer.getLong(offset);
+        }
+
+        @Override
+        public void write(JsonGenerator generator, ByteBuffer buffer, int offset, int length) throws IOException {
+            generator.writeNumber(buffer.getLong(offset));
+        }
+    }
+
+    /* NaN and the infinities are not valid JSON numbers, they are kept as the strings of the text mode */
+    private static Object floatValue(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "Infinity" : "-Infinity";
+        }
+        return value;
+    }
+
+    private static void writeFloat(JsonGenerator generator, double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            generator.writeString((String) floatValue(value));
+        } else {
+            generator.writeNumber(value);
+        }
+    }
+
+    /* the float4 values stay Float, so they are printed with the float precision as in the text mode */
+    private static class Float4Codec implements ColumnCodec {
+        @Override
+        public Object decode(ByteBuffer buffer, int offset, int length) {
+            float value = buffer.getFloat(offset);
+            return (Float.isNaN(value) || Float.isInfinite(value)) ? floatValue(value) : (Object) value;
+        }
+
+        @Override
+        public void write(JsonGenerator generator, ByteBuffer buffer, int offset, int length) throws IOException {
+            float value = buffer.getFloat(offset);
+            if (Float.isNaN(value) || Float.isInfinite(value)) {
+                generator.writeString((String) floatValue(value));
+            } else {
+                generator.writeNumber(value);
+            }
+        }
+    }
+
+    private static class Float8Codec implements ColumnCodec {
+        @Override
+        public Object decode(ByteBuffer buffer, int offset, int length) {
+            return floatValue(buffer.getDouble(offset));
+        }
+
+        @Override
+        public void write(JsonGenerator generator, ByteBuffer buffer, int offset, int length) throws IOException {
+            writeFloat(generator, buffer.getDouble(offset));
+        }
+    }
+
+    /*
+        (Int16) ndigits, (Int16) weight, (Int16) sign, (Int16) dscale and ndigits of (Int16)
+        base 10000 digits, see numeric_send() in postgres/src/backend/utils/adt/numeric.c.
+        The value stays a string, as in the text mode, to keep the precision on the subscriber.
+     */
+    private static class NumericCodec implements ColumnCodec {
+        private static final int NUMERIC_NEG = 0x4000;
+        private static final int NUMERIC_NAN = 0xC000;
+        private static final int NUMERIC_PINF = 0xD000;
+        private static final int NUMERIC_NINF = 0xF000;
+        private static final BigInteger NBASE = BigInteger.valueOf(10000);
+
+        static String toString(ByteBuffer buffer, int offset) {
+            int ndigits = buffer.getShort(offset);
+            int weight = buffer.getShort(offset + 2);
+            int sign = buffer.getShort(offset + 4) & 0xFFFF;
+            int dscale = buffer.getShort(offset + 6);
+
+            switch (sign) {
+                case NUMERIC_NAN:
+                    return "NaN";
+                case NUMERIC_PINF:
+                    return "Infinity";
+                case NUMERIC_NINF:
+                    return "-Infinity";
+            }
+
+            BigDecimal value;
+            if (ndigits <= 4) {
+                long unscaled = 0;
+                for (int i = 0; i < ndigits; i++) {
+                    unscaled = unscaled * 10000 + buffer.getShort(offset + 8 + i * 2);
+                }
+                value = BigDecimal.valueOf(unscaled, (ndigits - 1 - weight) * 4);
+            } else {
+                BigInteger unscaled = BigInteger.ZERO;
+                for (int i = 0; i < ndigits; i++) {
+                    unscaled = unscaled.multiply(NBASE).add(BigInteger.valueOf(buffer.getShort(offset + 8 + i * 2)));
+                }
+                value = new BigDecimal(unscaled, (ndigits - 1 - weight) * 4);
+            }
+            value = value.setScale(dscale, RoundingMode.DOWN);
+            if (sign == NUMERIC_NEG) {
+                value = value.negate();
+            }
+            return value.toPlainString();
+        }
+
+        @Override
+        public Object decode(ByteBuffer buffer, int offset, int length) {
+            return toString(buffer, offset);
+        }
+
+        @Override
+        public void write(JsonGenerator generator, ByteBuffer buffer, int offset, int length) throws IOException {
+            generator.writeString(toString(buffer, offset));
+        }
+    }
+
+    private static void appendPadded(StringBuilder sb, long value, int width) {
+        String digits = Long.toString(value);
+        for (int i = digits.length(); i < width; i++) {
+            sb.append('0');
+        }
+        sb.append(digits);
+    }
+
+    private static void appendDate(StringBuilder sb, long epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        int year = date.getYear();
+        if (year <= 0) { /* there is no year 0, 1 BC follows 1 AD */
+            appendPadded(sb, 1 - year, 4);
+        } else {
+            appendPadded(sb, year, 4);
+        }
+        sb.append('-');
+        appendPadded(sb, date.getMonthValue(), 2);
+        sb.append('-');
+        appendPadded(sb, date.getDayOfMonth(), 2);
+    }
+
+    /* (Int64) microseconds since 2000-01-01, rendered as the ISO style of the text mode */
+    private static class TimestampCodec implements ColumnCodec {
+        private final boolean withTimeZone;
+
+        TimestampCodec(boolean withTimeZone) {
+            this.withTimeZone = withTimeZone;
+        }
+
+        String toString(long micros) {
+            if (micros == Long.MAX_VALUE) {
+                return "infinity";
+            }
+            if (micros == Long.MIN_VALUE) {
+                return "-infinity";
+            }
+
+            long days = Math.floorDiv(micros, MICROS_PER_DAY);
+            long time = Math.floorMod(micros, MICROS_PER_DAY);
+
+            StringBuilder sb = new StringBuilder(32);
+            appendDate(sb, days + POSTGRES_EPOCH_DAYS);
+            sb.append(' ');
+            appendPadded(sb, time / 3600000000L, 2);
+            sb.append(':');
+            appendPadded(sb, (time / 60000000L) % 60, 2);
+            sb.append(':');
+            appendPadded(sb, (time / 1000000L) % 60, 2);
+            long fraction = time % 1000000L;
+            if (fraction != 0) {
+                sb.append('.');
+                appendPadded(sb, fraction, 6);
+                while (sb.charAt(sb.length() - 1) == '0') {
+                    sb.setLength(sb.length() - 1);
+                }
+            }
+            if (this.withTimeZone) {
+                sb.append("+00");
+            }
+            if (LocalDate.ofEpochDay(days + POSTGRES_EPOCH_DAYS).getYear() <= 0) {
+                sb.append(" BC");
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public Object decode(ByteBuffer buffer, int offset, int length) {
+            return toString(buffer.getLong(offset));
+        }
+
+        @Override
+        public void write(JsonGenerator generator, ByteBuffer buffer, int offset, int length) throws IOException {
+            generator.writeString(toString(buffer.getLong(offset)));
+        }
+    }
+
+    /* (Int32) days since 2000-01-01 */
+    private static class DateCodec implements ColumnCodec {
+        static String toString(int days) {
+            if (days == Integer.MAX_VALUE) {
+                return "infinity";
+            }
+            if (days == Integer.MIN_VALUE) {
+                return "-infinity";
+            }
+            StringBuilder sb = new StringBuilder(16);
+            long epochDay = days + POSTGRES_EPOCH_DAYS;
+            appendDate(sb, epochDay);
+            if (LocalDate.ofEpochDay(epochDay).getYear() <= 0) {
+                sb.append(" BC");
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public Object decode(ByteBuffer buffer, int offset, int length) {
+            return toString(buffer.getInt(offset));
+        }
+
+        @Override
+        public void write(JsonGenerator generator, ByteBuffer buffer, int offset, int length) throws IOException {
+            generator.writeString(toString(buffer.getInt(offset)));
+        }
+    }
+
+    private static class UuidCodec implements ColumnCodec {
+        @Override
+        public Object decode(ByteBuffer buffer, int offset, int length) {
+            return new UUID(buffer.getLong(offset), buffer.getLong(offset + 8)).toString();
+        }
+
+        @Override
+        public void write(JsonGenerator generator, ByteBuffer buffer, int offset, int length) throws IOException {
+            generator.writeString((String) this.decode(buffer, offset, length));
+        }
+    }
+
+    /* the hex output format of bytea: \x0123... */
+    private static class ByteaCodec implements ColumnCodec {
+        @Override
+        public Object decode(ByteBuffer buffer, int offset, int length) {
+            char[] chars = new char[2 + length * 2];
+            chars[0] = '\\';
+            chars[1] = 'x';
+            for (int i = 0; i < length; i++) {
+                int b = buffer.get(offset + i) & 0xFF;
+                chars[2 + i * 2] = HEX[b >>> 4];
+                chars[3 + i * 2] = HEX[b & 0x0F];
+            }
+            return new String(chars);
+        }
+
+        @Override
+        public void write(JsonGenerator generator, ByteBuffer buffer, int offset, int length) throws IOException {
+            generator.writeString((String) this.decode(buffer, offset, length));
+        }
+    }
+
+    /* (Int8) the format version, currently 1, followed by the text of the document */
+    private static class JsonbCodec implements ColumnCodec {
+        @Override
+        public Object decode(ByteBuffer buffer, int offset, int length) {
+            return ColumnCodecs.TEXT_STRING.decode(buffer, offset + 1, length - 1);
+        }
+
+        @Override
+        public void write(JsonGenerator generator, ByteBuffer buffer, int offset, int length) throws IOException {
+            ColumnCodecs.TEXT_STRING.write(generator, buffer, offset + 1, length - 1);
+        }
+    }
+
+    /*
+        (Int32) ndim, (Int32) has nulls, (Int32) element type OID, ndim pairs of (Int32) dimension
+        size and (Int32) lower bound, then every element as (Int32) length (-1 for NULL) and its data.
+        The value is rendered into the array literal of the text mode: {1,2,NULL} or {{"a","b"},{"c","d"}}.
+     */
+    private static class ArrayCodec implements ColumnCodec {
+
+        static String toString(ByteBuffer buffer, int offset) {
+            int ndim = buffer.getInt(offset);
+            int elementTypeId = buffer.getInt(offset + 8);
+            int position = offset + 12;
+
+            if (ndim == 0) {
+                return "{}";
+            }
+
+            int[] dimensions = new int[ndim];
+            for (int i = 0; i < ndim; i++) {
+                dimensions[i] = buffer.getInt(position);
+                position += 8; /* the size and the lower bound */
+            }
+
+            ColumnCodec elementCodec = forBinary(elementTypeId);
+            StringBuilder sb = new StringBuilder();
+            appendDimension(sb, buffer, new int[]{position}, dimensions, 0, elementCodec);
+            return sb.toString();
+        }
+
+        private static void appendDimension(StringBuilder sb, ByteBuffer buffer, int[] position, int[] dimensions,
+                                            int dimension, ColumnCodec elementCodec) {
+            sb.append('{');
+            for (int i = 0; i < dimensions[dimension]; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                if (dimension + 1 < dimensions.length) {
+                    appendDimension(sb, buffer, position, dimensions, dimension + 1, elementCodec);
+                    continue;
+                }
+
+                int length = buffer.getInt(position[0]);
+                position[0] += 4;
+                if (length < 0) {
+                    sb.append("NULL");
+                    continue;
+                }
+
+                Object element = elementCodec.decode(buffer, position[0], length);
+                position[0] += length;
+
+                if (element instanceof String) {
+                    sb.append('"');
+                    String text = (String) element;
+                    for (int c = 0; c < text.length(); c++) {
+                        char ch = text.charAt(c);
+                        if (ch == '"' || ch == '\\') {
+                            sb.append('\\');
+                        }
+                        sb.append(ch);
+                    }
+                    sb.append('"');
+                } else {
+                    sb.append(element);
+                }
+            }
+            sb.append('}');
+        }
+
+        @Override
+        public Object decode(ByteBuffer buffer, int offset, int length) {
+            return toString(buffer, offset);
+        }
+
+        @Override
+        public void write(JsonGenerator generator, ByteBuffer buffer, int offset, int length) throws IOException {
+            generator.writeString(toString(buffer, offset));
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.seizure.publisher.codecs;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+    Converts one column value taken straight from the replication buffer.
+    The codecs are chosen once per column, when the relation message arrives.
+ */
+public interface ColumnCodec {
+
+    /* the value of the HashMap based messages */
+    Object decode(ByteBuffer buffer, int offset, int length);
+
+    /* writes the value into the output without an intermediate object */
+    void write(JsonGenerator generator, ByteBuffer buffer, int offset, int length) throws IOException;
+}
@@ -0,0 +1,92 @@
+package com.seizure.publisher.codecs;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public final class ColumnCodecs {
+
+    public static final ColumnCodec TEXT_INTEGER = new TextIntegerCodec();
+    public static final ColumnCodec TEXT_STRING = new TextStringCodec();
+
+    private ColumnCodecs() {
+    }
+
+    /* the codec for the text formatted ('t') values of the given data type */
+    public static ColumnCodec forText(int dataTypeId) {
+        switch (dataTypeId) {
+            case 20: // int8
+            case 21: // int2
+            case 23: // int4
+                return TEXT_INTEGER;
+            default:
+                return TEXT_STRING;
+        }
+    }
+
+    public static String readString(ByteBuffer buffer, int offset, int length) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /* parses the text formatted integer value without creating the intermediate String */
+    public static long parseLong(ByteBuffer buffer, int offset, int length) {
+        int position = offset;
+        int end = offset + length;
+        boolean negative = false;
+        byte b = (length > 0) ? buffer.get(position) : 0;
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            position++;
+        }
+        if (position == end) {
+            throw new NumberFormatException("the value is not a number: " + readString(buffer, offset, length));
+        }
+        long result = 0;
+        for (; position < end; position++) {
+            int digit = buffer.get(position) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("the value is not a number: " + readString(buffer, offset, length));
+            }
+            result = result * 10 - digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private static class TextIntegerCodec implements ColumnCodec {
+        @Override
+        public Object decode(ByteBuffer buffer, int offset, int length) {
+            return parseLong(buffer, offset, length);
+        }
+
+        @Override
+        public void write(JsonGenerator generator, ByteBuffer buffer, int offset, int length) throws IOException {
+            generator.writeNumber(parseLong(buffer, offset, length));
+        }
+    }
+
+    private static class TextStringCodec implements ColumnCodec {
+        @Override
+        public Object decode(ByteBuffer buffer, int offset, int length) {
+            return readString(buffer, offset, length);
+        }
+
+        @Override
+        public void write(JsonGenerator generator, ByteBuffer buffer, int offset, int length) throws IOException {
+            /* the CBOR generator (2.12) writes the raw UTF-8 bytes from the start of the array ignoring the offset */
+            if (buffer.hasArray() && generator.canWriteBinaryNatively() == false) {
+                generator.writeUTF8String(buffer.array(), buffer.arrayOffset() + offset, length);
+            } else {
+                generator.writeString(readString(buffer, offset, length));
+            }
+        }
+    }
+}
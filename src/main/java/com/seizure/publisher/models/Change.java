@@ -0,0 +1,68 @@
+package com.seizure.publisher.models;
+
+/*
+    The decoded change passed to the subscriber inside the process (outputFormat = in-process)
+    instead of the serialized payload.
+
+    The column values are decoded by the codecs of the columns, so they are the same objects
+    the simple mode puts into its maps, and nothing refers to the replication buffer. The
+    relation is the handle Decode had when the change was read, a later relation message
+    replaces the handle in Decode and leaves this one as it is.
+ */
+public class Change {
+    /* the value of the unchanged TOASTed column, the same as in the serialized formats */
+    public static final String UNCHANGED_TOAST = "UTOAST";
+
+    private final MessageType type;
+    private final Relation relation;
+    private final Object[] values;
+    private final Relation[] truncatedRelations;
+    private Object[] oldValues;
+
+    public Change(MessageType type, Relation relation, Object[] values, Relation[] truncatedRelations) {
+        this.type = type;
+        this.relation = relation;
+        this.values = values;
+        this.truncatedRelations = truncatedRelations;
+    }
+
+    public MessageType getType() {
+        return type;
+    }
+
+    /* null for the messages without a relation (begin, commit, truncate, logical decoding message) */
+    public Relation getRelation() {
+        return relation;
+    }
+
+    /* the values in the order of the relation columns, null - there is no tuple */
+    public Object[] getValues() {
+        return values;
+    }
+
+    public int getNumColumns() {
+        return (values == null) ? 0 : values.length;
+    }
+
+    public String getColumnName(int index) {
+        return relation.getColumn(index).getName();
+    }
+
+    public Object getValue(int index) {
+        return values[index];
+    }
+
+    /* update: the values of the old key or tuple in the order of the relation columns, null - they are not passed */
+    public Object[] getOldValues() {
+        return oldValues;
+    }
+
+    public void setOldValues(Object[] oldValues) {
+        this.oldValues = oldValues;
+    }
+
+    /* truncate only */
+    public Relation[] getTruncatedRelations() {
+        return truncatedRelations;
+    }
+}
@@ -1,5 +1,9 @@
 package com.seizure.publisher.models;
 
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.seizure.publisher.codecs.ColumnCodec;
+
 public class Column {
 
     private int position;
@@ -9,6 +13,11 @@ public class Column {
     private String dataTypeName;
     private int typeModifier;
 
+    /* the decode plan, filled by Relation.compile() */
+    private ColumnCodec textCodec;
+    private ColumnCodec binaryCodec;
+    private SerializableString encodedName;
+
     public int getPosition() {
         return position;
     }
@@ -56,4 +65,28 @@ public class Column {
     public void setTypeModifier(int typeModifier) {
         this.typeModifier = typeModifier;
     }
+
+    public ColumnCodec getTextCodec() {
+        return textCodec;
+    }
+
+    public ColumnCodec getBinaryCodec() {
+        return binaryCodec;
+    }
+
+    /* the codec of the TupleData value kind: 'b' - binary, 't' - text formatted */
+    public ColumnCodec getCodec(char kind) {
+        return (kind == 'b') ? binaryCodec : textCodec;
+    }
+
+    public SerializableString getEncodedName() {
+        return encodedName;
+    }
+
+    void compile(ColumnCodec textCodec, ColumnCodec binaryCodec) {
+        this.name = this.name.intern();
+        this.encodedName = new SerializedString(this.name);
+        this.textCodec = textCodec;
+        this.binaryCodec = binaryCodec;
+    }
 }
@@ -1,24 +1,45 @@
 package com.seizure.publisher.models;
 
-import java.util.LinkedList;
+import com.seizure.models.ChangeRecord;
 
+/*
+    The changes read by one call of Stream.readStream. The records are kept in the
+    array owned by the stream, so the event is valid until the next read.
+ */
 public class Event {
-    private final LinkedList<String> data;
+    private final ChangeRecord[] data;
+    private final int size;
+    private final long bytes;
     private final Long lastLSN;
     private boolean isSimpleEvent;
     private final boolean hasBeginCommit;
     private boolean isSnapshot;
 
-    public Event(LinkedList<String> data, Long lsn, boolean isSimple, boolean hasBeginCommit, boolean isSnap) {
+    public Event(ChangeRecord[] data, int size, long bytes, Long lsn, boolean isSimple, boolean hasBeginCommit, boolean isSnap) {
         this.data = data;
+        this.size = size;
+        this.bytes = bytes;
         this.lastLSN = lsn;
         this.isSimpleEvent = isSimple;
         this.hasBeginCommit = hasBeginCommit;
         this.isSimpleEvent = isSnap;
     }
 
-    public LinkedList<String> getData() {
-        return data;
+    public ChangeRecord get(int index) {
+        return data[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /* the total size of the payloads */
+    public long getBytes() {
+        return bytes;
     }
 
     public Long getLastLSN() {
@@ -0,0 +1,31 @@
+package com.seizure.publisher.models;
+
+public enum MessageType {
+    BEGIN("begin"),
+    COMMIT("commit"),
+    ORIGIN("origin"),
+    RELATION("relation"),
+    TYPE("type"),
+    INSERT("insert"),
+    UPDATE("update"),
+    DELETE("delete"),
+    TRUNCATE("truncate"),
+    MESSAGE("message"),
+
+    /* the two-phase commit messages (protocol version 3+), consumed by the stream */
+    BEGIN_PREPARE("begin_prepare"),
+    PREPARE("prepare"),
+    COMMIT_PREPARED("commit_prepared"),
+    ROLLBACK_PREPARED("rollback_prepared");
+
+    private final String name;
+
+    MessageType(String name) {
+        this.name = name;
+    }
+
+    /* the same names are used as the "type" value of the HashMap based messages */
+    public String getName() {
+        return name;
+    }
+}
@@ -1,21 +1,43 @@
 package com.seizure.publisher.models;
 
-import java.util.HashMap;
+import com.seizure.publisher.codecs.BinaryCodecs;
+import com.seizure.publisher.codecs.ColumnCodecs;
 
 public class Relation {
     private int id;
     private String namespace;
     private String name;
+    private String fullName;
     private char replicaIdentity;
     private short numColumns;
-    private final HashMap<Integer, Column> columns = new HashMap<Integer, Column>();
+    private Column[] columns = new Column[0];
 
-    public void putColumn(Integer position, Column column) {
-        this.columns.put(position, column);
+    public void putColumn(int position, Column column) {
+        if (position >= this.columns.length) {
+            Column[] columns = new Column[Math.max(position + 1, this.numColumns)];
+            System.arraycopy(this.columns, 0, columns, 0, this.columns.length);
+            this.columns = columns;
+        }
+        this.columns[position] = column;
     }
 
-    public Column getColumn(Integer position) {
-        return this.columns.get(position);
+    public Column getColumn(int position) {
+        return this.columns[position];
+    }
+
+    /* the columns in the order of the TupleData, the rows are decoded by walking this array */
+    public Column[] getColumns() {
+        return this.columns;
+    }
+
+    /*
+        Builds the decode plan once per relation message: every column gets its codec,
+        the interned name and the pre-encoded output key.
+     */
+    public void compile() {
+        for (Column column : this.columns) {
+            column.compile(ColumnCodecs.forText(column.getDataTypeId()), BinaryCodecs.forBinary(column.getDataTypeId()));
+        }
     }
 
     public int getId() {
@@ -32,6 +54,7 @@ public class Relation {
 
     public void setNamespace(String namespace) {
         this.namespace = namespace;
+        this.fullName = null;
     }
 
     public String getName() {
@@ -40,10 +63,14 @@ public class Relation {
 
     public void setName(String name) {
         this.name = name;
+        this.fullName = null;
     }
 
     public String getFullName() {
-        return (namespace != null) ? namespace + "." + name : "pg_catalog." + name;
+        if (fullName == null) {
+            fullName = (namespace != null) ? namespace + "." + name : "pg_catalog." + name;
+        }
+        return fullName;
     }
 
     public char getReplicaIdentity() {
@@ -60,5 +87,10 @@ public class Relation {
 
     public void setNumColumns(short numColumns) {
         this.numColumns = numColumns;
+        if (this.columns.length < numColumns) {
+            Column[] columns = new Column[numColumns];
+            System.arraycopy(this.columns, 0, columns, 0, this.columns.length);
+            this.columns = columns;
+        }
     }
 }
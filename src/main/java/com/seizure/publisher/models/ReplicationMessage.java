@@ -0,0 +1,202 @@
+package com.seizure.publisher.models;
+
+import com.seizure.publisher.codecs.ColumnCodecs;
+
+import java.nio.ByteBuffer;
+
+/*
+    The typed counterpart of the HashMap based messages produced by Decode.
+
+    The same instance is filled again for every message read from the replication
+    stream, the column values are not copied out of the original buffer (see TupleView).
+ */
+public class ReplicationMessage {
+    private MessageType type;
+    private Relation relation;
+
+    private int xid;
+    private long finalLSN;
+    private long commitLSN;
+    private long endLSN;
+    private long commitTime; /* microseconds since PostgreSQL epoch (2000-01-01) */
+
+    private char oldTupleType; /* 'K' - key, 'O' - old tuple, 0 - there is no old tuple */
+    private final TupleView oldTuple = new TupleView();
+    private final TupleView newTuple = new TupleView();
+
+    /* truncate: the truncated relations and the option bits (1 - CASCADE, 2 - RESTART IDENTITY) */
+    private Relation[] truncatedRelations = new Relation[4];
+    private int numTruncatedRelations;
+    private int truncateOptions;
+
+    /* logical decoding message (pg_logical_emit_message) */
+    private boolean transactional;
+    private long messageLSN;
+    private String prefix;
+    private ByteBuffer content;
+    private int contentOffset;
+    private int contentLength;
+
+    public MessageType getType() {
+        return type;
+    }
+
+    public void setType(MessageType type) {
+        this.type = type;
+    }
+
+    public Relation getRelation() {
+        return relation;
+    }
+
+    public void setRelation(Relation relation) {
+        this.relation = relation;
+    }
+
+    public int getXid() {
+        return xid;
+    }
+
+    public void setXid(int xid) {
+        this.xid = xid;
+    }
+
+    public long getFinalLSN() {
+        return finalLSN;
+    }
+
+    public void setFinalLSN(long finalLSN) {
+        this.finalLSN = finalLSN;
+    }
+
+    public long getCommitLSN() {
+        return commitLSN;
+    }
+
+    public void setCommitLSN(long commitLSN) {
+        this.commitLSN = commitLSN;
+    }
+
+    public long getEndLSN() {
+        return endLSN;
+    }
+
+    public void setEndLSN(long endLSN) {
+        this.endLSN = endLSN;
+    }
+
+    public long getCommitTime() {
+        return commitTime;
+    }
+
+    public void setCommitTime(long commitTime) {
+        this.commitTime = commitTime;
+    }
+
+    public char getOldTupleType() {
+        return oldTupleType;
+    }
+
+    public void setOldTupleType(char oldTupleType) {
+        this.oldTupleType = oldTupleType;
+    }
+
+    public boolean hasOldTuple() {
+        return oldTupleType != 0;
+    }
+
+    public TupleView getOldTuple() {
+        return oldTuple;
+    }
+
+    public TupleView getNewTuple() {
+        return newTuple;
+    }
+
+    public void resetTruncatedRelations(int numRelations) {
+        if (this.truncatedRelations.length < numRelations) {
+            this.truncatedRelations = new Relation[Math.max(numRelations, this.truncatedRelations.length * 2)];
+        }
+        this.numTruncatedRelations = numRelations;
+    }
+
+    public void setTruncatedRelation(int index, Relation relation) {
+        this.truncatedRelations[index] = relation;
+    }
+
+    public Relation getTruncatedRelation(int index) {
+        return truncatedRelations[index];
+    }
+
+    public int getNumTruncatedRelations() {
+        return numTruncatedRelations;
+    }
+
+    public int getTruncateOptions() {
+        return truncateOptions;
+    }
+
+    public void setTruncateOptions(int truncateOptions) {
+        this.truncateOptions = truncateOptions;
+    }
+
+    public boolean isCascade() {
+        return (truncateOptions & 1) != 0;
+    }
+
+    public boolean isRestartIdentity() {
+        return (truncateOptions & 2) != 0;
+    }
+
+    public boolean isTransactional() {
+        return transactional;
+    }
+
+    public void setTransactional(boolean transactional) {
+        this.transactional = transactional;
+    }
+
+    public long getMessageLSN() {
+        return messageLSN;
+    }
+
+    public void setMessageLSN(long messageLSN) {
+        this.messageLSN = messageLSN;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public void setContent(ByteBuffer content, int offset, int length) {
+        this.content = content;
+        this.contentOffset = offset;
+        this.contentLength = length;
+    }
+
+    public ByteBuffer getContent() {
+        return content;
+    }
+
+    public int getContentOffset() {
+        return contentOffset;
+    }
+
+    public int getContentLength() {
+        return contentLength;
+    }
+
+    /* the content of the message as UTF-8 text, valid until the next message is read */
+    public String getContentString() {
+        return ColumnCodecs.readString(this.content, this.contentOffset, this.contentLength);
+    }
+
+    /* the tuple carrying the row data - the new one for insert and update, the key or old one for delete */
+    public TupleView getTuple() {
+        return (type == MessageType.DELETE) ? oldTuple : newTuple;
+    }
+}
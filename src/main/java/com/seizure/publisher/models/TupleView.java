@@ -0,0 +1,112 @@
+package com.seizure.publisher.models;
+
+import com.seizure.publisher.codecs.ColumnCodecs;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+    A reusable view over the TupleData part of a pgoutput message.
+
+    Nothing is copied: for every column only the kind of the value and its
+    offset and length inside the original buffer are remembered, so the view
+    is valid only until the next message is read from the replication stream.
+ */
+public class TupleView {
+    private static final int INITIAL_CAPACITY = 32;
+
+    private ByteBuffer buffer;
+    private int numColumns;
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+    private int[] offsets = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+
+    /* the columns resolved from outside of the message (see ToastCache), null - the value is in the buffer */
+    private ByteBuffer[] buffers = new ByteBuffer[INITIAL_CAPACITY];
+    private boolean resolved;
+
+    public void reset(ByteBuffer buffer, int numColumns) {
+        this.buffer = buffer;
+        this.numColumns = numColumns;
+        if (this.kinds.length < numColumns) {
+            int capacity = Math.max(numColumns, this.kinds.length * 2);
+            this.kinds = new byte[capacity];
+            this.offsets = new int[capacity];
+            this.lengths = new int[capacity];
+            this.buffers = new ByteBuffer[capacity];
+            this.resolved = false;
+        }
+        if (this.resolved) {
+            Arrays.fill(this.buffers, null);
+            this.resolved = false;
+        }
+    }
+
+    public void clear() {
+        this.buffer = null;
+        this.numColumns = 0;
+        if (this.resolved) {
+            Arrays.fill(this.buffers, null);
+            this.resolved = false;
+        }
+    }
+
+    public void setColumn(int index, byte kind, int offset, int length) {
+        this.kinds[index] = kind;
+        this.offsets[index] = offset;
+        this.lengths[index] = length;
+    }
+
+    /* replaces the value of the column by the one kept in the other buffer */
+    public void resolveColumn(int index, byte kind, ByteBuffer buffer, int offset, int length) {
+        this.kinds[index] = kind;
+        this.buffers[index] = buffer;
+        this.offsets[index] = offset;
+        this.lengths[index] = length;
+        this.resolved = true;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /* the buffer holding the value of the column, the message buffer unless the column was resolved */
+    public ByteBuffer getBuffer(int index) {
+        ByteBuffer columnBuffer = this.buffers[index];
+        return (columnBuffer == null) ? this.buffer : columnBuffer;
+    }
+
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    /* 'n' - NULL value, 'u' - unchanged TOASTed value, 't' - text formatted value, 'b' - binary formatted value */
+    public char getKind(int index) {
+        return (char) this.kinds[index];
+    }
+
+    public boolean isNull(int index) {
+        return this.kinds[index] == 'n';
+    }
+
+    public boolean isUnchangedToast(int index) {
+        return this.kinds[index] == 'u';
+    }
+
+    public int getOffset(int index) {
+        return this.offsets[index];
+    }
+
+    public int getLength(int index) {
+        return this.lengths[index];
+    }
+
+    public String getString(int index) {
+        return ColumnCodecs.readString(this.getBuffer(index), this.offsets[index], this.lengths[index]);
+    }
+
+    /* parses the text formatted integer value without creating the intermediate String */
+    public long getLong(int index) {
+        return ColumnCodecs.parseLong(this.getBuffer(index), this.offsets[index], this.lengths[index]);
+    }
+}
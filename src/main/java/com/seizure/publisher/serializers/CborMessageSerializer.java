@@ -0,0 +1,20 @@
+package com.seizure.publisher.serializers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+/* RFC 8949 CBOR */
+public class CborMessageSerializer extends JacksonMessageSerializer {
+    public static final String OUTPUT_FORMAT = "application/cbor";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper(new CBORFactory());
+
+    public CborMessageSerializer() {
+        super(objectMapper, true);
+    }
+
+    @Override
+    public String getOutputFormat() {
+        return OUTPUT_FORMAT;
+    }
+}
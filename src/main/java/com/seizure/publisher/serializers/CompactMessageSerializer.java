@@ -0,0 +1,311 @@
+package com.seizure.publisher.serializers;
+
+import com.seizure.publisher.codecs.BinaryCodecs;
+import com.seizure.publisher.codecs.ColumnCodec;
+import com.seizure.publisher.codecs.ColumnCodecs;
+import com.seizure.publisher.models.Column;
+import com.seizure.publisher.models.MessageType;
+import com.seizure.publisher.models.Relation;
+import com.seizure.publisher.models.ReplicationMessage;
+import com.seizure.publisher.models.TupleView;
+import com.seizure.subscriber.models.GeneratedRecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+    The length-prefixed binary record holding only the fields read by the subscriber.
+    The column values of the typed mode are copied as they came from pgoutput and are
+    converted by the same codecs as the other formats when the record is read back.
+
+    (String) type
+    (String) relation name, null when the message has no relation
+    (Int16) number of the truncated relations, -1 - not a truncate; (String) every relation name
+    (Int16) number of the columns, -1 - no tuple; every column: (String) name, (Byte) tag, the value:
+        'n' - NULL, 'u' - unchanged TOASTed value, no value
+        't', 'b' - text or binary formatted pgoutput value: (VarInt) type OID, (VarInt) length, the bytes
+        'l' - (Int64), 'd' - (Float64), 'z' - (Int8) 1 or 0, 's' - (VarInt) length, UTF-8 bytes,
+        the values of the HashMap based messages
+    the old key or tuple of the update, the same as the tuple, (Int16) -1 - there is none
+
+    (String) is (Int16) length and UTF-8 bytes, the length -1 is null. (VarInt) is the unsigned
+    integer by 7 bits per byte, the lowest first, the high bit is set on all bytes but the last.
+ */
+public class CompactMessageSerializer implements MessageSerializer {
+    public static final String OUTPUT_FORMAT = "application/x-seizure-compact";
+
+    private byte[] output = new byte[1024];
+    private int position;
+
+    @Override
+    public String getOutputFormat() {
+        return OUTPUT_FORMAT;
+    }
+
+    @Override
+    public byte[] serialize(ReplicationMessage message) throws IOException {
+        this.position = 0;
+        this.writeString(message.getType().getName());
+
+        Relation relation = message.getRelation();
+        boolean hasTuple = relation != null && message.getType() != MessageType.TRUNCATE
+                && message.getType() != MessageType.MESSAGE;
+        this.writeString(hasTuple ? relation.getFullName() : null);
+
+        if (message.getType() == MessageType.TRUNCATE) {
+            this.writeShort(message.getNumTruncatedRelations());
+            for (int i = 0; i < message.getNumTruncatedRelations(); i++) {
+                this.writeString(message.getTruncatedRelation(i).getFullName());
+            }
+        } else {
+            this.writeShort(-1);
+        }
+
+        if (hasTuple == false) {
+            this.writeShort(-1);
+            this.writeShort(-1);
+            return Arrays.copyOf(this.output, this.position);
+        }
+
+        this.writeTuple(relation, message.getTuple());
+        if (message.getType() == MessageType.UPDATE && message.hasOldTuple()) {
+            this.writeTuple(relation, message.getOldTuple());
+        } else {
+            this.writeShort(-1);
+        }
+        return Arrays.copyOf(this.output, this.position);
+    }
+
+    private void writeTuple(Relation relation, TupleView tuple) {
+        Column[] plan = relation.getColumns();
+        this.writeShort(tuple.getNumColumns());
+        for (int i = 0; i < tuple.getNumColumns(); i++) {
+            Column column = plan[i];
+            this.writeBytes(column.getEncodedName().asUnquotedUTF8());
+
+            char kind = tuple.getKind(i);
+            this.writeByte(kind);
+            if (kind == 't' || kind == 'b') {
+                int length = tuple.getLength(i);
+                this.writeVarInt(column.getDataTypeId());
+                this.writeVarInt(length);
+                this.ensureCapacity(length);
+                ByteBuffer buffer = tuple.getBuffer(i);
+                int offset = tuple.getOffset(i);
+                if (buffer.hasArray()) {
+                    System.arraycopy(buffer.array(), buffer.arrayOffset() + offset, this.output, this.position, length);
+                } else {
+                    for (int j = 0; j < length; j++) {
+                        this.output[this.position + j] = buffer.get(offset + j);
+                    }
+                }
+                this.position += length;
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] serialize(Map<String, Object> message) throws IOException {
+        this.position = 0;
+        this.writeString((String) message.get("type"));
+
+        Object tupleData = message.get("tupleData");
+        boolean hasTuple = tupleData instanceof Map;
+        this.writeString(hasTuple ? (String) message.get("relationName") : null);
+
+        Object relationNames = message.get("relationNames");
+        if (relationNames instanceof List) {
+            List<Object> names = (List<Object>) relationNames;
+            this.writeShort(names.size());
+            for (Object name : names) {
+                this.writeString((String) name);
+            }
+        } else {
+            this.writeShort(-1);
+        }
+
+        if (hasTuple == false) {
+            this.writeShort(-1);
+            this.writeShort(-1);
+            return Arrays.copyOf(this.output, this.position);
+        }
+
+        this.writeColumns((Map<String, Object>) tupleData);
+        Object oldTupleData = message.get("oldTupleData");
+        if (oldTupleData instanceof Map) {
+            this.writeColumns((Map<String, Object>) oldTupleData);
+        } else {
+            this.writeShort(-1);
+        }
+        return Arrays.copyOf(this.output, this.position);
+    }
+
+    private void writeColumns(Map<String, Object> columns) {
+        this.writeShort(columns.size());
+        for (Map.Entry<String, Object> column : columns.entrySet()) {
+            this.writeString(column.getKey());
+            this.writeValue(column.getValue());
+        }
+    }
+
+    @Override
+    public GeneratedRecord deserialize(byte[] payload) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        GeneratedRecord record = new GeneratedRecord();
+        record.setType(readString(buffer));
+        record.setRelationName(readString(buffer));
+
+        int numRelationNames = buffer.getShort();
+        if (numRelationNames >= 0) {
+            List<String> relationNames = new ArrayList<>(numRelationNames);
+            for (int i = 0; i < numRelationNames; i++) {
+                relationNames.add(readString(buffer));
+            }
+            record.setRelationNames(relationNames);
+        }
+
+        record.setTupleData(readColumns(buffer));
+        record.setOldTupleData(readColumns(buffer));
+        return record;
+    }
+
+    /* null - there is no tuple */
+    private static HashMap<String, Object> readColumns(ByteBuffer buffer) throws IOException {
+        int numColumns = buffer.getShort();
+        if (numColumns < 0) {
+            return null;
+        }
+        HashMap<String, Object> tupleData = new HashMap<>();
+        for (int i = 0; i < numColumns; i++) {
+            String name = readString(buffer);
+            tupleData.put(name, readValue(buffer));
+        }
+        return tupleData;
+    }
+
+    private static Object readValue(ByteBuffer buffer) throws IOException {
+        char tag = (char) buffer.get();
+        switch (tag) {
+            case 'n':
+                return null;
+            case 'u':
+                return "UTOAST";
+            case 't':
+            case 'b':
+                int dataTypeId = readVarInt(buffer);
+                int length = readVarInt(buffer);
+                ColumnCodec codec = (tag == 'b') ? BinaryCodecs.forBinary(dataTypeId) : ColumnCodecs.forText(dataTypeId);
+                Object value = codec.decode(buffer, buffer.position(), length);
+                buffer.position(buffer.position() + length);
+                return value;
+            case 'l':
+                return buffer.getLong();
+            case 'd':
+                return buffer.getDouble();
+            case 'z':
+                return buffer.get() != 0;
+            case 's':
+                int size = readVarInt(buffer);
+                String string = ColumnCodecs.readString(buffer, buffer.position(), size);
+                buffer.position(buffer.position() + size);
+                return string;
+            default:
+                throw new IOException("the unknown value tag: " + tag);
+        }
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        String value = ColumnCodecs.readString(buffer, buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private void writeValue(Object value) {
+        if (value == null) {
+            this.writeByte('n');
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short) {
+            this.writeByte('l');
+            this.ensureCapacity(8);
+            ByteBuffer.wrap(this.output, this.position, 8).putLong(((Number) value).longValue());
+            this.position += 8;
+        } else if (value instanceof Double || value instanceof Float) {
+            this.writeByte('d');
+            this.ensureCapacity(8);
+            ByteBuffer.wrap(this.output, this.position, 8).putDouble(((Number) value).doubleValue());
+            this.position += 8;
+        } else if (value instanceof Boolean) {
+            this.writeByte('z');
+            this.writeByte((Boolean) value ? 1 : 0);
+        } else {
+            byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+            this.writeByte('s');
+            this.writeVarInt(bytes.length);
+            this.ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, this.output, this.position, bytes.length);
+            this.position += bytes.length;
+        }
+    }
+
+    private void writeString(String value) {
+        if (value == null) {
+            this.writeShort(-1);
+        } else {
+            this.writeBytes(value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void writeBytes(byte[] bytes) {
+        this.writeShort(bytes.length);
+        this.ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, this.output, this.position, bytes.length);
+        this.position += bytes.length;
+    }
+
+    private void writeByte(int value) {
+        this.ensureCapacity(1);
+        this.output[this.position++] = (byte) value;
+    }
+
+    private void writeShort(int value) {
+        this.ensureCapacity(2);
+        this.output[this.position++] = (byte) (value >>> 8);
+        this.output[this.position++] = (byte) value;
+    }
+
+    private void writeVarInt(int value) {
+        this.ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            this.output[this.position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        this.output[this.position++] = (byte) value;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (this.position + extra > this.output.length) {
+            this.output = Arrays.copyOf(this.output, Math.max(this.position + extra, this.output.length * 2));
+        }
+    }
+}
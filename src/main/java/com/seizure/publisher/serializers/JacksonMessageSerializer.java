@@ -0,0 +1,122 @@
+package com.seizure.publisher.serializers;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.seizure.publisher.models.Column;
+import com.seizure.publisher.models.MessageType;
+import com.seizure.publisher.models.Relation;
+import com.seizure.publisher.models.ReplicationMessage;
+import com.seizure.publisher.models.TupleView;
+import com.seizure.subscriber.models.GeneratedRecord;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/*
+    The serializers of the Jackson data formats. The typed messages are written
+    straight from the replication buffer, every message goes into the same
+    output buffer, the HashMap based messages are written by the shared mapper.
+ */
+public abstract class JacksonMessageSerializer implements MessageSerializer {
+
+    private final ObjectMapper objectMapper;
+    private final boolean reuseGenerator;
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream(1024);
+    private JsonGenerator generator;
+
+    /* the generator is reused unless the format keeps a state between the root values (Smile back references) */
+    protected JacksonMessageSerializer(ObjectMapper objectMapper, boolean reuseGenerator) {
+        this.objectMapper = objectMapper;
+        this.reuseGenerator = reuseGenerator;
+    }
+
+    @Override
+    public byte[] serialize(ReplicationMessage message) throws IOException {
+        JsonGenerator generator = this.getGenerator();
+        generator.writeStartObject();
+        generator.writeStringField("type", message.getType().getName());
+        if (message.getType() == MessageType.TRUNCATE) {
+            generator.writeArrayFieldStart("relationNames");
+            for (int i = 0; i < message.getNumTruncatedRelations(); i++) {
+                generator.writeString(message.getTruncatedRelation(i).getFullName());
+            }
+            generator.writeEndArray();
+            generator.writeBooleanField("cascade", message.isCascade());
+            generator.writeBooleanField("restartIdentity", message.isRestartIdentity());
+        } else if (message.getType() == MessageType.MESSAGE) {
+            generator.writeBooleanField("transactional", message.isTransactional());
+            generator.writeStringField("prefix", message.getPrefix());
+            generator.writeStringField("content", message.getContentString());
+        } else if (message.getRelation() != null) {
+            generator.writeStringField("relationName", message.getRelation().getFullName());
+            generator.writeFieldName("tupleData");
+            this.writeTuple(generator, message.getRelation(), message.getTuple());
+            if (message.getType() == MessageType.UPDATE && message.hasOldTuple()) {
+                generator.writeFieldName("oldTupleData");
+                this.writeTuple(generator, message.getRelation(), message.getOldTuple());
+            }
+        }
+        generator.writeEndObject();
+        return this.finish(generator);
+    }
+
+    @Override
+    public byte[] serialize(Map<String, Object> message) throws IOException {
+        JsonGenerator generator = this.getGenerator();
+        this.objectMapper.writeValue(generator, message);
+        return this.finish(generator);
+    }
+
+    @Override
+    public GeneratedRecord deserialize(byte[] payload) throws IOException {
+        return this.objectMapper.readValue(payload, GeneratedRecord.class);
+    }
+
+    private void writeTuple(JsonGenerator generator, Relation relation, TupleView tuple) throws IOException {
+        generator.writeStartObject();
+        Column[] plan = relation.getColumns();
+        for (int i = 0; i < tuple.getNumColumns(); i++) {
+            Column column = plan[i];
+            generator.writeFieldName(column.getEncodedName());
+
+            switch (tuple.getKind(i)) {
+                case 'n': /* NULL value */
+                    generator.writeNull();
+                    break;
+                case 'u': /* unchanged TOASTed value */
+                    generator.writeString("UTOAST");
+                    break;
+                default:
+                    column.getCodec(tuple.getKind(i)).write(generator, tuple.getBuffer(i), tuple.getOffset(i), tuple.getLength(i));
+                    break;
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private JsonGenerator getGenerator() throws IOException {
+        if (this.generator == null) {
+            this.generator = this.objectMapper.getFactory().createGenerator(this.output, JsonEncoding.UTF8);
+            if (JsonFactory.FORMAT_NAME_JSON.equals(this.objectMapper.getFactory().getFormatName())) {
+                this.generator.setRootValueSeparator(null);
+            }
+        }
+        return this.generator;
+    }
+
+    private byte[] finish(JsonGenerator generator) throws IOException {
+        if (this.reuseGenerator) {
+            generator.flush();
+        } else {
+            generator.close();
+            this.generator = null;
+        }
+        byte[] payload = this.output.toByteArray();
+        this.output.reset();
+        return payload;
+    }
+}
@@ -0,0 +1,19 @@
+package com.seizure.publisher.serializers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/* UTF-8 JSON, the default output format */
+public class JsonMessageSerializer extends JacksonMessageSerializer {
+    public static final String OUTPUT_FORMAT = "application/json";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    public JsonMessageSerializer() {
+        super(objectMapper, true);
+    }
+
+    @Override
+    public String getOutputFormat() {
+        return OUTPUT_FORMAT;
+    }
+}
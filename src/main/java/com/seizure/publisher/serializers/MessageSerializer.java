@@ -0,0 +1,29 @@
+package com.seizure.publisher.serializers;
+
+import com.seizure.publisher.models.ReplicationMessage;
+import com.seizure.subscriber.models.GeneratedRecord;
+
+import java.io.IOException;
+import java.util.Map;
+
+/*
+    Converts the decoded replication messages into the payload passed to the subscriber
+    and back. The implementations are found by ServiceLoader (META-INF/services) and
+    chosen by the output format, see MessageSerializers.
+
+    An instance keeps its buffers between the calls, so it is used by one thread only.
+ */
+public interface MessageSerializer {
+
+    /* the MIME type of the payload, the value of the outputFormat argument */
+    String getOutputFormat();
+
+    /* the message of the typed mode, the values are taken straight from the replication buffer */
+    byte[] serialize(ReplicationMessage message) throws IOException;
+
+    /* the message of the simple and full modes */
+    byte[] serialize(Map<String, Object> message) throws IOException;
+
+    /* the fields used by the subscriber */
+    GeneratedRecord deserialize(byte[] payload) throws IOException;
+}
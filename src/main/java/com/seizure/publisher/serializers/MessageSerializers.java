@@ -0,0 +1,38 @@
+package com.seizure.publisher.serializers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/* the serializers registered in META-INF/services, keyed by their output format */
+public final class MessageSerializers {
+    private static final Logger logger = LogManager.getLogger(MessageSerializers.class);
+
+    private static final Map<String, ServiceLoader.Provider<MessageSerializer>> providers = load();
+
+    private MessageSerializers() {
+    }
+
+    /* the new serializer of the output format (case insensitive) */
+    public static MessageSerializer create(String outputFormat) throws IllegalArgumentException {
+        ServiceLoader.Provider<MessageSerializer> provider = providers.get(outputFormat.trim().toLowerCase());
+        if (provider == null) {
+            throw new IllegalArgumentException("Invalid output format: " + outputFormat + ", the known ones: " + providers.keySet());
+        }
+        return provider.get();
+    }
+
+    private static Map<String, ServiceLoader.Provider<MessageSerializer>> load() {
+        Map<String, ServiceLoader.Provider<MessageSerializer>> result = new HashMap<>();
+        ServiceLoader.load(MessageSerializer.class, MessageSerializers.class.getClassLoader()).stream().forEach(provider -> {
+            String outputFormat = provider.get().getOutputFormat().toLowerCase();
+            if (result.putIfAbsent(outputFormat, provider) != null) {
+                logger.warn("the output format: {} is registered already, {} is ignored", outputFormat, provider.type().getName());
+            }
+        });
+        return result;
+    }
+}
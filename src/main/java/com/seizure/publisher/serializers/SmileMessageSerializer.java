@@ -0,0 +1,20 @@
+package com.seizure.publisher.serializers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/* the binary JSON of Jackson, every payload starts with its own header */
+public class SmileMessageSerializer extends JacksonMessageSerializer {
+    public static final String OUTPUT_FORMAT = "application/x-jackson-smile";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper(new SmileFactory());
+
+    public SmileMessageSerializer() {
+        super(objectMapper, false);
+    }
+
+    @Override
+    public String getOutputFormat() {
+        return OUTPUT_FORMAT;
+    }
+}
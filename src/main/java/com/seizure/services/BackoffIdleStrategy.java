@@ -0,0 +1,57 @@
+package com.seizure.services;
+
+import java.util.concurrent.locks.LockSupport;
+
+/*
+    Backs off gradually when there is nothing to do: it busy spins first, then yields
+    the processor, then parks the thread for the time growing twice on every empty poll
+    up to maxParkNanos. A trickle of changes is picked up within microseconds while the
+    loop is still spinning, an idle database costs one poll per maxParkNanos.
+ */
+public class BackoffIdleStrategy implements IdleStrategy {
+    private final int maxSpins;
+    private final int maxYields;
+    private final long minParkNanos;
+    private final long maxParkNanos;
+
+    private int spins;
+    private int yields;
+    private long parkNanos;
+
+    public BackoffIdleStrategy(int maxSpins, int maxYields, long minParkNanos, long maxParkNanos) {
+        if (minParkNanos <= 0 || maxParkNanos < minParkNanos) {
+            throw new IllegalArgumentException("the park time must be positive and the maximum must not be less than the minimum");
+        }
+        this.maxSpins = maxSpins;
+        this.maxYields = maxYields;
+        this.minParkNanos = minParkNanos;
+        this.maxParkNanos = maxParkNanos;
+        this.reset();
+    }
+
+    @Override
+    public void idle() throws InterruptedException {
+        if (this.spins < this.maxSpins) {
+            this.spins++;
+            Thread.onSpinWait();
+        } else if (this.yields < this.maxYields) {
+            this.yields++;
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(this.parkNanos);
+            this.parkNanos = Math.min(this.parkNanos * 2, this.maxParkNanos);
+        }
+
+        /* parkNanos() does not throw, the interruption is reported the usual way */
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    @Override
+    public void reset() {
+        this.spins = 0;
+        this.yields = 0;
+        this.parkNanos = this.minParkNanos;
+    }
+}
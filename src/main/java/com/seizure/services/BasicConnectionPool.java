@@ -14,7 +14,7 @@ public class BasicConnectionPool implements ConnectionPool {
     private final List<Connection> usedConnections = new ArrayList<>();
 
     private static final int INITIAL_POOL_SIZE = 10;
-    private static final int MAX_POOL_SIZE = 20;
+    public static final int MAX_POOL_SIZE = 20;
     private static final int MAX_TIMEOUT = 5;
 
     public static BasicConnectionPool create(String url, String user, String password) throws SQLException {
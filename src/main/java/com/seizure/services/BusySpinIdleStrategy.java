@@ -0,0 +1,17 @@
+package com.seizure.services;
+
+/* keeps the processor busy, the lowest latency for a dedicated core */
+public class BusySpinIdleStrategy implements IdleStrategy {
+
+    @Override
+    public void idle() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        Thread.onSpinWait();
+    }
+
+    @Override
+    public void reset() {
+    }
+}
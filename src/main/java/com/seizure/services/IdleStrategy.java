@@ -0,0 +1,12 @@
+package com.seizure.services;
+
+/*
+    What a polling loop does when there was nothing to do.
+    idle() is called after every empty poll, reset() as soon as there was some work.
+ */
+public interface IdleStrategy {
+
+    void idle() throws InterruptedException;
+
+    void reset();
+}
@@ -0,0 +1,67 @@
+package com.seizure.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Tracks which of the captured changes are committed by the subscriber, so the
+    replication slot is confirmed only up to the changes that cannot be lost anymore.
+
+    The capture thread counts the enqueued records, the subscriber acknowledges the
+    batches in the order they were taken from the queue. While nothing is pending the
+    last received LSN can be confirmed (the rest of the messages needs no subscriber),
+    otherwise the highest LSN of the contiguous committed batches. After a failed
+    batch the watermark stays where it was, the server sends the changes again after
+    the restart.
+ */
+public class LsnTracker {
+    private static final Logger logger = LogManager.getLogger(LsnTracker.class);
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong acknowledged = new AtomicLong();
+    private volatile long committedLSN;
+    private volatile boolean stalled;
+
+    /* called by the capture thread before the records are added to the queue */
+    public void enqueued(int count) {
+        this.enqueued.addAndGet(count);
+    }
+
+    /* called by the subscriber for every committed batch in the queue order */
+    public void acknowledge(long lsn, int count) {
+        if (this.stalled) {
+            return;
+        }
+        if (lsn > this.committedLSN) {
+            this.committedLSN = lsn;
+        }
+        this.acknowledged.addAndGet(count);
+    }
+
+    /* called by the subscriber when the batch could not be committed */
+    public void stall() {
+        if (this.stalled == false) {
+            this.stalled = true;
+            logger.error("the batch is not committed, the confirmed LSN stays at: {} until the restart", this.committedLSN);
+        }
+    }
+
+    public long getPendingCount() {
+        return this.enqueued.get() - this.acknowledged.get();
+    }
+
+    /* the LSN that can be confirmed as flushed, 0 - nothing yet */
+    public long getFlushableLSN(long lastReceiveLSN) {
+        if (this.stalled) {
+            return this.committedLSN;
+        }
+        /* the acknowledged count is read first: the LSN of the batch is set before its count */
+        long acknowledgedCount = this.acknowledged.get();
+        if (acknowledgedCount == this.enqueued.get()) {
+            return lastReceiveLSN;
+        }
+        return this.committedLSN;
+    }
+}
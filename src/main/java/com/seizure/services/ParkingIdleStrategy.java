@@ -0,0 +1,27 @@
+package com.seizure.services;
+
+import java.util.concurrent.locks.LockSupport;
+
+/* parks the thread for the same time after every empty poll */
+public class ParkingIdleStrategy implements IdleStrategy {
+    private final long parkNanos;
+
+    public ParkingIdleStrategy(long parkNanos) {
+        if (parkNanos <= 0) {
+            throw new IllegalArgumentException("the park time must be positive");
+        }
+        this.parkNanos = parkNanos;
+    }
+
+    @Override
+    public void idle() throws InterruptedException {
+        LockSupport.parkNanos(this.parkNanos);
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    @Override
+    public void reset() {
+    }
+}
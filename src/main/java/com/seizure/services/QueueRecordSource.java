@@ -0,0 +1,36 @@
+package com.seizure.services;
+
+import com.seizure.models.ChangeRecord;
+
+import java.util.List;
+
+/* the in-memory queue, the committed records advance the LSN confirmed to the server */
+public class QueueRecordSource implements RecordSource {
+    private final RingBuffer<ChangeRecord> queue;
+    private final LsnTracker lsnTracker;
+
+    public QueueRecordSource(RingBuffer<ChangeRecord> queue, LsnTracker lsnTracker) {
+        this.queue = queue;
+        this.lsnTracker = lsnTracker;
+    }
+
+    @Override
+    public ChangeRecord poll() {
+        return this.queue.poll();
+    }
+
+    @Override
+    public int drain(List<ChangeRecord> records, int max) {
+        return this.queue.drain(records, max);
+    }
+
+    @Override
+    public void acknowledge(ChangeRecord last, int count) {
+        this.lsnTracker.acknowledge(last.getLsn(), count);
+    }
+
+    @Override
+    public void stall() {
+        this.lsnTracker.stall();
+    }
+}
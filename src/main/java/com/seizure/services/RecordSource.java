@@ -0,0 +1,32 @@
+package com.seizure.services;
+
+import com.seizure.models.ChangeRecord;
+
+import java.util.List;
+
+/*
+    Where the subscriber takes the captured changes from: the in-memory queue or the spool.
+    The records are acknowledged in the order they were taken.
+ */
+public interface RecordSource {
+
+    /* null - nothing is pending */
+    ChangeRecord poll();
+
+    /* moves up to max pending records to the list, returns their number */
+    default int drain(List<ChangeRecord> records, int max) {
+        int count = 0;
+        ChangeRecord record;
+        while (count < max && (record = this.poll()) != null) {
+            records.add(record);
+            count++;
+        }
+        return count;
+    }
+
+    /* the records up to the last one (count of them) are committed by the subscriber */
+    void acknowledge(ChangeRecord last, int count);
+
+    /* the batch could not be committed, nothing after it may be acknowledged */
+    void stall();
+}
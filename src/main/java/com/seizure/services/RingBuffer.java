@@ -0,0 +1,109 @@
+package com.seizure.services;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+    The bounded hand-off between one producer and any number of consumers.
+
+    The slots are allocated once, the producer publishes an element by writing its
+    slot and then advancing the volatile tail, the consumers claim the elements by
+    advancing the head with CAS, then read and clear their slots, so the consumed
+    records are not kept reachable by the buffer. Every slot has a sequence: the
+    position it is free to be written for, the consumer advances it by the capacity when
+    the slot is cleared, so the producer does not overwrite the slot which is claimed
+    but still being read. offer() fails instead of growing when the slot is not free
+    (all slots are taken), so a slow consumer stops the producer (see ChangeDataCapture)
+    instead of filling the heap.
+ */
+public class RingBuffer<E> {
+    private final Object[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+
+    private final AtomicLong head = new AtomicLong();
+    private volatile long tail;
+
+    /* the capacity is rounded up to the power of two */
+    public RingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("the capacity of the ring buffer must be in 1 .. 2^30");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.sequences.set(i, i);
+        }
+        this.mask = size - 1;
+    }
+
+    /* called by the producer thread only, false - the buffer is full */
+    public boolean offer(E element) {
+        long currentTail = this.tail;
+        int index = (int) currentTail & this.mask;
+        if (this.sequences.get(index) != currentTail) {
+            return false;
+        }
+        this.slots[index] = element;
+        this.tail = currentTail + 1;
+        return true;
+    }
+
+    /* null - the buffer is empty */
+    public E poll() {
+        while (true) {
+            long currentHead = this.head.get();
+            if (currentHead >= this.tail) {
+                return null;
+            }
+            if (this.head.compareAndSet(currentHead, currentHead + 1)) {
+                return this.take(currentHead);
+            }
+        }
+    }
+
+    /* moves up to max elements to the list by one claim, returns their number */
+    public int drain(List<? super E> elements, int max) {
+        while (true) {
+            long currentHead = this.head.get();
+            int count = (int) Math.min(this.tail - currentHead, max);
+            if (count <= 0) {
+                return 0;
+            }
+            if (this.head.compareAndSet(currentHead, currentHead + count)) {
+                for (int i = 0; i < count; i++) {
+                    elements.add(this.take(currentHead + i));
+                }
+                return count;
+            }
+        }
+    }
+
+    /* the claimed slot is read and cleared, then it is free for the element of the next round */
+    @SuppressWarnings("unchecked")
+    private E take(long position) {
+        int index = (int) position & this.mask;
+        E element = (E) this.slots[index];
+        this.slots[index] = null;
+        this.sequences.set(index, position + this.slots.length);
+        return element;
+    }
+
+    public boolean isEmpty() {
+        return this.head.get() >= this.tail;
+    }
+
+    public int size() {
+        long currentHead = this.head.get();
+        return (int) (this.tail - currentHead);
+    }
+
+    public int capacity() {
+        return this.slots.length;
+    }
+}
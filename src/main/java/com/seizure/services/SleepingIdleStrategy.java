@@ -0,0 +1,19 @@
+package com.seizure.services;
+
+/* sleeps the same time after every empty poll */
+public class SleepingIdleStrategy implements IdleStrategy {
+    private final long sleepMillis;
+
+    public SleepingIdleStrategy(long sleepMillis) {
+        this.sleepMillis = sleepMillis;
+    }
+
+    @Override
+    public void idle() throws InterruptedException {
+        Thread.sleep(this.sleepMillis);
+    }
+
+    @Override
+    public void reset() {
+    }
+}
@@ -0,0 +1,414 @@
+package com.seizure.services;
+
+import com.seizure.models.ChangeRecord;
+import com.seizure.models.SpoolOptions;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/*
+    The append-only log of the captured changes on the local disk, between the capture
+    and the subscriber. The capture appends the records and forces them to the disk in
+    batches (by time or by size), the slot is confirmed as soon as they are there, so the
+    server can recycle the WAL while the subscriber is slow or down. The slot is kept over
+    the restarts (see Replication.initializeReplication), the server sends again the changes
+    after the last synced record; the records appended but not synced before a crash may
+    be spooled twice, the subscriber applies them again as the replayed changes. The subscriber tails
+    the log (see Reader) and commits its offset, the committed segments are deleted after
+    the retention time.
+
+    The log is a sequence of memory-mapped segment files, every one starts at the offset
+    where the previous one ends. The file is named by its offset and the LSN of its first
+    record: <offset>-<LSN>.spool, both are hexadecimal. The record:
+
+    (Int32) length of the rest of the record, 0 - nothing yet, -1 - the rest of the segment is unused
+    (Int64) LSN, (Int32) xid, (Int64) commit LSN, (Int64) commit time, (Int8) 1 - the commit record,
+    (Int32) key hash, (Int32) CRC-32C of the fields after the length and of the payload
+    the payload
+
+    The pages of the mapped segment reach the disk in any order, the length may be written
+    back before the rest of the record. After a restart the log ends at the first record whose
+    CRC does not match, so the torn record is not seen. The committed offset is kept in the file subscriber.offset; after a restart the
+    subscriber continues from it, the records it has applied after the last commit are applied
+    again, as they are without the spool.
+ */
+public class Spool implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(Spool.class);
+
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final String OFFSET_FILE = "subscriber.offset";
+    private static final int HEADER_SIZE = 4 + 8 + 4 + 8 + 8 + 1 + 4 + 4;
+    private static final int CRC_OFFSET = HEADER_SIZE - 4;
+    private static final int END_OF_SEGMENT = -1;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final long syncNanos;
+    private final long syncBytes;
+    private final long retentionMillis;
+
+    /* the segments by their offset, shared by the capture and the subscriber threads */
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+    /* the end of the appended records, written by the capture thread only */
+    private volatile long writeOffset;
+    /* the end of the records committed by the subscriber, written by the subscriber thread only */
+    private volatile long committedOffset;
+
+    /* the capture thread: the segment appended to and the records not forced to the disk yet */
+    private Segment head;
+    private final List<Segment> unsynced = new ArrayList<>();
+    private int unsyncedCount;
+    private long unsyncedBytes;
+    private long unsyncedLSN;
+    private long unsyncedSince;
+    private final CRC32C crc = new CRC32C();
+
+    private final Reader reader;
+
+    /* every publisher database has the spool of its own in the subdirectory by its name */
+    public Spool(SpoolOptions options, String name) throws IOException {
+        this.directory = Paths.get(options.getDirectory(), name);
+        this.segmentBytes = options.getSegmentBytes();
+        this.maxBytes = options.getMaxBytes();
+        this.syncNanos = TimeUnit.MILLISECONDS.toNanos(options.getSyncMillis());
+        this.syncBytes = options.getSyncBytes();
+        this.retentionMillis = options.getRetentionMillis();
+
+        Files.createDirectories(this.directory);
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(this.directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path path : paths) {
+                String fileName = path.getFileName().toString();
+                long baseOffset = Long.parseUnsignedLong(fileName.substring(0, 16), 16);
+                long firstLSN = Long.parseUnsignedLong(fileName.substring(17, 33), 16);
+                this.segments.put(baseOffset, new Segment(path, baseOffset, firstLSN, Files.size(path)));
+            }
+        }
+
+        long offset = this.readCommittedOffset();
+        if (this.segments.isEmpty()) {
+            this.writeOffset = offset;
+        } else {
+            if (offset < this.segments.firstKey()) {
+                offset = this.segments.firstKey();
+            }
+            this.head = this.findHead(offset);
+            this.writeOffset = this.head.baseOffset + this.head.findEnd();
+        }
+        if (offset > this.writeOffset) {
+            logger.warn("the committed offset: {} is beyond the end of the spool: {}, the subscriber continues from the end", offset, this.writeOffset);
+            offset = this.writeOffset;
+        }
+        this.committedOffset = offset;
+        this.reader = new Reader(offset);
+        this.cleanup();
+
+        logger.info("the spool: {}, segments: {}, pending bytes: {}", this.directory, this.segments.size(), this.writeOffset - this.committedOffset);
+    }
+
+    /* the CRC of the record at the position, without the length and the CRC itself */
+    private static int checksum(CRC32C crc, ByteBuffer buffer, int position, int length) {
+        ByteBuffer view = buffer.duplicate();
+        crc.reset();
+        view.limit(position + CRC_OFFSET).position(position + 4);
+        crc.update(view);
+        view.limit(position + 4 + length).position(position + HEADER_SIZE);
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    /*
+        The segment the appending continues in: the last one, or the one having the torn record,
+        the segments after it are deleted. The closed segment ends with the end mark or has no
+        room for it, the mark is forced to the disk with the records of the next segment.
+     */
+    private Segment findHead(long offset) throws IOException {
+        Segment head = this.segments.floorEntry(offset).getValue();
+        for (Segment segment : this.segments.tailMap(head.baseOffset).values()) {
+            head = segment;
+            if (segment.findEnd() + 4 <= segment.size && segment != this.segments.lastEntry().getValue()) {
+                for (Segment later : new ArrayList<>(this.segments.tailMap(segment.baseOffset, false).values())) {
+                    this.segments.remove(later.baseOffset);
+                    Files.deleteIfExists(later.path);
+                    logger.warn("the spool segment: {} follows the torn record, it is deleted", later.path.getFileName());
+                }
+                break;
+            }
+        }
+        return head;
+    }
+
+    /* the subscriber side of the spool */
+    public RecordSource getReader() {
+        return this.reader;
+    }
+
+    /* appends the record unless the records not committed by the subscriber take maxBytes already */
+    public boolean offer(ChangeRecord record) throws IOException {
+        if (this.writeOffset - this.committedOffset >= this.maxBytes) {
+            return false;
+        }
+        this.append(record);
+        return true;
+    }
+
+    private void append(ChangeRecord record) throws IOException {
+        byte[] data = record.getData();
+        int length = HEADER_SIZE - 4 + data.length;
+
+        int position = (this.head == null) ? 0 : (int) (this.writeOffset - this.head.baseOffset);
+        if (this.head == null || position + 4 + length > this.head.size) {
+            this.roll(record.getLsn(), 4 + length, position);
+            position = 0;
+        }
+
+        ByteBuffer buffer = this.head.writer;
+        buffer.putLong(position + 4, record.getLsn());
+        buffer.putInt(position + 12, record.getXid());
+        buffer.putLong(position + 16, record.getCommitLSN());
+        buffer.putLong(position + 24, record.getCommitTime());
+        buffer.put(position + 32, (byte) (record.isCommit() ? 1 : 0));
+        buffer.putInt(position + 33, record.getKeyHash());
+        buffer.position(position + HEADER_SIZE);
+        buffer.put(data);
+        buffer.putInt(position + CRC_OFFSET, checksum(this.crc, buffer, position, length));
+        buffer.putInt(position, length);
+        this.writeOffset = this.head.baseOffset + position + 4 + length;
+
+        if (this.unsyncedCount == 0) {
+            this.unsyncedSince = System.nanoTime();
+        }
+        if (this.unsynced.isEmpty() || this.unsynced.get(this.unsynced.size() - 1) != this.head) {
+            this.unsynced.add(this.head);
+        }
+        this.unsyncedCount++;
+        this.unsyncedBytes += 4 + length;
+        if (record.getLsn() > this.unsyncedLSN) {
+            this.unsyncedLSN = record.getLsn();
+        }
+    }
+
+    /* closes the segment appended to and starts the next one, the larger record gets a segment of its own size */
+    private void roll(long firstLSN, int recordSize, int position) throws IOException {
+        long baseOffset = this.writeOffset;
+        if (this.head != null) {
+            if (position + 4 <= this.head.size) {
+                this.head.writer.putInt(position, END_OF_SEGMENT);
+            }
+            baseOffset = this.head.baseOffset + this.head.size;
+        }
+
+        Path path = this.directory.resolve(String.format("%016x-%016x%s", baseOffset, firstLSN, SEGMENT_SUFFIX));
+        Segment segment = new Segment(path, baseOffset, firstLSN, Math.max(this.segmentBytes, recordSize + 4));
+        this.segments.put(baseOffset, segment);
+        if (this.head != null && this.unsynced.contains(this.head) == false) {
+            this.unsynced.add(this.head);
+        }
+        this.head = segment;
+        this.writeOffset = baseOffset;
+        logger.debug("the spool segment: {} is started", path.getFileName());
+    }
+
+    /* there are appended records waiting for syncMillis or more than syncBytes of them */
+    public boolean isSyncDue() {
+        return this.unsyncedCount > 0
+                && (this.unsyncedBytes >= this.syncBytes || System.nanoTime() - this.unsyncedSince >= this.syncNanos);
+    }
+
+    /* the highest LSN of the records not forced to the disk yet */
+    public long getUnsyncedLSN() {
+        return this.unsyncedLSN;
+    }
+
+    /* forces the appended records to the disk, returns the number of them */
+    public int sync() {
+        for (Segment segment : this.unsynced) {
+            segment.buffer.force();
+        }
+        this.unsynced.clear();
+
+        int count = this.unsyncedCount;
+        this.unsyncedCount = 0;
+        this.unsyncedBytes = 0;
+        this.unsyncedLSN = 0;
+        return count;
+    }
+
+    /* called by the subscriber thread */
+    private void commit(long offset) throws IOException {
+        this.committedOffset = offset;
+
+        Path temporary = this.directory.resolve(OFFSET_FILE + ".tmp");
+        Files.write(temporary, ByteBuffer.allocate(8).putLong(offset).array());
+        Files.move(temporary, this.directory.resolve(OFFSET_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        this.cleanup();
+    }
+
+    private long readCommittedOffset() throws IOException {
+        Path path = this.directory.resolve(OFFSET_FILE);
+        if (Files.exists(path) == false) {
+            return 0;
+        }
+        return ByteBuffer.wrap(Files.readAllBytes(path)).getLong();
+    }
+
+    /* deletes the segments committed by the subscriber retentionMillis ago */
+    private void cleanup() throws IOException {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Long, Segment> entry : this.segments.entrySet()) {
+            Segment segment = entry.getValue();
+            if (segment.baseOffset + segment.size > this.committedOffset) {
+                break;
+            }
+            if (segment.committedMillis == 0) {
+                segment.committedMillis = now;
+            }
+            if (now - segment.committedMillis < this.retentionMillis) {
+                break;
+            }
+            this.segments.remove(entry.getKey());
+            Files.deleteIfExists(segment.path);
+            logger.debug("the spool segment: {} is deleted, first LSN: {}", segment.path.getFileName(), segment.firstLSN);
+        }
+    }
+
+    /* called when the capture thread is stopped */
+    public void close() {
+        this.sync();
+        this.head = null;
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final long baseOffset;
+        private final long firstLSN;
+        private final int size;
+        private final MappedByteBuffer buffer;
+        /* the view of the capture thread */
+        private final ByteBuffer writer;
+        private volatile long committedMillis;
+
+        Segment(Path path, long baseOffset, long firstLSN, long size) throws IOException {
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(String.format("the spool segment: %s is too large: %d", path, size));
+            }
+            this.path = path;
+            this.baseOffset = baseOffset;
+            this.firstLSN = firstLSN;
+            this.size = (int) size;
+            /* the mapping stays valid after the channel is closed */
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+            this.writer = this.buffer.duplicate();
+        }
+
+        /* the position after the last whole record, the torn one and the rest after it are not read */
+        int findEnd() {
+            CRC32C crc = new CRC32C();
+            int position = 0;
+            while (position + 4 <= this.size) {
+                int length = this.buffer.getInt(position);
+                if (length == END_OF_SEGMENT) {
+                    return this.size;
+                }
+                if (length < HEADER_SIZE - 4 || position + 4 + length > this.size) {
+                    break;
+                }
+                if (this.buffer.getInt(position + CRC_OFFSET) != checksum(crc, this.buffer, position, length)) {
+                    logger.warn("the torn record of the spool segment: {} at: {}, the segment ends there", this.path.getFileName(), position);
+                    break;
+                }
+                position += 4 + length;
+            }
+            return position;
+        }
+    }
+
+    /*
+        Tails the spool from the committed offset. The records are taken and acknowledged
+        by the subscriber thread, the acknowledged offset is committed to the disk.
+     */
+    private class Reader implements RecordSource {
+        private long readOffset;
+        private Segment segment;
+        private ByteBuffer buffer;
+        private boolean stalled;
+
+        Reader(long readOffset) {
+            this.readOffset = readOffset;
+        }
+
+        @Override
+        public ChangeRecord poll() {
+            while (this.readOffset < writeOffset) {
+                if (this.segment == null || this.readOffset >= this.segment.baseOffset + this.segment.size) {
+                    this.segment = segments.floorEntry(this.readOffset).getValue();
+                    this.buffer = this.segment.buffer.duplicate();
+                }
+
+                int position = (int) (this.readOffset - this.segment.baseOffset);
+                int length = (position + 4 <= this.segment.size) ? this.buffer.getInt(position) : 0;
+                if (length <= 0) {
+                    /* the end of the segment: marked, too small for a record or not marked before a crash */
+                    this.readOffset = this.segment.baseOffset + this.segment.size;
+                    continue;
+                }
+
+                byte[] data = new byte[length - (HEADER_SIZE - 4)];
+                this.buffer.position(position + HEADER_SIZE);
+                this.buffer.get(data);
+                ChangeRecord record = new ChangeRecord(data, null,
+                        this.buffer.getLong(position + 4),
+                        this.buffer.getInt(position + 12),
+                        this.buffer.getLong(position + 16),
+                        this.buffer.getLong(position + 24),
+                        this.buffer.get(position + 32) != 0);
+                record.setKeyHash(this.buffer.getInt(position + 33));
+
+                this.readOffset += 4 + length;
+                record.setSpoolOffset(this.readOffset);
+                return record;
+            }
+            return null;
+        }
+
+        @Override
+        public void acknowledge(ChangeRecord last, int count) {
+            if (this.stalled) {
+                return;
+            }
+            try {
+                commit(last.getSpoolOffset());
+            } catch (IOException ex) {
+                logger.error("acknowledge() - cannot commit the spool offset: {}, {}", last.getSpoolOffset(), ex.toString());
+            }
+        }
+
+        @Override
+        public void stall() {
+            if (this.stalled == false) {
+                this.stalled = true;
+                logger.error("the batch is not committed, the spool offset stays at: {} until the restart", committedOffset);
+            }
+        }
+    }
+}
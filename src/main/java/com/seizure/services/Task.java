@@ -0,0 +1,66 @@
+package com.seizure.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/*
+    The work of one source split into short steps, so many sources can share a few threads
+    (see TaskScheduler). doWork() does a bounded piece of work and tells whether there was
+    any, it never waits for the work itself. After close() the steps call onClose() instead,
+    until it reports the task is finished.
+ */
+public abstract class Task {
+    private static final Logger logger = LogManager.getLogger(Task.class);
+
+    private volatile boolean closing;
+    private volatile boolean closed;
+
+    public abstract String getName();
+
+    /* true - there was some work, the next step follows at once */
+    protected abstract boolean doWork() throws Exception;
+
+    /* true - the task is finished, otherwise it is called again on the next step */
+    protected boolean onClose() throws Exception {
+        return true;
+    }
+
+    /* what the dedicated thread of the task does after the step without work */
+    protected void idle() throws InterruptedException {
+        Thread.sleep(10); // Sleep 10 millis
+    }
+
+    protected void reset() {
+    }
+
+    /* asks the task to finish, it is done when isClosed() */
+    public void close() {
+        this.closing = true;
+    }
+
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    boolean step() {
+        if (this.closed) {
+            return false;
+        }
+        try {
+            if (this.closing == false) {
+                return this.doWork();
+            }
+            if (this.onClose()) {
+                this.closed = true;
+            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            logger.error("step() - the task: {}, {}", this.getName(), ex.toString());
+            if (this.closing) {
+                this.closed = true;
+            }
+            this.closing = true;
+        }
+        return false;
+    }
+}
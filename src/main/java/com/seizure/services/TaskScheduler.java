@@ -0,0 +1,85 @@
+package com.seizure.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Runs the tasks of all sources: either every task on a thread of its own, idling by the
+    task's own strategy (threads = 0), or all of them on one bounded pool. On the pool the
+    busy task is queued again behind the others, the idle one is delayed for the time growing
+    twice on every empty step up to maxIdleNanos, so an idle source costs one step per
+    maxIdleNanos and no thread.
+ */
+public class TaskScheduler {
+    private static final Logger logger = LogManager.getLogger(TaskScheduler.class);
+
+    private static final long MIN_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final long maxIdleNanos;
+
+    public TaskScheduler(int threads, long maxIdleNanos) {
+        this.maxIdleNanos = Math.max(maxIdleNanos, MIN_IDLE_NANOS);
+        if (threads > 0) {
+            AtomicInteger number = new AtomicInteger();
+            this.executor = new ScheduledThreadPoolExecutor(threads, runnable -> new Thread(runnable, "seizure-" + number.incrementAndGet()));
+            logger.info("the tasks share the pool of {} threads", threads);
+        } else {
+            this.executor = null;
+            logger.info("every task runs on a thread of its own");
+        }
+    }
+
+    public void schedule(Task task) {
+        if (this.executor == null) {
+            new Thread(() -> this.runDedicated(task), task.getName()).start();
+        } else {
+            this.executor.execute(new ScheduledTask(task));
+        }
+    }
+
+    /* the tasks are closed already */
+    public void shutdown() {
+        if (this.executor != null) {
+            this.executor.shutdown();
+        }
+    }
+
+    private void runDedicated(Task task) {
+        while (task.isClosed() == false) {
+            if (task.step()) {
+                task.reset();
+            } else if (task.isClosed() == false) {
+                try {
+                    task.idle();
+                } catch (InterruptedException ex) {
+                    task.close();
+                }
+            }
+        }
+    }
+
+    private class ScheduledTask implements Runnable {
+        private final Task task;
+        private long idleNanos;
+
+        ScheduledTask(Task task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            if (this.task.step()) {
+                this.idleNanos = 0;
+                executor.execute(this);
+            } else if (this.task.isClosed() == false) {
+                this.idleNanos = (this.idleNanos == 0) ? MIN_IDLE_NANOS : Math.min(this.idleNanos * 2, maxIdleNanos);
+                executor.schedule(this, this.idleNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
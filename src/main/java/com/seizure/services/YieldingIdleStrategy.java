@@ -0,0 +1,17 @@
+package com.seizure.services;
+
+/* gives the processor to the other threads after every empty poll */
+public class YieldingIdleStrategy implements IdleStrategy {
+
+    @Override
+    public void idle() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        Thread.yield();
+    }
+
+    @Override
+    public void reset() {
+    }
+}
@@ -0,0 +1,204 @@
+package com.seizure.subscriber;
+
+import com.seizure.models.ConnectionInfo;
+import com.seizure.services.BasicConnectionPool;
+import com.seizure.services.ConnectionPool;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    The workers applying the batches of all sources to the subscriber (apply.threads). Every
+    worker lives as long as the pool and takes one connection for its lifetime, so a batch
+    costs neither a thread start nor a connection check. The connection is replaced after a
+    failure only when it is not valid anymore. The connection given back to the pool is evicted
+    from the RowApplier first, the pool may replace it, so nothing the applier keeps for it
+    (the prepared statements) outlives it.
+ */
+public class ApplyPool implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(ApplyPool.class);
+
+    private static final int VALID_TIMEOUT = 5;
+
+    private final ExecutorService executor;
+    private final ConnectionPool connectionPool;
+    private final RowApplier rowApplier; // null - the insert statements
+    private final ThreadLocal<Connection> connections = new ThreadLocal<>();
+    private final List<Connection> usedConnections = new ArrayList<>();
+
+    public ApplyPool(int threads, ConnectionInfo connectionInfo, RowApplier rowApplier) throws SQLException {
+        this.rowApplier = rowApplier;
+        /* the JDBC batch of the inserts is sent as the multi-row statements (see PreparedApplier) */
+        String url = "jdbc:postgresql://" + connectionInfo.getServer() + "/" + connectionInfo.getDatabase() + "?reWriteBatchedInserts=true";
+        this.connectionPool = BasicConnectionPool.create(url, connectionInfo.getUser(), connectionInfo.getPassword());
+
+        AtomicInteger number = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "apply-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("the batches are applied by {} workers", threads);
+    }
+
+    /* the future completes with true when the statements of the batch are committed */
+    public CompletableFuture<Boolean> submit(RecordCreator recordCreator) {
+        return CompletableFuture.supplyAsync(() -> {
+            Connection connection = this.getConnection();
+            boolean succeeded = recordCreator.apply(connection);
+            if (succeeded == false) {
+                this.checkConnection(connection);
+            }
+            return succeeded;
+        }, this.executor).exceptionally(ex -> {
+            logger.error("submit() - cannot apply the batch: {}", ex.toString());
+            return false;
+        });
+    }
+
+    public Session openSession() {
+        return new Session();
+    }
+
+    /* the submitted batches are finished already (see DataListener.onClose) */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+        try {
+            if (this.executor.awaitTermination(5, TimeUnit.SECONDS) == false) {
+                this.executor.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            this.executor.shutdownNow();
+        }
+
+        logger.info("trying to release used connections ... ");
+        try {
+            synchronized (this.connectionPool) {
+                for (Connection connection : new ArrayList<>(this.usedConnections)) {
+                    this.releaseConnection(connection);
+                }
+                this.connectionPool.shutdown();
+            }
+            logger.info("done.");
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            logger.error("close() - cannot close the connection: {}", ex.toString());
+        }
+    }
+
+    private Connection getConnection() {
+        Connection connection = this.connections.get();
+        if (connection == null) {
+            connection = this.takeConnection();
+            this.connections.set(connection);
+        }
+        return connection;
+    }
+
+    private Connection takeConnection() {
+        try {
+            synchronized (this.connectionPool) {
+                Connection connection = this.connectionPool.getConnection();
+                this.usedConnections.add(connection);
+                return connection;
+            }
+        } catch (SQLException ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    /* the broken connection is given back, the next batch of the worker takes another one */
+    private void checkConnection(Connection connection) {
+        try {
+            if (connection.isValid(VALID_TIMEOUT)) {
+                return;
+            }
+        } catch (SQLException ex) {
+        }
+
+        logger.info("the connection of the worker: {} is not valid, it is replaced", Thread.currentThread().getName());
+        this.releaseConnection(connection);
+        this.connections.remove();
+    }
+
+    private void releaseConnection(Connection connection) {
+        if (this.rowApplier != null) {
+            this.rowApplier.evict(connection);
+        }
+        synchronized (this.connectionPool) {
+            this.usedConnections.remove(connection);
+            this.connectionPool.releaseConnection(connection);
+        }
+    }
+
+    /*
+        The source transaction larger than the batch, applied by parts in one subscriber
+        transaction. The session has a connection of its own, the parts are submitted one after
+        another (every part follows the previous one), so they run on any worker but never at
+        once. The last part commits, the failed part rolls back, then the connection is given
+        back. The transaction not finished by the last part is rolled back by close().
+     */
+    public class Session {
+        private Connection connection;
+        private final CompletableFuture<Boolean> committed = new CompletableFuture<>();
+
+        public CompletableFuture<Boolean> submit(RecordCreator recordCreator, boolean first, boolean last) {
+            return CompletableFuture.supplyAsync(() -> {
+                if (this.connection == null) {
+                    this.connection = takeConnection();
+                }
+                boolean succeeded = recordCreator.apply(this.connection, first, last);
+                if (succeeded == false || last) {
+                    this.finish(succeeded);
+                }
+                return succeeded;
+            }, executor).exceptionally(ex -> {
+                logger.error("submit() - cannot apply the part of the transaction: {}", ex.toString());
+                this.finish(false);
+                return false;
+            });
+        }
+
+        /* completes with true when the last part is committed */
+        public CompletableFuture<Boolean> getCommitted() {
+            return this.committed;
+        }
+
+        /* called when no part is running */
+        public void close() {
+            if (this.committed.isDone() == false) {
+                logger.warn("the transaction of the session is not finished, it is rolled back");
+                this.finish(false);
+            }
+        }
+
+        private synchronized void finish(boolean succeeded) {
+            Connection connection = this.connection;
+            this.connection = null;
+            this.committed.complete(succeeded);
+            if (connection == null) {
+                return;
+            }
+            try {
+                if (connection.getAutoCommit() == false) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+            } catch (SQLException ex) {
+                logger.warn("finish() - cannot roll back the transaction of the session: {}", ex.toString());
+            }
+            releaseConnection(connection);
+        }
+    }
+}
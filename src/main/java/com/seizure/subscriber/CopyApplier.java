@@ -0,0 +1,331 @@
+package com.seizure.subscriber;
+
+import com.seizure.subscriber.models.TableRow;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+    Writes the rows of the batch by COPY ... FROM STDIN (subscriber.applyMode = copy) instead
+    of an insert statement per row, the server does not parse every row as a statement.
+
+    The rows of the same table and the same fields make one COPY, in the order of the batch.
+    The truncate of a table (subscriber.truncateMode = truncate) ends the COPYs made so far,
+    so the rows before it are truncated and the rows after it are kept, as with the inserts.
+
+    The text format (default) escapes the values as the text COPY expects. The binary format
+    (subscriber.copyFormat = binary) needs the types of the subscriber columns, they are read
+    once per table; the table having a column of other type than bool, int2, int4, int8,
+    float4, float8, text, varchar, bpchar, name, uuid, json or jsonb is copied as text.
+ */
+public class CopyApplier implements RowApplier {
+    private static final Logger logger = LogManager.getLogger(CopyApplier.class);
+
+    private static final byte[] BINARY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+    private final boolean binary;
+    /* the subscriber table - the type OIDs of its columns by the lower case name */
+    private final ConcurrentHashMap<String, Map<String, Integer>> columnTypes = new ConcurrentHashMap<>();
+
+    public CopyApplier(boolean binary) {
+        this.binary = binary;
+    }
+
+    @Override
+    public void apply(Connection connection, List<TableRow> rows) throws SQLException {
+        CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+        LinkedHashMap<String, CopyGroup> groups = new LinkedHashMap<>();
+        for (TableRow row : rows) {
+            String tableName = row.getPubSubTableInfo().getSubFullTableName();
+            if (row.isTruncate()) {
+                this.copy(copyManager, groups);
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate(String.format("truncate table %s;", tableName));
+                }
+                continue;
+            }
+
+            String key = tableName + " (" + String.join(",", row.getFieldNames()) + ")";
+            CopyGroup group = groups.get(key);
+            if (group == null) {
+                group = new CopyGroup(tableName, row.getFieldNames(), this.binary ? this.getBinaryTypes(connection, tableName, row.getFieldNames()) : null);
+                groups.put(key, group);
+            }
+            group.add(row.getValues());
+        }
+        this.copy(copyManager, groups);
+    }
+
+    private void copy(CopyManager copyManager, LinkedHashMap<String, CopyGroup> groups) throws SQLException {
+        for (CopyGroup group : groups.values()) {
+            CopyIn copyIn = copyManager.copyIn(group.getStatement());
+            try {
+                byte[] data = group.finish();
+                copyIn.writeToCopy(data, 0, group.size);
+                copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        }
+        groups.clear();
+    }
+
+    /* the types of the fields in their order, null - the table is copied as text */
+    private int[] getBinaryTypes(Connection connection, String tableName, List<String> fieldNames) throws SQLException {
+        Map<String, Integer> types = this.columnTypes.get(tableName);
+        if (types == null) {
+            types = this.readColumnTypes(connection, tableName);
+            this.columnTypes.put(tableName, types);
+        }
+
+        int[] result = new int[fieldNames.size()];
+        for (int i = 0; i < result.length; i++) {
+            Integer type = types.get(fieldNames.get(i).toLowerCase());
+            if (type == null || isBinarySupported(type) == false) {
+                return null;
+            }
+            result[i] = type;
+        }
+        return result;
+    }
+
+    private Map<String, Integer> readColumnTypes(Connection connection, String tableName) throws SQLException {
+        String sql = "select attname, atttypid from pg_attribute where attrelid = ?::regclass and attnum > 0 and not attisdropped";
+        Map<String, Integer> types = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, tableName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    types.put(resultSet.getString(1).toLowerCase(), (int) resultSet.getLong(2));
+                }
+            }
+        }
+        logger.info("the column types of the subscriber table: {} are read, {} columns", tableName, types.size());
+        return types;
+    }
+
+    private static boolean isBinarySupported(int type) {
+        switch (type) {
+            case 16: // bool
+            case 19: // name
+            case 20: // int8
+            case 21: // int2
+            case 23: // int4
+            case 25: // text
+            case 114: // json
+            case 700: // float4
+            case 701: // float8
+            case 1042: // bpchar
+            case 1043: // varchar
+            case 2950: // uuid
+            case 3802: // jsonb
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /* the rows of one COPY encoded as they are added */
+    private static class CopyGroup {
+        private final String statement;
+        private final int[] types;
+        private byte[] data = new byte[1024];
+        private int size;
+
+        CopyGroup(String tableName, List<String> fieldNames, int[] types) {
+            this.types = types;
+            this.statement = String.format("copy %s (%s) from stdin%s", tableName, String.join(",", fieldNames),
+                    (types != null) ? " with (format binary)" : "");
+            if (types != null) {
+                this.write(BINARY_SIGNATURE, 0, BINARY_SIGNATURE.length);
+                this.writeInt(0); // flags
+                this.writeInt(0); // header extension length
+            }
+        }
+
+        String getStatement() {
+            return this.statement;
+        }
+
+        void add(List<Object> values) {
+            if (this.types != null) {
+                this.addBinary(values);
+            } else {
+                this.addText(values);
+            }
+        }
+
+        byte[] finish() {
+            if (this.types != null) {
+                this.writeShort(-1);
+            }
+            return this.data;
+        }
+
+        private void addText(List<Object> values) {
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) {
+                    this.writeByte('\t');
+                }
+                Object value = values.get(i);
+                if (value == null) {
+                    this.writeByte('\\');
+                    this.writeByte('N');
+                } else {
+                    this.writeEscaped(value.toString());
+                }
+            }
+            this.writeByte('\n');
+        }
+
+        /* the backslash, the delimiter and the line ends are escaped, the other bytes are written as is */
+        private void writeEscaped(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            this.ensureCapacity(bytes.length * 2);
+            for (byte b : bytes) {
+                switch (b) {
+                    case '\\':
+                        this.data[this.size++] = '\\';
+                        this.data[this.size++] = '\\';
+                        break;
+                    case '\t':
+                        this.data[this.size++] = '\\';
+                        this.data[this.size++] = 't';
+                        break;
+                    case '\n':
+                        this.data[this.size++] = '\\';
+                        this.data[this.size++] = 'n';
+                        break;
+                    case '\r':
+                        this.data[this.size++] = '\\';
+                        this.data[this.size++] = 'r';
+                        break;
+                    default:
+                        this.data[this.size++] = b;
+                }
+            }
+        }
+
+        private void addBinary(List<Object> values) {
+            this.writeShort(values.size());
+            for (int i = 0; i < values.size(); i++) {
+                Object value = values.get(i);
+                if (value == null) {
+                    this.writeInt(-1);
+                    continue;
+                }
+                switch (this.types[i]) {
+                    case 16: // bool
+                        this.writeInt(1);
+                        this.writeByte(toBoolean(value) ? 1 : 0);
+                        break;
+                    case 20: // int8
+                        this.writeInt(8);
+                        this.writeLong(toLong(value));
+                        break;
+                    case 21: // int2
+                        this.writeInt(2);
+                        this.writeShort((short) toLong(value));
+                        break;
+                    case 23: // int4
+                        this.writeInt(4);
+                        this.writeInt((int) toLong(value));
+                        break;
+                    case 700: // float4
+                        this.writeInt(4);
+                        this.writeInt(Float.floatToIntBits((float) toDouble(value)));
+                        break;
+                    case 701: // float8
+                        this.writeInt(8);
+                        this.writeLong(Double.doubleToLongBits(toDouble(value)));
+                        break;
+                    case 2950: // uuid
+                        UUID uuid = (value instanceof UUID) ? (UUID) value : UUID.fromString(value.toString());
+                        this.writeInt(16);
+                        this.writeLong(uuid.getMostSignificantBits());
+                        this.writeLong(uuid.getLeastSignificantBits());
+                        break;
+                    case 3802: // jsonb, the version 1 is the text
+                        byte[] json = value.toString().getBytes(StandardCharsets.UTF_8);
+                        this.writeInt(json.length + 1);
+                        this.writeByte(1);
+                        this.write(json, 0, json.length);
+                        break;
+                    default: // the text types
+                        byte[] text = value.toString().getBytes(StandardCharsets.UTF_8);
+                        this.writeInt(text.length);
+                        this.write(text, 0, text.length);
+                }
+            }
+        }
+
+        private static boolean toBoolean(Object value) {
+            if (value instanceof Boolean) {
+                return (Boolean) value;
+            }
+            String text = value.toString();
+            return text.equalsIgnoreCase("t") || text.equalsIgnoreCase("true");
+        }
+
+        private static long toLong(Object value) {
+            return (value instanceof Number) ? ((Number) value).longValue() : Long.parseLong(value.toString().trim());
+        }
+
+        private static double toDouble(Object value) {
+            return (value instanceof Number) ? ((Number) value).doubleValue() : Double.parseDouble(value.toString().trim());
+        }
+
+        private void write(byte[] bytes, int offset, int length) {
+            this.ensureCapacity(length);
+            System.arraycopy(bytes, offset, this.data, this.size, length);
+            this.size += length;
+        }
+
+        private void writeByte(int value) {
+            this.ensureCapacity(1);
+            this.data[this.size++] = (byte) value;
+        }
+
+        private void writeShort(int value) {
+            this.ensureCapacity(2);
+            this.data[this.size++] = (byte) (value >>> 8);
+            this.data[this.size++] = (byte) value;
+        }
+
+        private void writeInt(int value) {
+            this.ensureCapacity(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                this.data[this.size++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void writeLong(long value) {
+            this.writeInt((int) (value >>> 32));
+            this.writeInt((int) value);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (this.size + extra > this.data.length) {
+                this.data = Arrays.copyOf(this.data, Math.max(this.size + extra, this.data.length * 2));
+            }
+        }
+    }
+}
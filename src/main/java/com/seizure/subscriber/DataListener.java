@@ -1,42 +1,110 @@
 package com.seizure.subscriber;
 
-import com.seizure.models.ConnectionInfo;
-import com.seizure.models.PubSubTableInfo;
-import com.seizure.services.BasicConnectionPool;
-import com.seizure.services.ConnectionPool;
+import com.seizure.models.ChangeRecord;
+import com.seizure.services.RecordSource;
+import com.seizure.services.Task;
+import com.seizure.subscriber.models.SubscriberMode;
+import com.seizure.subscriber.models.TruncateMode;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.sql.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class DataListener extends Thread {
+/*
+    Takes the changes of one publisher database from the queue (or the spool) and applies
+    them to the subscriber by batches, up to maxTasks batches at once on the workers of the
+    ApplyPool. The finished batch completes its future, the listener does not poll the workers.
+
+    The batch is assembled from what the source has at every step, taken by one drain, and is
+    started when it reaches batchSize or when its oldest record waited batchMaxLatency. So the
+    busy source makes full batches, the quiet one does not hold a record longer than that.
+
+    With apply.lanes the batch is split by the key hash of the records (see ChangeRecord) into
+    the lanes: the part of a lane is applied after the previous part of the same lane, the
+    lanes go in parallel, so the changes of one row are applied in their order while the
+    changes of different rows are not waiting for each other. The barrier record (truncate,
+    update of the key) is applied after all the lanes and all the lanes wait for it. The batch
+    is still acknowledged when all its parts are committed, in the order of the batches.
+
+    In the transactional mode the batch holds whole transactions and every batch is applied
+    after the previous one, so the subscriber commits them in the source order whatever
+    maxTasks is. The pending records are never more than batchSize: the transaction larger
+    than that is applied by parts in one subscriber transaction (see ApplyPool.Session), its
+    parts are acknowledged when the last one commits.
+ */
+public class DataListener extends Task {
     private static final Logger logger = LogManager.getLogger(DataListener.class);
 
-    private final ConcurrentLinkedQueue<String> queue;
-    private final ConnectionPool connectionPool;
-    private final String database;
+    private final RecordSource source;
+    private final String name; // the publisher database
+    private final ApplyPool applyPool;
     private final int maxTasks;
     private final int batchSize;
+    private final int lanes; // 0 - the batch is applied as a whole
+    private final long maxLatencyNanos;
+
+    private final TableRoutes tableRoutes;
+    private final TruncateMode truncateMode;
+    private final String outputFormat;
+    private final boolean transactional;
+    private final RowApplier rowApplier; // null - the insert statements
+    private final SubscriberMode subscriberMode;
 
-    private final List<PubSubTableInfo> pubSubTableInfoList;
+    /*
+        The batch being assembled: the records taken from the source since pendingSince, in the
+        transactional mode the first committedCount of them make whole transactions.
+     */
+    private final List<ChangeRecord> pending = new ArrayList<>();
+    private int committedCount;
+    private long pendingSince;
 
-    public DataListener(ConcurrentLinkedQueue<String> queue,
+    /* the started batches in the queue order, they are acknowledged to the source in this order */
+    private final ArrayDeque<Batch> unacknowledged = new ArrayDeque<>();
+    private final AtomicInteger running = new AtomicInteger();
+    /* a permit per finished batch, the dedicated thread of the listener waits on it instead of sleeping */
+    private final Semaphore completions = new Semaphore(0);
+    /* the transactional mode: the last submitted batch, and the session of the open transaction applied by parts */
+    private CompletableFuture<Boolean> tail = CompletableFuture.completedFuture(true);
+    private ApplyPool.Session session;
+    private boolean partial; // the taken batch is a part of the open transaction
+    /* the last submitted part of every lane */
+    private final List<CompletableFuture<Boolean>> laneTails;
+
+    public DataListener(String name,
+                        RecordSource source,
                         int maxTasks,
                         int batchSize,
-                        ConnectionInfo connectionInfo,
-                        List<PubSubTableInfo> pubSubTableInfoList) throws SQLException {
-        this.queue = queue;
+                        long maxLatencyNanos,
+                        int lanes,
+                        TableRoutes tableRoutes,
+                        TruncateMode truncateMode,
+                        String outputFormat,
+                        boolean transactional,
+                        RowApplier rowApplier,
+                        SubscriberMode subscriberMode,
+                        ApplyPool applyPool) {
+        this.source = source;
         this.maxTasks = maxTasks;
         this.batchSize = batchSize;
-        this.database = connectionInfo.getDatabase();
-        this.pubSubTableInfoList = pubSubTableInfoList;
+        this.maxLatencyNanos = maxLatencyNanos;
+        this.lanes = lanes;
+        this.name = name;
+        this.applyPool = applyPool;
+        this.tableRoutes = tableRoutes;
+        this.truncateMode = truncateMode;
+        this.outputFormat = outputFormat;
+        this.transactional = transactional;
+        this.rowApplier = rowApplier;
+        this.subscriberMode = subscriberMode;
 
-        String url = "jdbc:postgresql://" + connectionInfo.getServer() + "/" + database;
-        this.connectionPool = BasicConnectionPool.create(url, connectionInfo.getUser(), connectionInfo.getPassword());
+        this.laneTails = new ArrayList<>(Collections.nCopies(lanes, CompletableFuture.completedFuture(true)));
     }
 
     long recordsCount = 0;
@@ -45,96 +113,261 @@ public class DataListener extends Thread {
         return this.recordsCount;
     }
 
-    public void run() {
-        List<RecordCreator> recordCreators = new ArrayList<>();
-        List<String> records;
-        int count;
-        while (Thread.interrupted() == false) {
-            try {
-                if (recordCreators.size() < this.maxTasks) {
-                    records = new ArrayList<>();
-                    for (int i = 0; i < this.batchSize; i++) {
-                        if (this.queue.peek() != null) {
-                            records.add(this.queue.poll());
-                        } else {
-                            Thread.sleep(10); // Sleep 10 millis
-                        }
-                    }
-                    if (records.size() > 0) {
-
-                        recordsCount += records.size();
-
-                        RecordCreator recordCreator = new RecordCreator(this.connectionPool.getConnection(), records, this.pubSubTableInfoList);
-                        recordCreator.start();
-                        recordCreators.add(recordCreator);
-                    }
-
-                    if (recordCreators.size() < this.maxTasks) {
-                        continue;
-                    }
-                }
+    @Override
+    public String getName() {
+        return "listener-" + this.name;
+    }
 
-                count = 0;
-                Iterator<RecordCreator> threadIterator = recordCreators.iterator();
-                while (threadIterator.hasNext()) {
-                    RecordCreator recordCreator = threadIterator.next();
-                    if (recordCreator.isAlive() == false) {
-                        Connection connection = recordCreator.getConnection();
-                        this.connectionPool.releaseConnection(connection);
-                        threadIterator.remove();
-                        count++;
-                    }
-                }
+    @Override
+    protected boolean doWork() throws Exception {
+        int count = this.acknowledge();
+        if (count != 0) {
+            logger.info("there are {} tasks from {} has been finished", count, this.maxTasks);
+        }
 
-                if (count != 0) {
-                    logger.info("there are {} tasks from {} has been finished", count, this.maxTasks);
-                }
+        if (this.running.get() == this.maxTasks) {
+            logger.info("there is a necessary to wait a little, all tasks busy now ...");
+            return count != 0;
+        }
+
+        int taken = this.transactional ? this.drainTransactions() : this.drainRecords();
+        List<ChangeRecord> records = this.takeBatch();
+        if (records == null) {
+            return count != 0 || taken != 0;
+        }
+
+        recordsCount += records.size();
+
+        this.running.incrementAndGet();
+        CompletableFuture<Boolean> future;
+        if (this.lanes > 0) {
+            future = this.submitLanes(records);
+        } else if (this.transactional) {
+            future = this.submitTransaction(records);
+        } else {
+            future = this.applyPool.submit(this.newRecordCreator(records));
+        }
+        future.whenComplete((succeeded, ex) -> {
+            this.running.decrementAndGet();
+            this.completions.release();
+        });
+        /* the part of the open transaction is not acknowledged before the transaction commits */
+        CompletableFuture<Boolean> acknowledged = (this.session != null)
+                ? future.thenCombine(this.session.getCommitted(), (succeeded, committed) -> succeeded && committed) : future;
+        this.unacknowledged.addLast(new Batch(records, acknowledged));
+        return true;
+    }
+
+    /* the batch follows the previous one, it is not applied after a failure */
+    private CompletableFuture<Boolean> submitTransaction(List<ChangeRecord> records) {
+        RecordCreator recordCreator = this.newRecordCreator(records);
+        CompletableFuture<Boolean> future;
+        if (this.session == null && this.partial == false) {
+            future = this.tail.thenCompose(succeeded -> succeeded ? this.applyPool.submit(recordCreator) : CompletableFuture.completedFuture(false));
+        } else {
+            boolean first = this.session == null;
+            boolean last = this.partial == false;
+            if (first) {
+                this.session = this.applyPool.openSession();
+            }
+            ApplyPool.Session session = this.session;
+            future = this.tail.thenCompose(succeeded -> succeeded ? session.submit(recordCreator, first, last) : CompletableFuture.completedFuture(false));
+            if (last) {
+                /* the session of the failed transaction is finished by the last part as well */
+                future = future.whenComplete((succeeded, ex) -> session.close());
+                this.session = null;
+            }
+        }
+        this.tail = future;
+        return future;
+    }
+
+    private RecordCreator newRecordCreator(List<ChangeRecord> records) {
+        return new RecordCreator(records, this.tableRoutes, this.truncateMode,
+                this.outputFormat, this.transactional, this.rowApplier, this.subscriberMode);
+    }
+
+    /* splits the batch into the lanes, the future completes when all the parts are finished */
+    private CompletableFuture<Boolean> submitLanes(List<ChangeRecord> records) {
+        List<CompletableFuture<Boolean>> parts = new ArrayList<>();
+        List<List<ChangeRecord>> laneRecords = new ArrayList<>(this.lanes);
+        for (int i = 0; i < this.lanes; i++) {
+            laneRecords.add(new ArrayList<>());
+        }
+
+        for (ChangeRecord record : records) {
+            int keyHash = record.getKeyHash();
+            if (keyHash != ChangeRecord.BARRIER) {
+                laneRecords.get(keyHash % this.lanes).add(record);
+                continue;
+            }
 
-                if (recordCreators.size() == this.maxTasks) {
-                    logger.info("there is a necessary to wait a little, all tasks busy now ...");
-                    Thread.sleep(10); // Sleep 10 millis
+            this.submitParts(laneRecords, parts);
+            RecordCreator recordCreator = this.newRecordCreator(Collections.singletonList(record));
+            CompletableFuture<Boolean> lanesSucceeded = allSucceeded(this.laneTails);
+            CompletableFuture<Boolean> barrier = lanesSucceeded
+                    .thenCompose(succeeded -> succeeded ? this.applyPool.submit(recordCreator) : CompletableFuture.completedFuture(false));
+            barrier.thenAccept(succeeded -> {
+                if (succeeded == false && lanesSucceeded.join()) {
+                    logger.error("the barrier record of the LSN: {} is not applied, all the lanes of {} are stopped", record.getLsn(), this.name);
                 }
+            });
+            Collections.fill(this.laneTails, barrier);
+            parts.add(barrier);
+        }
+        this.submitParts(laneRecords, parts);
+        return allSucceeded(parts);
+    }
 
-            } catch (InterruptedException ex) {
-                logger.info("run() - listening of the database: {} has been interrupted...", this.database);
-                break;
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                logger.error("run() - {}", ex.toString());
-                break;
+    /* every lane part follows the previous one of the lane, it is not applied after a failure */
+    private void submitParts(List<List<ChangeRecord>> laneRecords, List<CompletableFuture<Boolean>> parts) {
+        for (int i = 0; i < this.lanes; i++) {
+            List<ChangeRecord> records = laneRecords.get(i);
+            if (records.isEmpty()) {
+                continue;
             }
+            RecordCreator recordCreator = this.newRecordCreator(records);
+            CompletableFuture<Boolean> previous = this.laneTails.get(i);
+            int lane = i;
+            CompletableFuture<Boolean> part = previous
+                    .thenCompose(succeeded -> succeeded ? this.applyPool.submit(recordCreator) : CompletableFuture.completedFuture(false));
+            /* the first failed part of the lane is logged, the parts after it are not applied */
+            part.thenAccept(succeeded -> {
+                if (succeeded == false && previous.join()) {
+                    logger.error("the part of the lane: {} of {} is not applied, the lane is stopped at the LSN: {}",
+                            lane, this.name, records.get(0).getLsn());
+                }
+            });
+            this.laneTails.set(i, part);
+            parts.add(part);
+            laneRecords.set(i, new ArrayList<>());
         }
+    }
+
+    /* the part which could not be submitted (the pool is closed) is failed as well */
+    private static CompletableFuture<Boolean> allSucceeded(List<CompletableFuture<Boolean>> futures) {
+        List<CompletableFuture<Boolean>> snapshot = new ArrayList<>(futures);
+        return CompletableFuture.allOf(snapshot.toArray(new CompletableFuture<?>[0]))
+                .handle((ignored, ex) -> snapshot.stream().allMatch(future -> future.isCompletedExceptionally() == false && future.join()));
+    }
 
-        logger.info("the work is interrupted...");
+    /* the dedicated thread wakes up as soon as a batch is finished or the pending batch is due, otherwise in 10 millis as before */
+    @Override
+    protected void idle() throws InterruptedException {
+        long waitNanos = TimeUnit.MILLISECONDS.toNanos(10);
+        if (this.pending.isEmpty() == false) {
+            waitNanos = Math.max(0, Math.min(waitNanos, this.pendingSince + this.maxLatencyNanos - System.nanoTime()));
+        }
+        if (this.completions.tryAcquire(waitNanos, TimeUnit.NANOSECONDS)) {
+            this.completions.drainPermits();
+        }
+    }
 
-        int size;
-        while ((size = recordCreators.size()) > 0) {
+    /*
+        The running batches are finished first, the workers and their connections belong to the
+        ApplyPool. The open transaction applied by parts is rolled back, it is taken from the
+        source again after the restart.
+     */
+    @Override
+    protected boolean onClose() {
+        this.acknowledge();
+        int size = this.running.get();
+        if (size > 0) {
             logger.info("there are {} tasks is working still, lets wait a little ...", size);
+            return false;
+        }
+        if (this.session != null) {
+            this.session.close();
+            this.session = null;
+        }
+        this.acknowledge();
+        logger.info("all tasks are finished.");
+        return true;
+    }
 
-            Iterator<RecordCreator> threadIterator = recordCreators.iterator();
-            while (threadIterator.hasNext()) {
-                RecordCreator recordCreator = threadIterator.next();
-                if (recordCreator.isAlive() == false) {
-                    Connection connection = recordCreator.getConnection();
-                    this.connectionPool.releaseConnection(connection);
-                    threadIterator.remove();
+    /* drains the records the source has up to batchSize, returns their number */
+    private int drainRecords() {
+        int size = this.pending.size();
+        int taken = this.source.drain(this.pending, this.batchSize - size);
+        if (size == 0 && taken != 0) {
+            this.pendingSince = System.nanoTime();
+        }
+        return taken;
+    }
+
+    /*
+        Drains the whole transactions up to batchSize records: the small ones are joined, the
+        records of the transaction whose commit is not in the source yet wait for it while the
+        batch is not full (the larger transaction is taken by parts, see takeBatch).
+     */
+    private int drainTransactions() {
+        int size = this.pending.size();
+        while (this.pending.size() < this.batchSize) {
+            int from = this.pending.size();
+            if (this.source.drain(this.pending, this.batchSize - from) == 0) {
+                break;
+            }
+            for (int i = from; i < this.pending.size(); i++) {
+                if (this.pending.get(i).isCommit()) {
+                    this.committedCount = i + 1;
                 }
             }
+        }
+        if (size == 0 && this.pending.isEmpty() == false) {
+            this.pendingSince = System.nanoTime();
+        }
+        return this.pending.size() - size;
+    }
+
+    /*
+        The batch when it is full or waited long enough, otherwise null. In the transactional
+        mode the full batch without a commit is a part of the open transaction.
+     */
+    private List<ChangeRecord> takeBatch() {
+        int ready = this.transactional ? this.committedCount : this.pending.size();
+        this.partial = false;
+        if (this.transactional && ready == 0 && this.pending.size() >= this.batchSize) {
+            ready = this.pending.size();
+            this.partial = true;
+        } else if (ready == 0 || (this.pending.size() < this.batchSize && System.nanoTime() - this.pendingSince < this.maxLatencyNanos)) {
+            return null;
+        }
 
-            try {
-                Thread.sleep(10); // Sleep 10 millis
-            } catch (InterruptedException ex) {
+        List<ChangeRecord> taken = this.pending.subList(0, ready);
+        List<ChangeRecord> records = new ArrayList<>(taken);
+        taken.clear();
+        this.committedCount = 0;
+        /* the rest of the transaction is younger, its wait starts now */
+        this.pendingSince = System.nanoTime();
+        return records;
+    }
+
+    /*
+        Reports the finished batches to the source: only the leading ones, so the confirmed
+        LSN (or the spool offset) never passes a batch which is still running, the failed batch
+        stops it for good. Returns the number of the reported batches.
+     */
+    private int acknowledge() {
+        int count = 0;
+        while (this.unacknowledged.isEmpty() == false && this.unacknowledged.peekFirst().future.isDone()) {
+            Batch batch = this.unacknowledged.pollFirst();
+            if (batch.future.join()) {
+                this.source.acknowledge(batch.records.get(batch.records.size() - 1), batch.records.size());
+            } else {
+                this.source.stall();
             }
+            count++;
         }
+        return count;
+    }
 
-        logger.info("all tasks are finished, trying to release used connections ... ");
+    private static class Batch {
+        private final List<ChangeRecord> records;
+        private final CompletableFuture<Boolean> future;
 
-        try {
-            this.connectionPool.shutdown();
-            logger.info("done.");
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            logger.error("run() - cannot close the connection: {}", ex.toString());
+        Batch(List<ChangeRecord> records, CompletableFuture<Boolean> future) {
+            this.records = records;
+            this.future = future;
         }
     }
 }
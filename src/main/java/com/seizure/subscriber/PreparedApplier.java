@@ -0,0 +1,164 @@
+package com.seizure.subscriber;
+
+import com.seizure.models.PubSubTableInfo;
+import com.seizure.subscriber.models.TableRow;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+    Writes the rows of the batch by the parameterized insert (upsert, delete) statements
+    (subscriber.applyMode = prepared) executed by the JDBC batches. The statement of every (table, fields) is prepared
+    once per connection and kept while the connection lives, so the steady apply builds no SQL,
+    and the server plans it once (the driver prepares it on the server after prepareThreshold
+    executions). The workers connect with reWriteBatchedInserts (see ApplyPool), the driver
+    sends the batch as the multi-row insert statements.
+
+    The strings are bound untyped, as the quoted literals of the insert statements are, so the
+    server converts them to the type of the column.
+ */
+public class PreparedApplier implements RowApplier {
+    private static final Logger logger = LogManager.getLogger(PreparedApplier.class);
+
+    /* the statements of one connection, all of them are closed when there are more */
+    private static final int MAX_STATEMENTS = 256;
+
+    /*
+        Every connection is used by one worker at once, its own statements are not shared. The
+        statements keep their connection, they are closed after the failure of the statements,
+        and when the ApplyPool replaces or gives back the connection (see evict).
+     */
+    private final Map<Connection, Map<Template, PreparedStatement>> statements = new ConcurrentHashMap<>();
+
+    @Override
+    public void apply(Connection connection, List<TableRow> rows) throws SQLException {
+        Map<Template, PreparedStatement> cache = this.statements.computeIfAbsent(connection, key -> new HashMap<>());
+        /* the statements having the rows added, in the order of their first row */
+        LinkedHashSet<PreparedStatement> batched = new LinkedHashSet<>();
+        try {
+            for (TableRow row : rows) {
+                Template template = new Template(row.getPubSubTableInfo(), row.getKind(), row.getFieldNames());
+                PreparedStatement statement = cache.get(template);
+                if (statement == null) {
+                    if (cache.size() >= MAX_STATEMENTS) {
+                        this.executeBatches(batched);
+                        closeAll(cache);
+                    }
+                    statement = connection.prepareStatement(template.toSql());
+                    cache.put(template, statement);
+                }
+
+                /* the rows before the truncate are truncated, the rows after it are kept */
+                if (row.isTruncate()) {
+                    this.executeBatches(batched);
+                    statement.executeUpdate();
+                    continue;
+                }
+
+                List<Object> values = row.getValues();
+                for (int i = 0; i < values.size(); i++) {
+                    Object value = values.get(i);
+                    if (value == null) {
+                        statement.setNull(i + 1, Types.OTHER);
+                    } else if (value instanceof Number || value instanceof Boolean) {
+                        statement.setObject(i + 1, value);
+                    } else {
+                        statement.setObject(i + 1, value.toString(), Types.OTHER);
+                    }
+                }
+                statement.addBatch();
+                batched.add(statement);
+            }
+            this.executeBatches(batched);
+        } catch (SQLException ex) {
+            /* the statement could be broken by the failure (the table changed and so on), it is prepared again */
+            this.evict(connection);
+            throw ex;
+        }
+    }
+
+    @Override
+    public void evict(Connection connection) {
+        Map<Template, PreparedStatement> cache = this.statements.remove(connection);
+        if (cache != null) {
+            closeAll(cache);
+        }
+    }
+
+    private void executeBatches(LinkedHashSet<PreparedStatement> batched) throws SQLException {
+        for (PreparedStatement statement : batched) {
+            statement.executeBatch();
+        }
+        batched.clear();
+    }
+
+    private static void closeAll(Map<Template, PreparedStatement> cache) {
+        for (PreparedStatement statement : cache.values()) {
+            try {
+                statement.close();
+            } catch (SQLException ex) {
+                logger.warn("closeAll() - cannot close the statement: {}", ex.toString());
+            }
+        }
+        cache.clear();
+    }
+
+    /* the key of the statement: the table configuration (the same instance for all rows) and the row's own list of the fields */
+    private static class Template {
+        private final PubSubTableInfo pubSubTableInfo;
+        private final TableRow.Kind kind;
+        private final List<String> fieldNames;
+        private final int hash;
+
+        Template(PubSubTableInfo pubSubTableInfo, TableRow.Kind kind, List<String> fieldNames) {
+            this.pubSubTableInfo = pubSubTableInfo;
+            this.kind = kind;
+            this.fieldNames = fieldNames;
+            this.hash = Objects.hash(pubSubTableInfo, kind, fieldNames);
+        }
+
+        String toSql() {
+            String tableName = this.pubSubTableInfo.getSubFullTableName();
+            switch (this.kind) {
+                case TRUNCATE:
+                    return String.format("truncate table %s", tableName);
+                case DELETE:
+                    return String.format("delete from %s where %s = ?", tableName, String.join(" = ? and ", this.fieldNames));
+                default:
+                    String insert = String.format("insert into %s (%s) values (%s)", tableName, String.join(",", this.fieldNames),
+                            String.join(",", Collections.nCopies(this.fieldNames.size(), "?")));
+                    return (this.kind == TableRow.Kind.UPSERT)
+                            ? insert + " " + RecordCreator.createConflictClause(this.pubSubTableInfo, this.fieldNames) : insert;
+            }
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (other instanceof Template == false) {
+                return false;
+            }
+            Template template = (Template) other;
+            return this.kind == template.kind && this.pubSubTableInfo == template.pubSubTableInfo
+                    && this.fieldNames.equals(template.fieldNames);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
@@ -2,41 +2,144 @@ package com.seizure.subscriber;
 
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.seizure.models.ChangeRecord;
 import com.seizure.models.PubSubTableInfo;
+import com.seizure.publisher.models.Change;
+import com.seizure.publisher.models.Relation;
+import com.seizure.publisher.serializers.MessageSerializer;
+import com.seizure.publisher.serializers.MessageSerializers;
 import com.seizure.subscriber.models.CallInfo;
 import com.seizure.subscriber.models.GeneratedRecord;
+import com.seizure.subscriber.models.SubscriberMode;
+import com.seizure.subscriber.models.TableRow;
+import com.seizure.subscriber.models.TruncateMode;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-
-public class RecordCreator extends Thread {
+import java.util.Map;
+import java.util.Objects;
+
+/*
+    The batch of the changes applied to the subscriber, one apply() on the connection of the
+    apply worker (see ApplyPool).
+
+    In the replica mode the batch is compacted before it is written: the changes of one row
+    (the table and the values of its key) make one upsert with the latest values, or one
+    delete when the last change is a delete, so insert - update - update - delete of a key is
+    one statement. The rows of different keys do not depend on each other, the truncate is
+    applied between the rows before and after it. The update of the key is written as the
+    delete of the old key (passed with the update, see ReplicationOptions.isOldTuples) and
+    the upsert of the new one; the update of the key is a barrier of the apply lanes, so
+    the rows of both keys are in the same batch part.
+ */
+public class RecordCreator {
     private static final Logger logger = LogManager.getLogger(RecordCreator.class);
-
-    private final Connection connection;
-    private final List<String> records;
-    private final List<PubSubTableInfo> pubSubTableInfoList;
-
-    public RecordCreator(Connection connection, List<String> records, List<PubSubTableInfo> pubSubTableInfoList) {
-        this.connection = connection;
+    /* the reader is immutable, the batches of all workers share it */
+    private static final ObjectReader callInfoReader = new ObjectMapper().readerFor(CallInfo.class);
+
+    private final List<ChangeRecord> records;
+    private final TableRoutes tableRoutes;
+    private final TruncateMode truncateMode;
+    private final String outputFormat;
+    private final boolean transactional;
+    private final RowApplier rowApplier;
+    private final boolean replica;
+
+    public RecordCreator(List<ChangeRecord> records, TableRoutes tableRoutes,
+                         TruncateMode truncateMode, String outputFormat, boolean transactional, RowApplier rowApplier,
+                         SubscriberMode subscriberMode) {
         this.records = records;
-        this.pubSubTableInfoList = pubSubTableInfoList;
+        this.tableRoutes = tableRoutes;
+        this.truncateMode = truncateMode;
+        this.outputFormat = outputFormat;
+        this.transactional = transactional;
+        this.rowApplier = rowApplier;
+        this.replica = subscriberMode == SubscriberMode.REPLICA;
 
         logger.info("the incoming records count: {}", records.size());
     }
 
-    public void run() {
+    /* returns true when the statements of the batch are committed */
+    public boolean apply(Connection connection) {
+        return this.apply(connection, true, true);
+    }
+
+    /*
+        The part of the source transaction larger than the batch (see ApplyPool.Session): the
+        first part begins the subscriber transaction, the last one commits it. Returns true when
+        the statements are executed (and committed by the last part).
+     */
+    public boolean apply(Connection connection, boolean first, boolean last) {
+        boolean whole = first && last;
         try {
+            if (this.rowApplier != null) {
+                /* several COPYs (or JDBC batches) are committed together, as the insert statements of the batch are */
+                List<TableRow> rows = this.createRows();
+                if (rows.isEmpty() == false || whole == false) {
+                    this.executeInTransaction(connection, first, last, () -> this.rowApplier.apply(connection, rows));
+                }
+                return true;
+            }
+
             String insertStatement = this.createInsertStatements();
-            Statement statement = this.connection.createStatement();
-            statement.executeUpdate(insertStatement);
+            if (insertStatement.isEmpty() && whole) {
+                return true;
+            }
+            Work work = () -> {
+                if (insertStatement.isEmpty() == false) {
+                    this.executeUpdate(connection, insertStatement);
+                }
+            };
+            if (this.transactional) {
+                this.executeInTransaction(connection, first, last, work);
+            } else {
+                work.execute();
+            }
+            return true;
         } catch (Exception ex) {
             ex.printStackTrace();
-            logger.error("run() - {}", ex.toString());
+            logger.error("apply() - {}", ex.toString());
+            return false;
         }
     }
 
+    private void executeUpdate(Connection connection, String insertStatement) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(insertStatement);
+        }
+    }
+
+    /* the batch holds whole source transactions (or their parts), they are committed or rolled back together */
+    private void executeInTransaction(Connection connection, boolean first, boolean last, Work work) throws SQLException {
+        if (first) {
+            connection.setAutoCommit(false);
+        }
+        try {
+            work.execute();
+            if (last) {
+                connection.commit();
+            }
+        } catch (SQLException | RuntimeException ex) {
+            connection.rollback();
+            connection.setAutoCommit(true);
+            throw ex;
+        }
+        if (last) {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private interface Work {
+        void execute() throws SQLException;
+    }
+
     /*
         example of writing arrays
 
@@ -57,87 +160,351 @@ public class RecordCreator extends Thread {
         StringBuilder fSb;
         StringBuilder vSb;
 
-        Object value;
-        ObjectMapper objectMapper = new ObjectMapper();
+        for (TableRow row : this.createRows()) {
+            String tableName = row.getPubSubTableInfo().getSubFullTableName();
+            if (row.isTruncate()) {
+                rSb.append(String.format("truncate table %s;", tableName));
+                continue;
+            }
+
+            if (row.getKind() == TableRow.Kind.DELETE) {
+                rSb.append(String.format("delete from %s where ", tableName));
+                for (int i = 0; i < row.getFieldNames().size(); i++) {
+                    if (i > 0) {
+                        rSb.append(" and ");
+                    }
+                    rSb.append(row.getFieldNames().get(i)).append(" = ");
+                    this.appendValue(rSb, row.getValues().get(i));
+                }
+                rSb.append(";");
+                continue;
+            }
 
-        for (String record : this.records) {
             fSb = new StringBuilder();
             vSb = new StringBuilder();
+            for (int i = 0; i < row.getFieldNames().size(); i++) {
+                if (i > 0) {
+                    fSb.append(",");
+                    vSb.append(",");
+                }
+                fSb.append(row.getFieldNames().get(i));
+                this.appendValue(vSb, row.getValues().get(i));
+            }
 
-            GeneratedRecord generatedRecord = null;
-            try {
-                generatedRecord = objectMapper.readValue(record, GeneratedRecord.class);
-            } catch (Exception ex) {
+            rSb.append(String.format("insert into %s (%s) ", tableName, fSb));
+            if (row.getKind() == TableRow.Kind.UPSERT) {
+                rSb.append(String.format("values (%s) ", vSb));
+                rSb.append(createConflictClause(row.getPubSubTableInfo(), row.getFieldNames()));
+                rSb.append(";");
+            } else {
+                rSb.append(String.format("values (%s);", vSb));
             }
+        }
 
-            if (generatedRecord != null) {
+        return rSb.toString();
+    }
 
-                String relationName = generatedRecord.getRelationName();
-                PubSubTableInfo pubSubTableInfo = this.pubSubTableInfoList
-                        .stream()
-                        .filter(ti -> ti.getPubFullTableName().equalsIgnoreCase(relationName) == true)
-                        .findFirst()
-                        .orElse(null);
+    /* on conflict of the key the other fields of the row are updated */
+    public static String createConflictClause(PubSubTableInfo pubSubTableInfo, List<String> fieldNames) {
+        List<String> keyColumns = pubSubTableInfo.getKeyColumns();
+        StringBuilder sb = new StringBuilder();
+        for (String fieldName : fieldNames) {
+            if (keyColumns.contains(fieldName) == false) {
+                sb.append((sb.length() == 0) ? "" : ",").append(String.format("%s = excluded.%s", fieldName, fieldName));
+            }
+        }
+        String conflict = String.format("on conflict (%s) ", String.join(",", keyColumns));
+        return (sb.length() == 0) ? conflict + "do nothing" : conflict + "do update set " + sb;
+    }
 
-                for (String fieldName : generatedRecord.getTupleData().keySet()) {
+    private void appendValue(StringBuilder sb, Object value) {
+        if (value instanceof String) {
+            sb.append("'").append(value).append("'");
+        } else {
+            sb.append(value);
+        }
+    }
 
-                    if (fieldName.equalsIgnoreCase(pubSubTableInfo.getPubCallInfoFieldName()) == true) {
-                        value = generatedRecord.getTupleData().get(fieldName);
-                        if (value == null) {
-                            continue;
-                        }
+    /*
+        The rows of the subscriber tables in the order of the changes, the records of the not
+        configured relations are skipped. The record which cannot be read fails the batch, so
+        it is not acknowledged and the source stalls (see DataListener.acknowledge).
+     */
+    public List<TableRow> createRows() throws Exception {
+        List<TableRow> rows = new ArrayList<>();
 
-                        String jsonData = value.toString();
-                        CallInfo callInfo = objectMapper.readValue(jsonData, CallInfo.class);
+        Object value;
+        MessageSerializer serializer = null;
+
+        for (ChangeRecord changeRecord : this.records) {
+            GeneratedRecord generatedRecord;
+            if (changeRecord.getChange() != null) {
+                generatedRecord = this.toGeneratedRecord(changeRecord.getChange());
+            } else {
+                if (serializer == null) {
+                    serializer = MessageSerializers.create(this.outputFormat);
+                }
+                try {
+                    generatedRecord = serializer.deserialize(changeRecord.getData());
+                } catch (IOException | RuntimeException ex) {
+                    throw new IOException(String.format("the record of the LSN: %d cannot be read: %s", changeRecord.getLsn(), ex), ex);
+                }
+            }
 
-                        String tn = callInfo.getTn();
-                        if (tn != null) {
-                            fSb.append("tn,");
-                            vSb.append(String.format("'%s',", tn));
-                        }
+            if (generatedRecord == null || generatedRecord.getType() == null) {
+                continue;
+            }
 
-                        String ip = callInfo.getIp();
-                        if (ip != null) {
-                            fSb.append("ip,");
-                            vSb.append(String.format("'%s',", ip));
-                        }
+            if (generatedRecord.getType().equals("truncate")) {
+                this.addTruncate(rows, generatedRecord);
+                continue;
+            }
 
-                        fSb.append("id,");
-                        vSb.append(String.format("%d,", callInfo.getId()));
+            /* begin, commit, origin, type and logical decoding messages have no rows */
+            if (generatedRecord.getTupleData() == null) {
+                continue;
+            }
 
-                        String fn = callInfo.getFn();
-                        if (fn != null) {
-                            fSb.append("fn,");
-                            vSb.append(String.format("'%s',", fn));
-                        }
-                    } else {
+            String relationName = generatedRecord.getRelationName();
+            TableRoutes.Route route = this.tableRoutes.find(relationName);
+            if (route == null) {
+                logger.warn("the relation: {} is not configured, the record is skipped", relationName);
+                continue;
+            }
+            PubSubTableInfo pubSubTableInfo = route.getPubSubTableInfo();
 
-                        value = generatedRecord.getTupleData().get(fieldName);
-                        if (value != null) {
-                            fSb.append(String.format("%s,", fieldName));
+            if (this.replica) {
+                this.addReplicaRows(rows, generatedRecord, pubSubTableInfo);
+                continue;
+            }
 
-                            if (value instanceof String) {
-                                vSb.append("'").append(value).append("',");
-                            } else {
-                                vSb.append(value).append(",");
-                            }
-                        }
+            TableRow row = new TableRow(pubSubTableInfo, TableRow.Kind.INSERT);
+            Object callInfo = null;
+            Change change = changeRecord.getChange();
+            if (change != null) {
+                TableRoutes.Columns columns = route.getColumns(change.getRelation());
+                for (int i = 0; i < change.getNumColumns(); i++) {
+                    value = change.getValue(i);
+                    if (value == null) {
+                        continue;
+                    }
+                    if (columns.getHandler(i) == TableRoutes.Handler.CALL_INFO) {
+                        callInfo = value;
+                    } else {
+                        row.add(change.getColumnName(i), value);
                     }
                 }
+            } else {
+                HashMap<String, Object> tupleData = generatedRecord.getTupleData();
+                String callInfoKey = route.findCallInfoKey(tupleData);
+                if (callInfoKey != null) {
+                    callInfo = tupleData.remove(callInfoKey);
+                }
+                for (Map.Entry<String, Object> field : tupleData.entrySet()) {
+                    if (field.getValue() != null) {
+                        row.add(field.getKey(), field.getValue());
+                    }
+                }
+            }
+            /* the fields of the call info follow the other fields whatever the position of the column is */
+            if (callInfo != null) {
+                addCallInfo(row, callInfoReader.readValue(callInfo.toString()));
+            }
+
+            row.add("action", generatedRecord.getType());
+            rows.add(row);
+        }
+
+        return this.replica ? this.compact(rows) : rows;
+    }
+
+    private static void addCallInfo(TableRow row, CallInfo callInfo) {
+        String tn = callInfo.getTn();
+        if (tn != null) {
+            row.add("tn", tn);
+        }
+
+        String ip = callInfo.getIp();
+        if (ip != null) {
+            row.add("ip", ip);
+        }
+
+        row.add("id", callInfo.getId());
+
+        String fn = callInfo.getFn();
+        if (fn != null) {
+            row.add("fn", fn);
+        }
+    }
+
+    /*
+        The delete keeps the key fields only, the unchanged TOASTed values are not written. The
+        update of the key deletes the row of the old key, the unchanged TOASTed values of the
+        moved row are taken from the old tuple when it is the whole row (FULL replica identity).
+        The delete without the whole key (a key value is NULL or not sent) would match no row,
+        it is logged and skipped.
+     */
+    private void addReplicaRows(List<TableRow> rows, GeneratedRecord generatedRecord, PubSubTableInfo pubSubTableInfo) {
+        HashMap<String, Object> tupleData = generatedRecord.getTupleData();
+        if (generatedRecord.getType().equals("delete")) {
+            addKeyRow(rows, pubSubTableInfo, tupleData);
+            return;
+        }
+
+        HashMap<String, Object> oldTupleData = generatedRecord.getOldTupleData();
+        if (oldTupleData != null && hasSameKey(pubSubTableInfo, oldTupleData, tupleData) == false) {
+            addKeyRow(rows, pubSubTableInfo, oldTupleData);
+        } else {
+            oldTupleData = null;
+        }
+
+        TableRow row = new TableRow(pubSubTableInfo, TableRow.Kind.UPSERT);
+        for (Map.Entry<String, Object> field : tupleData.entrySet()) {
+            Object value = field.getValue();
+            if (Change.UNCHANGED_TOAST.equals(value)) {
+                value = (oldTupleData != null) ? oldTupleData.get(field.getKey()) : null;
+                if (value == null || Change.UNCHANGED_TOAST.equals(value)) {
+                    continue;
+                }
+            }
+            row.add(field.getKey(), value);
+        }
+        rows.add(row);
+    }
 
+    private static void addKeyRow(List<TableRow> rows, PubSubTableInfo pubSubTableInfo, HashMap<String, Object> tupleData) {
+        TableRow row = new TableRow(pubSubTableInfo, TableRow.Kind.DELETE);
+        for (String keyColumn : pubSubTableInfo.getKeyColumns()) {
+            Object value = tupleData.get(keyColumn);
+            if (value == null || Change.UNCHANGED_TOAST.equals(value)) {
+                logger.warn("the delete from the {} table has no value of the key column: {}, it is skipped",
+                        pubSubTableInfo.getSubFullTableName(), keyColumn);
+                return;
+            }
+            row.add(keyColumn, value);
+        }
+        rows.add(row);
+    }
 
-                fSb.append("action");
-                vSb.append(String.format("'%s'", generatedRecord.getType()));
+    private static boolean hasSameKey(PubSubTableInfo pubSubTableInfo, HashMap<String, Object> oldTupleData, HashMap<String, Object> tupleData) {
+        for (String keyColumn : pubSubTableInfo.getKeyColumns()) {
+            if (Objects.equals(oldTupleData.get(keyColumn), tupleData.get(keyColumn)) == false) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-                rSb.append(String.format("insert into %s (%s) ", pubSubTableInfo.getSubFullTableName(), fSb));
-                rSb.append(String.format("values (%s);", vSb));
+    /* the last state of every row of the batch, see the class comment */
+    private List<TableRow> compact(List<TableRow> rows) {
+        List<TableRow> result = new ArrayList<>();
+        LinkedHashMap<List<Object>, TableRow> latest = new LinkedHashMap<>();
+        for (TableRow row : rows) {
+            if (row.isTruncate()) {
+                result.addAll(latest.values());
+                latest.clear();
+                result.add(row);
+                continue;
+            }
+
+            List<Object> key = new ArrayList<>();
+            key.add(row.getPubSubTableInfo().getSubFullTableName());
+            for (String keyColumn : row.getPubSubTableInfo().getKeyColumns()) {
+                key.add(row.get(keyColumn));
+            }
+
+            TableRow previous = latest.get(key);
+            if (previous == null || previous.getKind() == TableRow.Kind.DELETE || row.getKind() == TableRow.Kind.DELETE) {
+                latest.put(key, row);
+            } else {
+                latest.put(key, merge(previous, row));
             }
         }
+        result.addAll(latest.values());
 
-        return rSb.toString();
+        if (result.size() < rows.size()) {
+            logger.debug("the batch is compacted from {} to {} rows", rows.size(), result.size());
+        }
+        return result;
+    }
+
+    /* the later values win, the fields the later row has not (unchanged TOASTed values) are kept */
+    private static TableRow merge(TableRow previous, TableRow row) {
+        LinkedHashMap<String, Object> fields = new LinkedHashMap<>();
+        for (int i = 0; i < previous.getFieldNames().size(); i++) {
+            fields.put(previous.getFieldNames().get(i), previous.getValues().get(i));
+        }
+        for (int i = 0; i < row.getFieldNames().size(); i++) {
+            fields.put(row.getFieldNames().get(i), row.getValues().get(i));
+        }
+
+        TableRow merged = new TableRow(row.getPubSubTableInfo(), TableRow.Kind.UPSERT);
+        fields.forEach(merged::add);
+        return merged;
+    }
+
+    /* the change passed in-process, its values are decoded already */
+    private GeneratedRecord toGeneratedRecord(Change change) {
+        GeneratedRecord generatedRecord = new GeneratedRecord();
+        generatedRecord.setType(change.getType().getName());
+
+        if (change.getTruncatedRelations() != null) {
+            List<String> relationNames = new ArrayList<>(change.getTruncatedRelations().length);
+            for (Relation relation : change.getTruncatedRelations()) {
+                relationNames.add(relation.getFullName());
+            }
+            generatedRecord.setRelationNames(relationNames);
+        }
+
+        if (change.getValues() != null) {
+            generatedRecord.setRelationName(change.getRelation().getFullName());
+            LinkedHashMap<String, Object> tupleData = new LinkedHashMap<>();
+            for (int i = 0; i < change.getNumColumns(); i++) {
+                tupleData.put(change.getColumnName(i), change.getValue(i));
+            }
+            generatedRecord.setTupleData(tupleData);
+        }
+
+        if (change.getOldValues() != null) {
+            LinkedHashMap<String, Object> oldTupleData = new LinkedHashMap<>();
+            for (int i = 0; i < change.getNumColumns(); i++) {
+                oldTupleData.put(change.getColumnName(i), change.getOldValues()[i]);
+            }
+            generatedRecord.setOldTupleData(oldTupleData);
+        }
+        return generatedRecord;
+    }
+
+    /* one row or statement per truncated table, not a row per deleted row */
+    private void addTruncate(List<TableRow> rows, GeneratedRecord generatedRecord) {
+        if (generatedRecord.getRelationNames() == null || this.truncateMode == TruncateMode.IGNORE) {
+            return;
+        }
+
+        for (String relationName : generatedRecord.getRelationNames()) {
+            TableRoutes.Route route = this.tableRoutes.find(relationName);
+            if (route == null) {
+                continue;
+            }
+            PubSubTableInfo pubSubTableInfo = route.getPubSubTableInfo();
+
+            /* the replica has no rows for the actions */
+            if (this.truncateMode == TruncateMode.TRUNCATE || this.replica) {
+                rows.add(new TableRow(pubSubTableInfo, TableRow.Kind.TRUNCATE));
+            } else {
+                TableRow row = new TableRow(pubSubTableInfo, TableRow.Kind.INSERT);
+                row.add("action", "truncate");
+                rows.add(row);
+            }
+        }
+    }
+
+    public int getRecordsCount() {
+        return this.records.size();
     }
 
-    public Connection getConnection() {
-        return this.connection;
+    /* the last record of the batch, the records are in the order of the replication stream */
+    public ChangeRecord getLastRecord() {
+        return this.records.get(this.records.size() - 1);
     }
 }
@@ -0,0 +1,21 @@
+package com.seizure.subscriber;
+
+import com.seizure.subscriber.models.TableRow;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/*
+    Writes the rows of the batch to the subscriber other way than the insert statements
+    built by RecordCreator (see subscriber.applyMode). The rows are in the order of the
+    changes, the caller commits them. One applier serves all the workers of the ApplyPool.
+ */
+public interface RowApplier {
+
+    void apply(Connection connection, List<TableRow> rows) throws SQLException;
+
+    /* the connection is closed or given back to the pool, the applier releases what it keeps for it */
+    default void evict(Connection connection) {
+    }
+}
@@ -4,6 +4,7 @@ import com.seizure.models.ConnectionInfo;
 import com.seizure.models.PubSubTableInfo;
 import com.seizure.publisher.ConnectionManager;
 import com.seizure.subscriber.models.ColumnMetaData;
+import com.seizure.subscriber.models.SubscriberMode;
 import com.seizure.subscriber.models.TableMetaData;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -13,7 +14,12 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 public class SettingUp implements AutoCloseable {
     private static final Logger logger = LogManager.getLogger(SettingUp.class);
@@ -21,10 +27,12 @@ public class SettingUp implements AutoCloseable {
     private final List<PubSubTableInfo> pubSubTableInfoList;
     private final ConnectionManager publisherConnectionManager;
     private final ConnectionManager subscriberConnectionManager;
+    private final SubscriberMode subscriberMode;
 
     public SettingUp(ConnectionInfo publisherConnectionInfo,
                      ConnectionInfo subscriberConnectionInfo,
-                     List<PubSubTableInfo> pubSubTableInfoList) {
+                     List<PubSubTableInfo> pubSubTableInfoList,
+                     SubscriberMode subscriberMode) {
         this.publisherConnectionManager = new ConnectionManager(publisherConnectionInfo.getServer(),
                 publisherConnectionInfo.getDatabase(),
                 publisherConnectionInfo.getUser(),
@@ -36,6 +44,7 @@ public class SettingUp implements AutoCloseable {
                 subscriberConnectionInfo.getPassword());
 
         this.pubSubTableInfoList = pubSubTableInfoList;
+        this.subscriberMode = subscriberMode;
     }
 
     // https://www.baeldung.com/jdbc-database-metadata
@@ -72,6 +81,72 @@ public class SettingUp implements AutoCloseable {
         return result;
     }
 
+    /* the columns of the unique index of the replica identity (publisher.publicationTable<i>.uniqueIndex) or of the primary key */
+    private List<String> getKeyColumns(PubSubTableInfo pubSubTableInfo) throws SQLException {
+        DatabaseMetaData databaseMetaData = this.publisherConnectionManager.getSQLConnection().getMetaData();
+        TreeMap<Integer, String> columns = new TreeMap<>();
+        String uniqueIndex = pubSubTableInfo.getPubUniqueIndex();
+        if (uniqueIndex.length() > 0) {
+            try (ResultSet resultSet = databaseMetaData.getIndexInfo(null, pubSubTableInfo.getPubSchemaName(), pubSubTableInfo.getPubTableName(), true, false)) {
+                while (resultSet.next()) {
+                    if (uniqueIndex.equalsIgnoreCase(resultSet.getString("INDEX_NAME"))) {
+                        columns.put((int) resultSet.getShort("ORDINAL_POSITION"), resultSet.getString("COLUMN_NAME"));
+                    }
+                }
+            }
+        } else {
+            try (ResultSet resultSet = databaseMetaData.getPrimaryKeys(null, pubSubTableInfo.getPubSchemaName(), pubSubTableInfo.getPubTableName())) {
+                while (resultSet.next()) {
+                    columns.put((int) resultSet.getShort("KEY_SEQ"), resultSet.getString("COLUMN_NAME"));
+                }
+            }
+        }
+
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException(String.format("the replica of the %s table needs its unique index or primary key", pubSubTableInfo.getPubFullTableName()));
+        }
+
+        /* the NULL key neither matches the delete nor conflicts with the upsert, the key columns have to be NOT NULL */
+        try (ResultSet resultSet = databaseMetaData.getColumns(null, pubSubTableInfo.getPubSchemaName(), pubSubTableInfo.getPubTableName(), null)) {
+            while (resultSet.next()) {
+                String columnName = resultSet.getString("COLUMN_NAME");
+                if (columns.containsValue(columnName) && resultSet.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls) {
+                    throw new IllegalArgumentException(String.format("the key column %s of the %s table is nullable, its replica cannot be applied",
+                            columnName, pubSubTableInfo.getPubFullTableName()));
+                }
+            }
+        }
+        logger.info("the key of the {} table: {}", pubSubTableInfo.getPubFullTableName(), columns.values());
+        return new ArrayList<>(columns.values());
+    }
+
+    /* the upserts of the replica name the key columns in ON CONFLICT, the table needs the primary key or the unique index of exactly them */
+    private void checkSubscriberKey(String schemaName, String tableName, List<String> keyColumns, ConnectionManager connectionManager) throws SQLException {
+        Set<String> key = new HashSet<>();
+        for (String keyColumn : keyColumns) {
+            key.add(keyColumn.toLowerCase());
+        }
+
+        DatabaseMetaData databaseMetaData = connectionManager.getSQLConnection().getMetaData();
+        Map<String, Set<String>> indexes = new HashMap<>();
+        try (ResultSet resultSet = databaseMetaData.getIndexInfo(null, schemaName, tableName, true, false)) {
+            while (resultSet.next()) {
+                /* the partial index cannot be the arbiter of ON CONFLICT without its predicate */
+                if (resultSet.getString("COLUMN_NAME") == null || resultSet.getString("FILTER_CONDITION") != null) {
+                    continue;
+                }
+                indexes.computeIfAbsent(resultSet.getString("INDEX_NAME"), name -> new HashSet<>())
+                        .add(resultSet.getString("COLUMN_NAME").toLowerCase());
+            }
+        }
+
+        if (indexes.containsValue(key) == false) {
+            throw new IllegalArgumentException(String.format("the replica table %s.%s has no primary key or unique index on (%s), its upserts cannot be applied",
+                    schemaName, tableName, String.join(",", keyColumns)));
+        }
+        logger.info("the replica table {}.{} has the unique key: {}", schemaName, tableName, keyColumns);
+    }
+
     private boolean tableExists(final String schemaName, final String tableName, final ConnectionManager connectionManager) throws SQLException {
         final String sql = "select exists  (select 1 from information_schema.tables " +
                 String.format("where table_schema = '%s' ", schemaName) +
@@ -93,6 +168,11 @@ public class SettingUp implements AutoCloseable {
         this.subscriberConnectionManager.createSQLConnection();
 
         List<TableMetaData> tableMetaDataList = this.getTableMetaDataList(this.pubSubTableInfoList);
+        if (this.subscriberMode == SubscriberMode.REPLICA) {
+            for (PubSubTableInfo pubSubTableInfo : this.pubSubTableInfoList) {
+                pubSubTableInfo.setKeyColumns(this.getKeyColumns(pubSubTableInfo));
+            }
+        }
 
         String schemaName;
         String tableName;
@@ -103,9 +183,13 @@ public class SettingUp implements AutoCloseable {
             tableName = this.pubSubTableInfoList.get(i).getSubTableName();
             if (this.tableExists(schemaName, tableName, this.subscriberConnectionManager) == false) {
                 tableMetaData = tableMetaDataList.get(i);
-                this.createSubscriberTable(schemaName, tableName, tableMetaData, this.subscriberConnectionManager);
+                this.createSubscriberTable(schemaName, tableName, tableMetaData, this.pubSubTableInfoList.get(i).getKeyColumns(),
+                        this.subscriberConnectionManager);
             } else {
                 logger.info("the subscriber has the table - '{}.{}' already", schemaName, tableName);
+                if (this.subscriberMode == SubscriberMode.REPLICA) {
+                    this.checkSubscriberKey(schemaName, tableName, this.pubSubTableInfoList.get(i).getKeyColumns(), this.subscriberConnectionManager);
+                }
             }
         }
 
@@ -122,7 +206,8 @@ public class SettingUp implements AutoCloseable {
         logger.info("done.");
     }
 
-    private void createSubscriberTable(String schemaName, String tableName, TableMetaData tableMetaData, ConnectionManager connectionManager) throws SQLException {
+    private void createSubscriberTable(String schemaName, String tableName, TableMetaData tableMetaData, List<String> keyColumns,
+                                       ConnectionManager connectionManager) throws SQLException {
         StringBuilder sb = new StringBuilder();
         sb.append(String.format("create table %s.%s (", schemaName, tableName));
         for (ColumnMetaData columnMetaData : tableMetaData.getColumnMetaDataList()) {
@@ -146,14 +231,19 @@ public class SettingUp implements AutoCloseable {
             }
             sb.append(",");
         }
-        sb.append("action character varying(50),");
+        if (this.subscriberMode == SubscriberMode.REPLICA) {
+            /* the upserts of the replica need the unique key */
+            sb.append(String.format("primary key (%s)", String.join(",", keyColumns)));
+        } else {
+            sb.append("action character varying(50),");
 
-        sb.append("tn character varying(150),");
-        sb.append("ip character varying(50),");
-        sb.append("id integer,");
-        sb.append("fn character varying(150),");
+            sb.append("tn character varying(150),");
+            sb.append("ip character varying(50),");
+            sb.append("id integer,");
+            sb.append("fn character varying(150),");
 
-        sb.append("timecreated timestamp without time zone NOT NULL DEFAULT now()");
+            sb.append("timecreated timestamp without time zone NOT NULL DEFAULT now()");
+        }
         sb.append(")");
         String sql = sb.toString();
 
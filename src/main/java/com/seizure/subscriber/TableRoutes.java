@@ -0,0 +1,136 @@
+package com.seizure.subscriber;
+
+import com.seizure.models.PubSubTableInfo;
+import com.seizure.publisher.models.Relation;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+    The subscriber table of every configured publisher table, built once when the subscriber
+    starts and shared by all batches. The relation is found by one lookup of its name as the
+    stream sends it (schema.table), the name is matched ignoring the case as the configuration
+    is: the configured names are normalized when the routes are built, the name of the stream
+    which differs from them is normalized once and remembered.
+
+    The route knows the special columns of the table: the handler of every column of the
+    relation is resolved once (see Columns) and made again when the relation message of the
+    stream changes the relation, so the fields of the row are not compared with the
+    configuration one by one.
+
+    The routes are not changed after they are built, the apply workers read them without locks,
+    the remembered names and columns are published by the concurrent map and volatile fields.
+ */
+public class TableRoutes {
+    /* the marker of the remembered name of the relation which is not configured */
+    private static final Route NOT_CONFIGURED = new Route(null);
+
+    private final Map<String, Route> routes;
+    private final ConcurrentHashMap<String, Route> resolved = new ConcurrentHashMap<>();
+
+    public TableRoutes(List<PubSubTableInfo> pubSubTableInfoList) {
+        Map<String, Route> routes = new HashMap<>();
+        for (PubSubTableInfo pubSubTableInfo : pubSubTableInfoList) {
+            /* the first configured table wins, as it did when the list was searched */
+            Route route = routes.get(normalize(pubSubTableInfo.getPubFullTableName()));
+            if (route == null) {
+                route = new Route(pubSubTableInfo);
+                routes.put(normalize(pubSubTableInfo.getPubFullTableName()), route);
+            }
+            /* the name as it is configured is found without the case conversion */
+            routes.putIfAbsent(pubSubTableInfo.getPubFullTableName(), route);
+        }
+        this.routes = Collections.unmodifiableMap(routes);
+    }
+
+    /* null - the relation is not configured */
+    public Route find(String relationName) {
+        if (relationName == null) {
+            return null;
+        }
+        Route route = this.routes.get(relationName);
+        if (route == null) {
+            route = this.resolved.computeIfAbsent(relationName, name -> this.routes.getOrDefault(normalize(name), NOT_CONFIGURED));
+        }
+        return (route != NOT_CONFIGURED) ? route : null;
+    }
+
+    private static String normalize(String relationName) {
+        return relationName.toLowerCase(Locale.ROOT);
+    }
+
+    public enum Handler {
+        VALUE,     // the column is written as it is
+        CALL_INFO  // the column is written as the fields of the call info (tn, ip, id, fn)
+    }
+
+    public static class Route {
+        private final PubSubTableInfo pubSubTableInfo;
+        private final String callInfoFieldName; // null - the table has no call info field
+        /* the columns of the last relation routed here */
+        private volatile Columns columns;
+        /* the name of the call info field in the serialized records, found in the first record having it */
+        private volatile String callInfoKey;
+
+        Route(PubSubTableInfo pubSubTableInfo) {
+            this.pubSubTableInfo = pubSubTableInfo;
+            this.callInfoFieldName = (pubSubTableInfo != null) ? pubSubTableInfo.getPubCallInfoFieldName() : null;
+        }
+
+        public PubSubTableInfo getPubSubTableInfo() {
+            return pubSubTableInfo;
+        }
+
+        /* the relation message makes a new Relation, so its columns are resolved again */
+        public Columns getColumns(Relation relation) {
+            Columns columns = this.columns;
+            if (columns == null || columns.relation != relation) {
+                columns = new Columns(relation, this.callInfoFieldName);
+                this.columns = columns;
+            }
+            return columns;
+        }
+
+        /* the call info field of the serialized record (the field names of the relation), null - it has none */
+        public String findCallInfoKey(Map<String, Object> tupleData) {
+            if (this.callInfoFieldName == null) {
+                return null;
+            }
+            String callInfoKey = this.callInfoKey;
+            if (callInfoKey == null) {
+                for (String fieldName : tupleData.keySet()) {
+                    if (this.callInfoFieldName.equalsIgnoreCase(fieldName)) {
+                        callInfoKey = fieldName;
+                        this.callInfoKey = callInfoKey;
+                        break;
+                    }
+                }
+            }
+            return callInfoKey;
+        }
+    }
+
+    /* the handler of every column of the relation, by the column index */
+    public static class Columns {
+        private final Relation relation;
+        private final Handler[] handlers;
+
+        Columns(Relation relation, String callInfoFieldName) {
+            this.relation = relation;
+            this.handlers = new Handler[relation.getColumns().length];
+            for (int i = 0; i < this.handlers.length; i++) {
+                String columnName = relation.getColumn(i).getName();
+                this.handlers[i] = (callInfoFieldName != null && callInfoFieldName.equalsIgnoreCase(columnName))
+                        ? Handler.CALL_INFO : Handler.VALUE;
+            }
+        }
+
+        public Handler getHandler(int index) {
+            return this.handlers[index];
+        }
+    }
+}
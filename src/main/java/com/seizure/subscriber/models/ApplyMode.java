@@ -0,0 +1,13 @@
+package com.seizure.subscriber.models;
+
+/*
+    How the subscriber writes the rows of the batch:
+    INSERT - an insert statement per row,
+    COPY - a COPY ... FROM STDIN per table (see CopyApplier),
+    PREPARED - the cached parameterized insert statements by the JDBC batches (see PreparedApplier).
+ */
+public enum ApplyMode {
+    INSERT,
+    COPY,
+    PREPARED
+}
@@ -1,13 +1,20 @@
 package com.seizure.subscriber.models;
 
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
 import java.util.HashMap;
+import java.util.List;
 
+/* the other fields of the truncate and logical decoding messages are not used by the subscriber */
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class GeneratedRecord {
 
     private HashMap<String, Object> tupleData;
+    private HashMap<String, Object> oldTupleData; /* update: the old key or tuple (the replica mode), null - not sent */
     private String relationName;
     private String type;
+    private List<String> relationNames; /* truncate */
 
     public void setTupleData(HashMap<String, Object> tupleData) {
         this.tupleData = tupleData;
@@ -25,6 +32,14 @@ public class GeneratedRecord {
         return tupleData;
     }
 
+    public HashMap<String, Object> getOldTupleData() {
+        return oldTupleData;
+    }
+
+    public void setOldTupleData(HashMap<String, Object> oldTupleData) {
+        this.oldTupleData = oldTupleData;
+    }
+
     public String getRelationName() {
         return relationName;
     }
@@ -32,4 +47,12 @@ public class GeneratedRecord {
     public String getType() {
         return type;
     }
+
+    public List<String> getRelationNames() {
+        return relationNames;
+    }
+
+    public void setRelationNames(List<String> relationNames) {
+        this.relationNames = relationNames;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,11 @@
+package com.seizure.subscriber.models;
+
+/*
+    What the subscriber table is:
+    AUDIT - the log of the changes, every change adds a row with the action,
+    REPLICA - the copy of the publisher table, the changes are upserted and deleted by the key.
+ */
+public enum SubscriberMode {
+    AUDIT,
+    REPLICA
+}
@@ -0,0 +1,64 @@
+package com.seizure.subscriber.models;
+
+import com.seizure.models.PubSubTableInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    One row of the subscriber table made from a change: the fields in the order they are
+    written. What is done with the row:
+    INSERT - the row is added (the audit mode, null values are not added),
+    UPSERT - the row is added or its fields are updated (the replica mode),
+    DELETE - the row having the key fields is deleted (the replica mode),
+    TRUNCATE - the whole table is truncated, there are no fields.
+ */
+public class TableRow {
+    public enum Kind {
+        INSERT,
+        UPSERT,
+        DELETE,
+        TRUNCATE
+    }
+
+    private final PubSubTableInfo pubSubTableInfo;
+    private final Kind kind;
+    private final List<String> fieldNames = new ArrayList<>();
+    private final List<Object> values = new ArrayList<>();
+
+    public TableRow(PubSubTableInfo pubSubTableInfo, Kind kind) {
+        this.pubSubTableInfo = pubSubTableInfo;
+        this.kind = kind;
+    }
+
+    public void add(String fieldName, Object value) {
+        this.fieldNames.add(fieldName);
+        this.values.add(value);
+    }
+
+    /* null - the row has no such field */
+    public Object get(String fieldName) {
+        int index = this.fieldNames.indexOf(fieldName);
+        return (index < 0) ? null : this.values.get(index);
+    }
+
+    public PubSubTableInfo getPubSubTableInfo() {
+        return pubSubTableInfo;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public boolean isTruncate() {
+        return kind == Kind.TRUNCATE;
+    }
+
+    public List<String> getFieldNames() {
+        return fieldNames;
+    }
+
+    public List<Object> getValues() {
+        return values;
+    }
+}
@@ -0,0 +1,13 @@
+package com.seizure.subscriber.models;
+
+/*
+    What the subscriber does when a publication table is truncated:
+    AUDIT - one row with the action 'truncate' is added to the subscriber table,
+    TRUNCATE - the subscriber table is truncated as well,
+    IGNORE - nothing.
+ */
+public enum TruncateMode {
+    AUDIT,
+    TRUNCATE,
+    IGNORE
+}
@@ -0,0 +1,98 @@
+package com.seizure.publisher;
+
+import com.seizure.publisher.models.MessageType;
+import com.seizure.publisher.models.ReplicationMessage;
+import com.seizure.publisher.models.TupleView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import static com.seizure.publisher.PgOutputMessages.INT4;
+import static com.seizure.publisher.PgOutputMessages.TEXT;
+import static com.seizure.publisher.PgOutputMessages.UNCHANGED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DecodeTests {
+    private static final int RELATION_ID = 16401;
+
+    private Decode decode;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        this.decode = new Decode();
+        this.decode.decodeLogicalReplicationMessageSimple(PgOutputMessages.relation(RELATION_ID, "public", "documents",
+                new String[]{"id", "title", "body"}, new int[]{INT4, TEXT, TEXT}, 1), false);
+    }
+
+    @Test
+    void tupleViewPointsIntoTheMessage() throws Exception {
+        ByteBuffer buffer = PgOutputMessages.insert(RELATION_ID, "42", "héllo", null);
+        ReplicationMessage message = new ReplicationMessage();
+
+        assertTrue(this.decode.decodeLogicalReplicationMessageTyped(buffer, message, false));
+        assertEquals(MessageType.INSERT, message.getType());
+        assertEquals("public.documents", message.getRelation().getFullName());
+
+        TupleView tuple = message.getNewTuple();
+        assertEquals(3, tuple.getNumColumns());
+        /* nothing is copied, the values are read from the message buffer */
+        assertSame(buffer, tuple.getBuffer());
+        assertSame(buffer, tuple.getBuffer(1));
+        assertEquals('t', tuple.getKind(0));
+        assertEquals(42L, tuple.getLong(0));
+        assertEquals("héllo", tuple.getString(1));
+        assertEquals("héllo".getBytes("UTF-8").length, tuple.getLength(1));
+        assertTrue(tuple.isNull(2));
+    }
+
+    @Test
+    void tupleViewIsReusedByTheNextMessage() throws Exception {
+        ReplicationMessage message = new ReplicationMessage();
+        this.decode.decodeLogicalReplicationMessageTyped(PgOutputMessages.insert(RELATION_ID, "1", "first", "a"), message, false);
+        TupleView tuple = message.getNewTuple();
+
+        ByteBuffer buffer = PgOutputMessages.update(RELATION_ID, 'K', null, "1", "second", UNCHANGED);
+        this.decode.decodeLogicalReplicationMessageTyped(buffer, message, false);
+
+        assertSame(tuple, message.getNewTuple());
+        assertSame(buffer, tuple.getBuffer());
+        assertEquals("second", tuple.getString(1));
+        assertTrue(tuple.isUnchangedToast(2));
+        assertFalse(message.hasOldTuple());
+    }
+
+    @Test
+    void oldKeyOfTheUpdateIsKeptOnlyWhenAsked() throws Exception {
+        ReplicationMessage message = new ReplicationMessage();
+        ByteBuffer buffer = PgOutputMessages.update(RELATION_ID, 'K', new String[]{"1", null, null}, "2", "moved", "b");
+
+        this.decode.decodeLogicalReplicationMessageTyped(buffer, message, false);
+        assertFalse(message.hasOldTuple());
+
+        this.decode.setOldTuples(true);
+        this.decode.decodeLogicalReplicationMessageTyped(buffer, message, false);
+        assertTrue(message.hasOldTuple());
+        assertEquals(1L, message.getOldTuple().getLong(0));
+        assertEquals(2L, message.getNewTuple().getLong(0));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void simpleDecodeMakesTheSameValues() throws Exception {
+        Map<String, Object> message = this.decode.decodeLogicalReplicationMessageSimple(
+                PgOutputMessages.insert(RELATION_ID, "7", "title", null), false);
+
+        assertEquals("insert", message.get("type"));
+        assertEquals("public.documents", message.get("relationName"));
+        Map<String, Object> tupleData = (Map<String, Object>) message.get("tupleData");
+        assertEquals(7, ((Number) tupleData.get("id")).intValue());
+        assertEquals("title", tupleData.get("title"));
+        assertTrue(tupleData.containsKey("body"));
+        assertEquals(null, tupleData.get("body"));
+    }
+}
@@ -0,0 +1,82 @@
+package com.seizure.publisher;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntObjectMapTests {
+
+    @Test
+    void keysAreFoundAfterResize() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        for (int key = -500; key < 1500; key++) {
+            assertNull(map.put(key, "v" + key));
+        }
+
+        assertEquals(2000, map.size());
+        for (int key = -500; key < 1500; key++) {
+            assertEquals("v" + key, map.get(key));
+        }
+        assertNull(map.get(1500));
+        assertFalse(map.containsKey(-501));
+    }
+
+    @Test
+    void putReplacesTheValue() {
+        IntObjectMap<String> map = new IntObjectMap<>(4);
+        assertNull(map.put(0, "first"));
+        assertEquals("first", map.put(0, "second"));
+
+        assertEquals(1, map.size());
+        assertEquals("second", map.get(0));
+        assertThrows(IllegalArgumentException.class, () -> map.put(1, null));
+    }
+
+    @Test
+    void removeKeepsTheOtherKeysReachable() {
+        IntObjectMap<Integer> map = new IntObjectMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(16401);
+
+        /* the random keys collide and make long probe sequences, the removals shift them back */
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(512) * 1024;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (int key = 0; key < 512 * 1024; key += 1024) {
+            assertEquals(expected.get(key), map.get(key));
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+        }
+    }
+
+    @Test
+    void copyIsNotChangedByTheOriginal() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        map.put(1, "one");
+        IntObjectMap<String> copy = map.copy();
+
+        map.put(2, "two");
+        map.remove(1);
+
+        assertEquals("one", copy.get(1));
+        assertFalse(copy.containsKey(2));
+        assertTrue(map.containsKey(2));
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(1, copy.size());
+    }
+}
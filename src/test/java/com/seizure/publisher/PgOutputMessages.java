@@ -0,0 +1,99 @@
+package com.seizure.publisher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+    The pgoutput messages (protocol version 1, text values) the tests decode, the same bytes
+    the server sends. The value of the tuple is its text, null - NULL ('n'), UNCHANGED - the
+    unchanged TOASTed value ('u').
+ */
+final class PgOutputMessages {
+    static final String UNCHANGED = new String("unchanged");
+
+    static final int INT4 = 23;
+    static final int TEXT = 25;
+
+    private PgOutputMessages() {
+    }
+
+    /* 'R', (Int32) relation id, (String) namespace, (String) name, (Int8) replica identity, (Int16) columns; the first keyColumns are the key */
+    static ByteBuffer relation(int relationId, String namespace, String name, String[] columns, int[] types, int keyColumns) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream message = new DataOutputStream(bytes);
+        message.writeByte('R');
+        message.writeInt(relationId);
+        writeString(message, namespace);
+        writeString(message, name);
+        message.writeByte('d');
+        message.writeShort(columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            message.writeByte(i < keyColumns ? 1 : 0);
+            writeString(message, columns[i]);
+            message.writeInt(types[i]);
+            message.writeInt(-1);
+        }
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    /* 'I', (Int32) relation id, 'N', TupleData */
+    static ByteBuffer insert(int relationId, String... values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream message = new DataOutputStream(bytes);
+        message.writeByte('I');
+        message.writeInt(relationId);
+        message.writeByte('N');
+        writeTuple(message, values);
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    /* 'U', (Int32) relation id, ['K' or 'O', TupleData], 'N', TupleData */
+    static ByteBuffer update(int relationId, char oldTupleType, String[] oldValues, String... values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream message = new DataOutputStream(bytes);
+        message.writeByte('U');
+        message.writeInt(relationId);
+        if (oldValues != null) {
+            message.writeByte(oldTupleType);
+            writeTuple(message, oldValues);
+        }
+        message.writeByte('N');
+        writeTuple(message, values);
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    /* 'D', (Int32) relation id, 'K', TupleData of the key (the other columns are NULL) */
+    static ByteBuffer delete(int relationId, String... keyValues) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream message = new DataOutputStream(bytes);
+        message.writeByte('D');
+        message.writeInt(relationId);
+        message.writeByte('K');
+        writeTuple(message, keyValues);
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private static void writeTuple(DataOutputStream message, String[] values) throws IOException {
+        message.writeShort(values.length);
+        for (String value : values) {
+            if (value == null) {
+                message.writeByte('n');
+            } else if (value == UNCHANGED) {
+                message.writeByte('u');
+            } else {
+                byte[] text = value.getBytes(StandardCharsets.UTF_8);
+                message.writeByte('t');
+                message.writeInt(text.length);
+                message.write(text);
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream message, String value) throws IOException {
+        message.write(value.getBytes(StandardCharsets.UTF_8));
+        message.writeByte(0);
+    }
+}
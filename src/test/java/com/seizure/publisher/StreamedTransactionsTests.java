@@ -0,0 +1,122 @@
+package com.seizure.publisher;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamedTransactionsTests {
+    private static final int XID = 750;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void spilledChangesAreReplayedInOrder() throws Exception {
+        try (StreamedTransactions transactions = new StreamedTransactions(256, 1024, this.directory)) {
+            for (int i = 0; i < 100; i++) {
+                transactions.append(XID, change(XID, i), 1000 + i);
+            }
+            assertTrue(segmentCount() > 0);
+
+            List<Integer> changes = this.replay(transactions.commit(XID, 5000, 5048, 676_000_000L));
+            assertEquals(100, changes.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, changes.get(i));
+            }
+            assertTrue(transactions.isEmpty());
+            assertEquals(0, segmentCount());
+        }
+    }
+
+    @Test
+    void abortedSubTransactionIsSkipped() throws Exception {
+        int subXid = XID + 1;
+        try (StreamedTransactions transactions = new StreamedTransactions(128, 1024, this.directory)) {
+            for (int i = 0; i < 30; i++) {
+                transactions.append(XID, change((i % 3 == 0) ? subXid : XID, i), 1000 + i);
+            }
+            transactions.abort(XID, subXid);
+
+            List<Integer> changes = this.replay(transactions.commit(XID, 5000, 5048, 0));
+            assertEquals(20, changes.size());
+            for (int change : changes) {
+                assertTrue(change % 3 != 0);
+            }
+        }
+    }
+
+    @Test
+    void abortedTransactionIsReleased() throws Exception {
+        try (StreamedTransactions transactions = new StreamedTransactions(64, 1024, this.directory)) {
+            for (int i = 0; i < 20; i++) {
+                transactions.append(XID, change(XID, i), 1000 + i);
+            }
+            transactions.abort(XID, XID);
+
+            assertTrue(transactions.isEmpty());
+            assertEquals(0, segmentCount());
+            assertNull(transactions.commit(XID, 5000, 5048, 0));
+        }
+    }
+
+    @Test
+    void firstLSNIsTheOldestOpenTransaction() throws Exception {
+        try (StreamedTransactions transactions = new StreamedTransactions(1 << 20, 1 << 20, this.directory)) {
+            assertEquals(Long.MAX_VALUE, transactions.getFirstLSN());
+
+            transactions.append(XID, change(XID, 0), 2000);
+            transactions.append(XID + 10, change(XID + 10, 0), 3000);
+            transactions.append(XID, change(XID, 1), 4000);
+            assertEquals(2000, transactions.getFirstLSN());
+
+            this.replay(transactions.commit(XID, 5000, 5048, 0));
+            assertEquals(3000, transactions.getFirstLSN());
+        }
+    }
+
+    /* the transaction read back: begin, the numbers of the changes, commit */
+    private List<Integer> replay(StreamedTransactions.Reader reader) throws IOException {
+        List<Integer> changes = new ArrayList<>();
+        try (reader) {
+            ByteBuffer begin = reader.next();
+            assertEquals('B', (char) begin.get(0));
+            assertEquals(XID, begin.getInt(17));
+
+            ByteBuffer buffer;
+            while ((buffer = reader.next()) != null) {
+                if (buffer.get(0) == 'C') {
+                    assertEquals(5000, buffer.getLong(2));
+                    assertNull(reader.next());
+                    break;
+                }
+                assertEquals('I', (char) buffer.get(0));
+                changes.add(buffer.getInt(1));
+            }
+        }
+        return changes;
+    }
+
+    /* 'I', (Int32) xid of the subtransaction, (Int32) the number of the change and some bytes */
+    private static ByteBuffer change(int subXid, int number) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + 4 + 16);
+        buffer.put((byte) 'I').putInt(subXid).putInt(number);
+        return buffer.put(new byte[16]).flip();
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> paths = Files.list(this.directory)) {
+            return paths.count();
+        }
+    }
+}
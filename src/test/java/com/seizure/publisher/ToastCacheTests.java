@@ -0,0 +1,168 @@
+package com.seizure.publisher;
+
+import com.seizure.publisher.models.ReplicationMessage;
+import com.seizure.publisher.models.TupleView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import static com.seizure.publisher.PgOutputMessages.INT4;
+import static com.seizure.publisher.PgOutputMessages.TEXT;
+import static com.seizure.publisher.PgOutputMessages.UNCHANGED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ToastCacheTests {
+    private static final int RELATION_ID = 16403;
+    private static final int BODY = 2;
+
+    private Decode decode;
+    private ToastCache toastCache;
+    private final ReplicationMessage message = new ReplicationMessage();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        this.decode = new Decode();
+        this.toastCache = new ToastCache(64 * 1024, 64);
+        this.decode.setToastCache(this.toastCache);
+        this.decode.decodeLogicalReplicationMessageSimple(relation("body"), false);
+    }
+
+    @Test
+    void unchangedValueIsResolvedFromTheStoredRow() throws Exception {
+        String body = body('a');
+        this.apply(PgOutputMessages.insert(RELATION_ID, "1", "title", body));
+        assertEquals(1, this.toastCache.size());
+
+        TupleView tuple = this.apply(PgOutputMessages.update(RELATION_ID, 'K', null, "1", "renamed", UNCHANGED));
+
+        assertFalse(tuple.isUnchangedToast(BODY));
+        assertEquals(body, tuple.getString(BODY));
+        assertEquals("renamed", tuple.getString(1));
+    }
+
+    @Test
+    void smallValuesAreNotStored() throws Exception {
+        this.apply(PgOutputMessages.insert(RELATION_ID, "1", "title", "short"));
+        assertEquals(0, this.toastCache.size());
+
+        TupleView tuple = this.apply(PgOutputMessages.update(RELATION_ID, 'K', null, "1", "title", UNCHANGED));
+        assertTrue(tuple.isUnchangedToast(BODY));
+    }
+
+    @Test
+    void updateOfTheKeyMovesTheRow() throws Exception {
+        String body = body('b');
+        this.apply(PgOutputMessages.insert(RELATION_ID, "1", "title", body));
+
+        TupleView tuple = this.apply(PgOutputMessages.update(RELATION_ID, 'K', new String[]{"1", null, null}, "2", "title", UNCHANGED));
+        assertEquals(body, tuple.getString(BODY));
+        assertEquals(1, this.toastCache.size());
+
+        tuple = this.apply(PgOutputMessages.update(RELATION_ID, 'K', null, "2", "again", UNCHANGED));
+        assertEquals(body, tuple.getString(BODY));
+    }
+
+    @Test
+    void deleteEvictsTheRow() throws Exception {
+        this.apply(PgOutputMessages.insert(RELATION_ID, "1", "title", body('c')));
+        this.apply(PgOutputMessages.delete(RELATION_ID, "1", null, null));
+
+        assertEquals(0, this.toastCache.size());
+        assertEquals(0, this.toastCache.getUsedBytes());
+    }
+
+    @Test
+    void changedRelationEvictsItsRows() throws Exception {
+        this.apply(PgOutputMessages.insert(RELATION_ID, "1", "title", body('d')));
+        this.decode.decodeLogicalReplicationMessageSimple(relation("content"), false);
+
+        assertEquals(0, this.toastCache.size());
+    }
+
+    @Test
+    void eldestRowsAreEvictedOverTheBudget() throws Exception {
+        this.toastCache = new ToastCache(2048, 64);
+        this.decode.setToastCache(this.toastCache);
+
+        for (int id = 1; id <= 50; id++) {
+            this.apply(PgOutputMessages.insert(RELATION_ID, String.valueOf(id), "title", body('e')));
+            assertTrue(this.toastCache.getUsedBytes() <= 2048);
+        }
+        assertTrue(this.toastCache.size() < 50);
+
+        TupleView tuple = this.apply(PgOutputMessages.update(RELATION_ID, 'K', null, "1", "title", UNCHANGED));
+        assertTrue(tuple.isUnchangedToast(BODY));
+        tuple = this.apply(PgOutputMessages.update(RELATION_ID, 'K', null, "50", "title", UNCHANGED));
+        assertEquals(body('e'), tuple.getString(BODY));
+    }
+
+    @Test
+    void churnReusesTheArena() throws Exception {
+        this.toastCache = new ToastCache(16 * 1024, 64);
+        this.decode.setToastCache(this.toastCache);
+        this.apply(PgOutputMessages.insert(RELATION_ID, "0", "title", body('f', 100)));
+        long directBytes = directMemoryUsed();
+
+        /* the rows of different sizes, many times the budget */
+        for (int id = 1; id <= 2000; id++) {
+            this.apply(PgOutputMessages.insert(RELATION_ID, String.valueOf(id), "title", body('f', 64 + (id * 37) % 1500)));
+            assertTrue(this.toastCache.getUsedBytes() <= 16 * 1024);
+        }
+        assertEquals(directBytes, directMemoryUsed());
+
+        TupleView tuple = this.apply(PgOutputMessages.update(RELATION_ID, 'K', null, "2000", "title", UNCHANGED));
+        assertEquals(body('f', 64 + (2000 * 37) % 1500), tuple.getString(BODY));
+    }
+
+    @Test
+    void rowLargerThanThePageIsNotStored() throws Exception {
+        this.toastCache = new ToastCache(1024, 64);
+        this.decode.setToastCache(this.toastCache);
+
+        this.apply(PgOutputMessages.insert(RELATION_ID, "1", "title", body('g', 2000)));
+        assertEquals(0, this.toastCache.size());
+        assertEquals(0, this.toastCache.getUsedBytes());
+    }
+
+    @Test
+    void budgetSmallerThanTheBlockIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new ToastCache(32, 64));
+    }
+
+    private TupleView apply(ByteBuffer buffer) {
+        assertTrue(this.decode.decodeLogicalReplicationMessageTyped(buffer, this.message, false));
+        return this.message.getNewTuple();
+    }
+
+    private static ByteBuffer relation(String bodyColumn) throws Exception {
+        return PgOutputMessages.relation(RELATION_ID, "public", "documents",
+                new String[]{"id", "title", bodyColumn}, new int[]{INT4, TEXT, TEXT}, 1);
+    }
+
+    private static String body(char letter) {
+        return body(letter, 200);
+    }
+
+    private static String body(char letter, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(letter);
+        }
+        return sb.toString();
+    }
+
+    private static long directMemoryUsed() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return -1;
+    }
+}
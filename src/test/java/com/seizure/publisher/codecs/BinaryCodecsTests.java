@@ -0,0 +1,53 @@
+package com.seizure.publisher.codecs;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class BinaryCodecsTests {
+
+    @Test
+    void oidIsUnsigned() throws Exception {
+        ColumnCodec codec = BinaryCodecs.forBinary(26);
+        assertSame(BinaryCodecs.OID, codec);
+
+        /* 3000000000 is above 2^31 - 1, its signed Int32 is negative */
+        ByteBuffer buffer = ByteBuffer.allocate(4).putInt(0, (int) 3000000000L);
+        assertEquals(3000000000L, codec.decode(buffer, 0, 4));
+        assertEquals("3000000000", write(codec, buffer, 4));
+
+        buffer.putInt(0, 16384);
+        assertEquals(16384L, codec.decode(buffer, 0, 4));
+    }
+
+    @Test
+    void int4IsSigned() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(4).putInt(0, -5);
+        assertEquals(-5L, BinaryCodecs.INT4.decode(buffer, 0, 4));
+        assertEquals("-5", write(BinaryCodecs.INT4, buffer, 4));
+    }
+
+    @Test
+    void oidArrayElementsAreUnsigned() {
+        /* ndim 1, no nulls, the element type oid, the size 2 and the lower bound 1, then the elements */
+        ByteBuffer buffer = ByteBuffer.allocate(12 + 8 + 2 * 8);
+        buffer.putInt(1).putInt(0).putInt(26).putInt(2).putInt(1);
+        buffer.putInt(4).putInt(7).putInt(4).putInt(-1);
+
+        assertEquals("{7,4294967295}", BinaryCodecs.forBinary(1028).decode(buffer, 0, buffer.capacity()));
+    }
+
+    private static String write(ColumnCodec codec, ByteBuffer buffer, int length) throws Exception {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = new JsonFactory().createGenerator(writer)) {
+            codec.write(generator, buffer, 0, length);
+        }
+        return writer.toString();
+    }
+}
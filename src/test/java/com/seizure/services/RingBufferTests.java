@@ -0,0 +1,99 @@
+package com.seizure.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RingBufferTests {
+
+    @Test
+    void capacityIsRoundedUpToThePowerOfTwo() {
+        assertEquals(8, new RingBuffer<Integer>(5).capacity());
+        assertEquals(1, new RingBuffer<Integer>(1).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new RingBuffer<Integer>(0));
+    }
+
+    @Test
+    void offerFailsWhenFull() {
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.offer(4));
+        assertEquals(4, ring.size());
+
+        assertEquals(0, ring.poll());
+        assertTrue(ring.offer(4));
+        assertFalse(ring.offer(5));
+    }
+
+    @Test
+    void elementsKeepTheirOrderOverWrapAround() {
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        List<Integer> taken = new ArrayList<>();
+        int next = 0;
+        /* 3 elements at a time, so the head and the tail go round the slots at every position */
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(ring.offer(next++));
+            }
+            if (round % 2 == 0) {
+                taken.add(ring.poll());
+                taken.add(ring.poll());
+                taken.add(ring.poll());
+            } else {
+                assertEquals(3, ring.drain(taken, 10));
+            }
+            assertTrue(ring.isEmpty());
+        }
+
+        assertEquals(150, taken.size());
+        for (int i = 0; i < taken.size(); i++) {
+            assertEquals(i, taken.get(i));
+        }
+        assertNull(ring.poll());
+    }
+
+    @Test
+    void drainTakesUpToMax() {
+        RingBuffer<Integer> ring = new RingBuffer<>(8);
+        for (int i = 0; i < 6; i++) {
+            ring.offer(i);
+        }
+        List<Integer> taken = new ArrayList<>();
+        taken.add(-1);
+
+        assertEquals(4, ring.drain(taken, 4));
+        assertEquals(List.of(-1, 0, 1, 2, 3), taken);
+        assertEquals(2, ring.drain(taken, 4));
+        assertEquals(0, ring.drain(taken, 4));
+        assertEquals(7, taken.size());
+    }
+
+    @Test
+    void consumedElementsAreNotKept() throws Exception {
+        RingBuffer<Object> ring = new RingBuffer<>(4);
+        Object element = new Object();
+        WeakReference<Object> reference = new WeakReference<>(element);
+        ring.offer(element);
+        element = null;
+
+        List<Object> taken = new ArrayList<>();
+        ring.drain(taken, 1);
+        taken.clear();
+
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(reference.get());
+    }
+}
@@ -0,0 +1,178 @@
+package com.seizure.services;
+
+import com.seizure.models.ChangeRecord;
+import com.seizure.models.SpoolOptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpoolTests {
+    private static final String NAME = "publisher";
+    /* the header of the record before the payload, see Spool */
+    private static final int HEADER_SIZE = 41;
+
+    @TempDir
+    Path directory;
+
+    private final SpoolOptions options = new SpoolOptions();
+
+    @BeforeEach
+    void setUp() {
+        this.options.setDirectory(this.directory.toString());
+        this.options.setSegmentBytes(1024);
+    }
+
+    @Test
+    void recordsAreReadBackWithTheirFields() throws Exception {
+        Spool spool = new Spool(this.options, NAME);
+        ChangeRecord record = new ChangeRecord("change".getBytes(StandardCharsets.UTF_8), null, 0x16B3748L, 750, 0x16B4000L, 676_000_000L, true);
+        record.setKeyHash(12345);
+        spool.offer(record);
+
+        ChangeRecord read = spool.getReader().poll();
+        assertEquals("change", new String(read.getData(), StandardCharsets.UTF_8));
+        assertEquals(0x16B3748L, read.getLsn());
+        assertEquals(750, read.getXid());
+        assertEquals(0x16B4000L, read.getCommitLSN());
+        assertEquals(676_000_000L, read.getCommitTime());
+        assertTrue(read.isCommit());
+        assertEquals(12345, read.getKeyHash());
+        assertNull(spool.getReader().poll());
+        spool.close();
+    }
+
+    @Test
+    void restartContinuesFromTheCommittedOffset() throws Exception {
+        Spool spool = new Spool(this.options, NAME);
+        for (int i = 1; i <= 100; i++) {
+            assertTrue(spool.offer(record(i)));
+        }
+        assertEquals(100, spool.sync());
+
+        RecordSource reader = spool.getReader();
+        ChangeRecord last = null;
+        for (int i = 1; i <= 40; i++) {
+            last = reader.poll();
+            assertEquals("r" + i, text(last));
+        }
+        reader.acknowledge(last, 40);
+        spool.close();
+
+        spool = new Spool(this.options, NAME);
+        reader = spool.getReader();
+        for (int i = 41; i <= 100; i++) {
+            assertEquals("r" + i, text(reader.poll()));
+        }
+        assertNull(reader.poll());
+
+        spool.offer(record(101));
+        assertEquals("r101", text(reader.poll()));
+        spool.close();
+    }
+
+    @Test
+    void tornRecordEndsTheSegment() throws Exception {
+        Spool spool = new Spool(this.options, NAME);
+        for (int i = 1; i <= 3; i++) {
+            spool.offer(record(i));
+        }
+        spool.close();
+
+        /* the payload of the third record did not reach the disk */
+        this.corrupt(this.segments().get(0), 2 * recordSize(record(1)) + HEADER_SIZE);
+
+        spool = new Spool(this.options, NAME);
+        RecordSource reader = spool.getReader();
+        assertEquals("r1", text(reader.poll()));
+        assertEquals("r2", text(reader.poll()));
+        assertNull(reader.poll());
+
+        /* the appending continues in place of the torn record */
+        spool.offer(record(4));
+        assertEquals("r4", text(reader.poll()));
+        spool.close();
+    }
+
+    @Test
+    void segmentsAfterTheTornRecordAreDeleted() throws Exception {
+        /* two records in a segment */
+        this.options.setSegmentBytes(2 * recordSize(record(1)) + 10);
+        Spool spool = new Spool(this.options, NAME);
+        for (int i = 1; i <= 6; i++) {
+            spool.offer(record(i));
+        }
+        spool.close();
+        assertEquals(3, this.segments().size());
+
+        this.corrupt(this.segments().get(1), recordSize(record(1)) + HEADER_SIZE);
+
+        spool = new Spool(this.options, NAME);
+        assertEquals(2, this.segments().size());
+        RecordSource reader = spool.getReader();
+        for (int i = 1; i <= 3; i++) {
+            assertEquals("r" + i, text(reader.poll()));
+        }
+        assertNull(reader.poll());
+
+        spool.offer(record(7));
+        assertEquals("r7", text(reader.poll()));
+        spool.close();
+    }
+
+    @Test
+    void offerFailsOverMaxBytes() throws Exception {
+        this.options.setMaxBytes(3 * recordSize(record(1)));
+        Spool spool = new Spool(this.options, NAME);
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(spool.offer(record(i)));
+        }
+        assertEquals(false, spool.offer(record(4)));
+
+        RecordSource reader = spool.getReader();
+        reader.acknowledge(reader.poll(), 1);
+        assertTrue(spool.offer(record(4)));
+        spool.close();
+    }
+
+    private static ChangeRecord record(int number) {
+        return new ChangeRecord(("r" + number).getBytes(StandardCharsets.UTF_8), null, 1000 + number, 0, 0, 0, false);
+    }
+
+    private static int recordSize(ChangeRecord record) {
+        return HEADER_SIZE + record.getData().length;
+    }
+
+    private static String text(ChangeRecord record) {
+        return new String(record.getData(), StandardCharsets.UTF_8);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> paths = Files.list(this.directory.resolve(NAME))) {
+            return paths.filter(path -> path.toString().endsWith(".spool")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private void corrupt(Path segment, int position) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, position);
+            one.put(0, (byte) (one.get(0) ^ 0x5A)).rewind();
+            channel.write(one, position);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.seizure.subscriber;
+
+import com.seizure.models.ChangeRecord;
+import com.seizure.models.PubSubTableInfo;
+import com.seizure.publisher.models.Change;
+import com.seizure.publisher.models.Column;
+import com.seizure.publisher.models.MessageType;
+import com.seizure.publisher.models.Relation;
+import com.seizure.subscriber.models.SubscriberMode;
+import com.seizure.subscriber.models.TableRow;
+import com.seizure.subscriber.models.TruncateMode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RecordCreatorReplicaTests {
+    private final List<ChangeRecord> records = new ArrayList<>();
+    private Relation relation;
+    private TableRoutes tableRoutes;
+
+    @BeforeEach
+    void setUp() {
+        this.relation = new Relation();
+        this.relation.setId(16401);
+        this.relation.setNamespace("public");
+        this.relation.setName("accounts");
+        this.relation.setNumColumns((short) 3);
+        String[] names = {"id", "name", "balance"};
+        for (int i = 0; i < names.length; i++) {
+            Column column = new Column();
+            column.setPosition(i);
+            column.setName(names[i]);
+            column.setIsKey((char) (i == 0 ? 1 : 0));
+            this.relation.putColumn(i, column);
+        }
+
+        PubSubTableInfo pubSubTableInfo = new PubSubTableInfo("public", "accounts", null, null, "replica", "accounts");
+        pubSubTableInfo.setKeyColumns(Collections.singletonList("id"));
+        this.tableRoutes = new TableRoutes(Collections.singletonList(pubSubTableInfo));
+    }
+
+    @Test
+    void changesOfOneRowMakeOneUpsert() throws Exception {
+        this.add(MessageType.INSERT, 1, "alice", 10);
+        this.add(MessageType.UPDATE, 1, "alice", 20);
+        this.add(MessageType.UPDATE, 1, "alice b.", 30);
+
+        List<TableRow> rows = this.createRows();
+
+        assertEquals(1, rows.size());
+        assertRow(rows.get(0), TableRow.Kind.UPSERT, 1, "alice b.", 30);
+    }
+
+    @Test
+    void lastDeleteWins() throws Exception {
+        this.add(MessageType.INSERT, 2, "bob", 5);
+        this.add(MessageType.UPDATE, 2, "bob", 6);
+        this.add(MessageType.DELETE, 2, null, null);
+
+        List<TableRow> rows = this.createRows();
+
+        assertEquals(1, rows.size());
+        assertEquals(TableRow.Kind.DELETE, rows.get(0).getKind());
+        assertEquals(Collections.singletonList("id"), rows.get(0).getFieldNames());
+        assertEquals(2, rows.get(0).get("id"));
+    }
+
+    @Test
+    void unchangedToastedValueKeepsTheEarlierOne() throws Exception {
+        this.add(MessageType.INSERT, 3, "carol", 1);
+        this.add(MessageType.UPDATE, 3, Change.UNCHANGED_TOAST, 2);
+
+        List<TableRow> rows = this.createRows();
+
+        assertEquals(1, rows.size());
+        assertRow(rows.get(0), TableRow.Kind.UPSERT, 3, "carol", 2);
+    }
+
+    @Test
+    void differentKeysAreNotMerged() throws Exception {
+        this.add(MessageType.INSERT, 1, "alice", 10);
+        this.add(MessageType.INSERT, 2, "bob", 20);
+        this.add(MessageType.UPDATE, 1, "alice", 11);
+
+        List<TableRow> rows = this.createRows();
+
+        assertEquals(2, rows.size());
+        assertRow(rows.get(0), TableRow.Kind.UPSERT, 1, "alice", 11);
+        assertRow(rows.get(1), TableRow.Kind.UPSERT, 2, "bob", 20);
+    }
+
+    @Test
+    void updateOfTheKeyDeletesTheOldKey() throws Exception {
+        this.add(MessageType.INSERT, 1, "alice", 10);
+        Change change = new Change(MessageType.UPDATE, this.relation, new Object[]{4, "alice", Change.UNCHANGED_TOAST}, null);
+        change.setOldValues(new Object[]{1, "alice", 10});
+        this.records.add(new ChangeRecord(change, 100 + this.records.size()));
+
+        List<TableRow> rows = this.createRows();
+
+        assertEquals(2, rows.size());
+        assertEquals(TableRow.Kind.DELETE, rows.get(0).getKind());
+        assertEquals(1, rows.get(0).get("id"));
+        /* the unchanged value of the moved row is taken from the old tuple */
+        assertRow(rows.get(1), TableRow.Kind.UPSERT, 4, "alice", 10);
+    }
+
+    @Test
+    void deleteWithoutTheKeyIsSkipped() throws Exception {
+        this.add(MessageType.INSERT, 1, "alice", 10);
+        this.records.add(new ChangeRecord(new Change(MessageType.DELETE, this.relation, new Object[]{null, null, null}, null), 100 + this.records.size()));
+
+        List<TableRow> rows = this.createRows();
+
+        assertEquals(1, rows.size());
+        assertRow(rows.get(0), TableRow.Kind.UPSERT, 1, "alice", 10);
+    }
+
+    @Test
+    void updateWithoutTheOldKeyIsOnlyUpserted() throws Exception {
+        Change change = new Change(MessageType.UPDATE, this.relation, new Object[]{4, "alice", 10}, null);
+        change.setOldValues(new Object[]{null, "alice", 10});
+        this.records.add(new ChangeRecord(change, 100));
+
+        List<TableRow> rows = this.createRows();
+
+        assertEquals(1, rows.size());
+        assertRow(rows.get(0), TableRow.Kind.UPSERT, 4, "alice", 10);
+    }
+
+    @Test
+    void truncateSplitsTheCompaction() throws Exception {
+        this.add(MessageType.INSERT, 1, "alice", 10);
+        this.records.add(new ChangeRecord(new Change(MessageType.TRUNCATE, null, null, new Relation[]{this.relation}), 200));
+        this.add(MessageType.UPDATE, 1, "alice", 11);
+
+        List<TableRow> rows = this.createRows();
+
+        assertEquals(3, rows.size());
+        assertRow(rows.get(0), TableRow.Kind.UPSERT, 1, "alice", 10);
+        assertEquals(TableRow.Kind.TRUNCATE, rows.get(1).getKind());
+        assertRow(rows.get(2), TableRow.Kind.UPSERT, 1, "alice", 11);
+    }
+
+    @Test
+    void serializedRecordsAreCompactedTheSameWay() throws Exception {
+        this.records.add(json("{\"type\":\"insert\",\"relationName\":\"public.accounts\",\"tupleData\":{\"id\":1,\"name\":\"alice\",\"balance\":10}}"));
+        this.records.add(json("{\"type\":\"update\",\"relationName\":\"public.accounts\",\"tupleData\":{\"id\":5,\"name\":\"alice\",\"balance\":\"UTOAST\"},"
+                + "\"oldTupleData\":{\"id\":1,\"name\":\"alice\",\"balance\":10}}"));
+
+        List<TableRow> rows = this.createRows("application/json");
+
+        assertEquals(2, rows.size());
+        assertEquals(TableRow.Kind.DELETE, rows.get(0).getKind());
+        assertEquals(1, rows.get(0).get("id"));
+        assertRow(rows.get(1), TableRow.Kind.UPSERT, 5, "alice", 10);
+    }
+
+    @Test
+    void unreadableRecordFailsTheBatch() {
+        this.records.add(json("{\"type\":"));
+
+        assertThrows(Exception.class, () -> this.createRows("application/json"));
+    }
+
+    private void add(MessageType type, int id, String name, Integer balance) {
+        Object[] values = (type == MessageType.DELETE) ? new Object[]{id, null, null} : new Object[]{id, name, balance};
+        this.records.add(new ChangeRecord(new Change(type, this.relation, values, null), 100 + this.records.size()));
+    }
+
+    private ChangeRecord json(String payload) {
+        return new ChangeRecord(payload.getBytes(StandardCharsets.UTF_8), 100 + this.records.size());
+    }
+
+    private List<TableRow> createRows() throws Exception {
+        return this.createRows("application/json");
+    }
+
+    private List<TableRow> createRows(String outputFormat) throws Exception {
+        RecordCreator recordCreator = new RecordCreator(this.records, this.tableRoutes, TruncateMode.TRUNCATE,
+                outputFormat, false, null, SubscriberMode.REPLICA);
+        return recordCreator.createRows();
+    }
+
+    private static void assertRow(TableRow row, TableRow.Kind kind, int id, String name, int balance) {
+        assertEquals(kind, row.getKind());
+        assertEquals(id, ((Number) row.get("id")).intValue());
+        assertEquals(name, row.get("name"));
+        assertEquals(balance, ((Number) row.get("balance")).intValue());
+        assertFalse(row.getValues().contains(Change.UNCHANGED_TOAST));
+    }
+}